@@ -0,0 +1,40 @@
+package eu.europeanstudentcard.esc;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the first call of a new JVM, loading and initialising the classes, as in a short-lived function
+ * <p>
+ * Each fork is a new JVM running a single call, without warmup. {@code generateQR} only loads ZXing and the streaming
+ * composer, {@code mergeSVG} also loads Batik and the XML parsers and transformers of the DOM path.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(10)
+public class ColdStartBenchmark {
+
+    private static final String CARD_NUMBER = "123e4567-e89b-12d3-a456-426614174000";
+
+    @Benchmark
+    public String generateQR() throws Exception {
+        return QRFactory.create().generateQR(CARD_NUMBER, "vertical", "normal", "S");
+    }
+
+    @Benchmark
+    public String mergeSVG() throws Exception {
+        QRFactory qrFactory = QRFactory.create();
+        LogoTemplate logo = new LogoTemplateCache(false).get(true, true);
+        String qrSVG = qrFactory.generateQRCodeSvg(qrFactory.getVerifierUri().concat(CARD_NUMBER), 41, 41, true);
+        return qrFactory.mergeSVG(qrSVG, logo, true, 1.5f);
+    }
+}
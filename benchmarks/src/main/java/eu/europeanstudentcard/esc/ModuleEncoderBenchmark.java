@@ -0,0 +1,80 @@
+package eu.europeanstudentcard.esc;
+
+import com.google.zxing.common.BitMatrix;
+import eu.europeanstudentcard.esc.constants.QRConstants;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares writing the dark modules from the row words with the encoder and testing each module with
+ * {@link BitMatrix#get}, as {@link QRFactory#generateQRCodeSvg} does
+ * <p>
+ * Run it with {@code -prof gc}: the encoder must allocate nothing per QR, the bytes allocated by the other benchmarks
+ * grow with the number of dark modules.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ModuleEncoderBenchmark {
+
+    @Param({"RECT", "PATH"})
+    public QRConstants.RenderMode renderMode;
+
+    private QRFactory qrFactory;
+    private BitMatrix bitMatrix;
+    private ModuleEncoder encoder;
+    private OutputBuffer buffer;
+
+    @Setup
+    public void setUp() throws Exception {
+        this.qrFactory = QRFactory.create();
+        this.bitMatrix = this.qrFactory.encodeQR("https://s.esc-r.eu/123e4567-e89b-12d3-a456-426614174000", 41, 41);
+        this.encoder = new ModuleEncoder();
+        this.buffer = new OutputBuffer(128 * 1024);
+    }
+
+    @Benchmark
+    public int encoder() {
+        this.buffer.reset();
+        if (this.renderMode == QRConstants.RenderMode.PATH) {
+            this.encoder.writePath(this.bitMatrix, true, this.buffer);
+        } else {
+            this.encoder.writeRects(this.bitMatrix, true, this.buffer);
+        }
+        return this.buffer.size();
+    }
+
+    @Benchmark
+    public int moduleByModule() {
+        this.buffer.reset();
+        for (int y = 0; y < this.bitMatrix.getHeight(); y++) {
+            for (int x = 0; x < this.bitMatrix.getWidth(); x++) {
+                if (this.bitMatrix.get(x, y)) {
+                    this.buffer.write(("        <rect fill=\"black\" height=\"1\" width=\"1\" x=\"" + x + "\" y=\"" + y
+                            + "\"/>\n").getBytes());
+                }
+            }
+        }
+        return this.buffer.size();
+    }
+
+    @Benchmark
+    public int generateQRCodeSvg() throws Exception {
+        return this.qrFactory.generateQRCodeSvg("https://s.esc-r.eu/123e4567-e89b-12d3-a456-426614174000", 41, 41, true)
+                .length();
+    }
+}
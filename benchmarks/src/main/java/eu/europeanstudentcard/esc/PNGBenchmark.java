@@ -0,0 +1,65 @@
+package eu.europeanstudentcard.esc;
+
+import org.apache.batik.transcoder.TranscoderInput;
+import org.apache.batik.transcoder.TranscoderOutput;
+import org.apache.batik.transcoder.image.ImageTranscoder;
+import org.apache.batik.transcoder.image.PNGTranscoder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares rendering the PNG directly from the QR modules and transcoding the generated SVG with Batik
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PNGBenchmark {
+
+    private static final String CARD_NUMBER = "123e4567-e89b-12d3-a456-426614174000";
+
+    @Param({"XS", "S", "M"})
+    public String size;
+
+    @Param({"96", "300"})
+    public int dpi;
+
+    private QRFactory qrFactory;
+
+    @Setup
+    public void setUp() throws Exception {
+        this.qrFactory = QRFactory.create("https://s.esc-r.eu/", true);
+        // Rasterise the logo before measuring
+        this.qrFactory.generateQRPng(CARD_NUMBER, "vertical", "normal", this.size, this.dpi);
+    }
+
+    @Benchmark
+    public byte[] generateQRPng() throws Exception {
+        return this.qrFactory.generateQRPng(CARD_NUMBER, "vertical", "normal", this.size, this.dpi);
+    }
+
+    @Benchmark
+    public byte[] transcodeSVG() throws Exception {
+        String svg = this.qrFactory.generateQR(CARD_NUMBER, "vertical", "normal", this.size);
+        PNGTranscoder transcoder = new PNGTranscoder();
+        transcoder.addTranscodingHint(ImageTranscoder.KEY_PIXEL_UNIT_TO_MILLIMETER, 25.4f / this.dpi);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        transcoder.transcode(new TranscoderInput(new StringReader(svg)), new TranscoderOutput(out));
+        return out.toByteArray();
+    }
+}
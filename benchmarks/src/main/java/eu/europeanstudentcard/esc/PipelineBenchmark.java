@@ -0,0 +1,131 @@
+package eu.europeanstudentcard.esc;
+
+import com.google.zxing.common.BitMatrix;
+import org.apache.batik.anim.dom.SAXSVGDocumentFactory;
+import org.apache.batik.util.XMLResourceDescriptor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Document;
+
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures each stage of the generation pipeline and the whole pipeline, for every orientation, colours and size
+ * <p>
+ * The stages are the encoding of the QR, the QR-only SVG of {@link QRFactory#generateQRCodeSvg}, the DOM merge of
+ * {@link QRFactory#mergeSVG}, the serialization of the merged document and the streaming composer used by
+ * {@link QRFactory#generateQR}. Each benchmark reports the throughput and the average time, add {@code -prof gc} to
+ * the command line to report the allocation rate. The benchmarks run in one thread, {@link MultiThreaded} runs them
+ * in as many threads as processors, sharing the factory.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PipelineBenchmark {
+
+    private static final String CARD_NUMBER = "123e4567-e89b-12d3-a456-426614174000";
+
+    @Param({"vertical", "horizontal"})
+    public String orientation;
+
+    @Param({"normal", "inverted"})
+    public String colours;
+
+    @Param({"XS", "S", "M"})
+    public String size;
+
+    private QRFactory qrFactory;
+    private QRStyle style;
+    private LogoTemplate logo;
+    private String content;
+    private BitMatrix bitMatrix;
+    private String qrSVG;
+
+    @Setup
+    public void setUp() throws Exception {
+        this.qrFactory = QRFactory.create("https://s.esc-r.eu/", true);
+        this.style = QRStyle.parse(this.orientation, this.colours, this.size);
+        this.logo = new LogoTemplateCache(true).get(this.style.isVertical(), this.style.isPositive());
+        this.content = this.qrFactory.getVerifierUri() + CARD_NUMBER;
+        this.bitMatrix = this.qrFactory.encodeQR(this.content, 41, 41);
+        this.qrSVG = this.qrFactory.generateQRCodeSvg(this.content, 41, 41, this.style.isPositive());
+    }
+
+    /**
+     * The objects that are not thread safe, one per benchmark thread
+     */
+    @State(Scope.Thread)
+    public static class ThreadState {
+
+        private OutputBuffer buffer;
+        private Document mergedDocument;
+
+        @Setup
+        public void setUp(PipelineBenchmark benchmark) throws Exception {
+            this.buffer = new OutputBuffer(128 * 1024);
+            String merged = benchmark.qrFactory.mergeSVG(benchmark.qrSVG, benchmark.logo, benchmark.style.isVertical(),
+                    benchmark.style.getScaleFactor());
+            this.mergedDocument = new SAXSVGDocumentFactory(XMLResourceDescriptor.getXMLParserClassName())
+                    .createDocument("merged.svg", new StringReader(merged));
+        }
+    }
+
+    @Benchmark
+    public BitMatrix encodeQR() throws Exception {
+        return this.qrFactory.encodeQR(this.content, 41, 41);
+    }
+
+    @Benchmark
+    public String generateQRCodeSvg() throws Exception {
+        return this.qrFactory.generateQRCodeSvg(this.content, 41, 41, this.style.isPositive());
+    }
+
+    @Benchmark
+    public String mergeSVG() throws Exception {
+        return this.qrFactory.mergeSVG(this.qrSVG, this.logo, this.style.isVertical(), this.style.getScaleFactor());
+    }
+
+    @Benchmark
+    public String serializeDocument(ThreadState state) throws Exception {
+        return this.qrFactory.serializeDocument(state.mergedDocument);
+    }
+
+    @Benchmark
+    public int compose(ThreadState state) throws Exception {
+        state.buffer.reset();
+        new SVGComposer(4).compose(this.bitMatrix, this.style.isPositive(), this.style.getRenderMode(), this.logo,
+                this.style.isVertical(), this.style.getScaleFactor(), state.buffer);
+        return state.buffer.size();
+    }
+
+    @Benchmark
+    public String generateQR() throws Exception {
+        return this.qrFactory.generateQR(CARD_NUMBER, this.orientation, this.colours, this.size);
+    }
+
+    @Benchmark
+    public String generateQRWithStyle() throws Exception {
+        return this.qrFactory.generateQR(CARD_NUMBER, this.style);
+    }
+
+    /**
+     * The same benchmarks in as many threads as processors
+     */
+    @Threads(Threads.MAX)
+    public static class MultiThreaded extends PipelineBenchmark {
+    }
+}
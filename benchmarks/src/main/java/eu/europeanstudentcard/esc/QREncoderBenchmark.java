@@ -0,0 +1,70 @@
+package eu.europeanstudentcard.esc;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.EncodeHintType;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.qrcode.QRCodeWriter;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+import com.google.zxing.qrcode.decoder.Version;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares encoding the ESC payload with the generic ZXing writer and with the encoder of the fixed version and
+ * level, evaluating the masks one after the other and in parallel
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class QREncoderBenchmark {
+
+    private static final String CONTENT = "https://s.esc-r.eu/123e4567-e89b-12d3-a456-426614174000";
+
+    private QRCodeWriter writer;
+    private Map<EncodeHintType, Object> hints;
+    private QREncoder encoder;
+    private QREncoder parallelEncoder;
+    private QREncoder.Workspace workspace;
+
+    @Setup
+    public void setUp() {
+        this.writer = new QRCodeWriter();
+        this.hints = new EnumMap<>(EncodeHintType.class);
+        this.hints.put(EncodeHintType.ERROR_CORRECTION, ErrorCorrectionLevel.M);
+        this.hints.put(EncodeHintType.QR_VERSION, 4);
+        this.hints.put(EncodeHintType.MARGIN, 4);
+        this.encoder = new QREncoder(Version.getVersionForNumber(4), ErrorCorrectionLevel.M, 4, false);
+        this.parallelEncoder = new QREncoder(Version.getVersionForNumber(4), ErrorCorrectionLevel.M, 4, true);
+        this.workspace = this.encoder.newWorkspace();
+    }
+
+    @Benchmark
+    public BitMatrix zxing() throws Exception {
+        return this.writer.encode(CONTENT, BarcodeFormat.QR_CODE, 41, 41, this.hints);
+    }
+
+    @Benchmark
+    public BitMatrix encoder() {
+        return this.encoder.encode(CONTENT, 41, 41, this.workspace);
+    }
+
+    @Benchmark
+    public BitMatrix parallelMasks() {
+        return this.parallelEncoder.encode(CONTENT, 41, 41, this.workspace);
+    }
+}
@@ -0,0 +1,51 @@
+package eu.europeanstudentcard.esc;
+
+import com.google.zxing.common.BitMatrix;
+import eu.europeanstudentcard.esc.constants.QRConstants;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares writing the dark modules as one rect per module and as a single path
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RenderModeBenchmark {
+
+    @Param({"RECT", "PATH"})
+    public QRConstants.RenderMode renderMode;
+
+    private SVGComposer composer;
+    private LogoTemplate logo;
+    private BitMatrix bitMatrix;
+
+    @Setup
+    public void setUp() throws Exception {
+        this.composer = new SVGComposer(4);
+        this.logo = new LogoTemplateCache(true).get(false, true);
+        this.bitMatrix = QRFactory.create().encodeQR("https://s.esc-r.eu/123e4567-e89b-12d3-a456-426614174000", 41, 41);
+    }
+
+    @Benchmark
+    public byte[] compose() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(128 * 1024);
+        this.composer.compose(this.bitMatrix, true, this.renderMode, this.logo, false, 1.5f, out);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,65 @@
+package eu.europeanstudentcard.esc;
+
+import com.google.zxing.common.BitMatrix;
+import eu.europeanstudentcard.esc.constants.QRConstants;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares merging an already encoded QR with the logo through the DOM, {@link QRFactory#mergeSVG}, and through the
+ * streaming {@link SVGComposer}
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SVGComposerBenchmark {
+
+    @Param({"true", "false"})
+    public boolean isVertical;
+
+    @Param({"1.0", "1.5", "4.0"})
+    public float scaleFactor;
+
+    private QRFactory qrFactory;
+    private SVGComposer composer;
+    private LogoTemplate logo;
+    private BitMatrix bitMatrix;
+    private String qrSVG;
+
+    @Setup
+    public void setUp() throws Exception {
+        String content = "https://s.esc-r.eu/123e4567-e89b-12d3-a456-426614174000";
+        this.qrFactory = QRFactory.create();
+        this.composer = new SVGComposer(4);
+        this.logo = new LogoTemplateCache(true).get(this.isVertical, true);
+        this.bitMatrix = this.qrFactory.encodeQR(content, 41, 41);
+        this.qrSVG = this.qrFactory.generateQRCodeSvg(content, 41, 41, true);
+    }
+
+    @Benchmark
+    public String mergeSVG() throws Exception {
+        return this.qrFactory.mergeSVG(this.qrSVG, this.logo, this.isVertical, this.scaleFactor);
+    }
+
+    @Benchmark
+    public byte[] compose() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(128 * 1024);
+        this.composer.compose(this.bitMatrix, true, QRConstants.RenderMode.RECT, this.logo, this.isVertical, this.scaleFactor, out);
+        return out.toByteArray();
+    }
+}
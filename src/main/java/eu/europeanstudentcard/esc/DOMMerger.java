@@ -0,0 +1,184 @@
+package eu.europeanstudentcard.esc;
+
+import eu.europeanstudentcard.esc.constants.QRConstants;
+import org.apache.batik.anim.dom.SAXSVGDocumentFactory;
+import org.apache.batik.util.XMLResourceDescriptor;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+/**
+ * The legacy DOM path of a factory: parsing the QR SVG with Batik, merging it with the logo in a new document and
+ * serializing the merged document
+ * <p>
+ * This is the only class, with {@link LogoRasteriser}, using Batik. The SVGs generated by the factory are written by
+ * the {@link SVGComposer} without any DOM, so the factory only creates its merger the first time a DOM method is
+ * called, and Batik is an optional dependency needed by the applications calling these methods. The parsers,
+ * builders and transformers, which are not thread safe, are borrowed from lock-free pools. A merger is thread safe.
+ */
+final class DOMMerger {
+
+    /**
+     * The uri given to the QR documents parsed from memory, it is never resolved
+     */
+    private static final String QR_DOCUMENT_URI = "qr" + QRConstants.SVG_EXTENSION;
+
+    private final int qrMargin;
+    private final ResourcePool<SAXSVGDocumentFactory> svgDocumentFactories;
+    private final ResourcePool<DocumentBuilder> documentBuilders;
+    private final ResourcePool<Transformer> transformers;
+
+    /**
+     * @param qrMargin the margin of the encoded QRs in modules, used to calculate the margin of the merged image
+     * @param maxIdle  the maximum number of idle parsers, builders and transformers kept in the pools
+     */
+    DOMMerger(int qrMargin, int maxIdle) {
+        this.qrMargin = qrMargin;
+        this.svgDocumentFactories = new ResourcePool<>(DOMMerger::newSVGDocumentFactory, maxIdle);
+        this.documentBuilders = new ResourcePool<>(
+                () -> DocumentBuilderFactory.newInstance().newDocumentBuilder(), DocumentBuilder::reset, maxIdle);
+        this.transformers = new ResourcePool<>(DOMMerger::newTransformer, Transformer::reset, maxIdle);
+    }
+
+    /**
+     * Parses an SVG with a new Batik parser, used for the logos which are parsed once per scale factor
+     *
+     * @param uri the uri of the document
+     * @param in  the SVG content
+     * @return the SVG document
+     * @throws IOException if the SVG cannot be parsed
+     */
+    static Document parseSVG(String uri, InputStream in) throws IOException {
+        return newSVGDocumentFactory().createDocument(uri, in);
+    }
+
+    /**
+     * Parses the QR SVG file
+     */
+    Document parseFile(String uri) throws Exception {
+        SAXSVGDocumentFactory factory = this.svgDocumentFactories.borrow();
+        try {
+            return factory.createDocument(uri);
+        } finally {
+            this.svgDocumentFactories.release(factory);
+        }
+    }
+
+    /**
+     * Parses the QR SVG from memory
+     */
+    Document parseString(String svg) throws Exception {
+        SAXSVGDocumentFactory factory = this.svgDocumentFactories.borrow();
+        try {
+            return factory.createDocument(QR_DOCUMENT_URI, new StringReader(svg));
+        } finally {
+            this.svgDocumentFactories.release(factory);
+        }
+    }
+
+    /**
+     * Builds a new document with the QR and the logo, scaled and positioned
+     *
+     * @param qrDoc       The QR document, its root element will be scaled
+     * @param logo        The logo, it is not modified
+     * @param isVertical  the orientation of the QR, if isVertical, the QR orientation is vertical, else, is horizontal
+     * @param scaleFactor the width and the height of the QR and the logo will be scaled with by factor
+     * @return the merged document
+     * @throws Exception if an error occurs while merging the documents
+     */
+    Document merge(Document qrDoc, LogoTemplate logo, boolean isVertical, float scaleFactor) throws Exception {
+        // Get width and height of the QR
+        Element qrElement = qrDoc.getDocumentElement();
+        float qrWidth = Float.parseFloat(qrElement.getAttribute("width"));
+        float qrHeight = Float.parseFloat(qrElement.getAttribute("height"));
+
+        // The same geometry as the SVGs written by the composer
+        QRLayout layout = QRLayout.compute(qrWidth, qrHeight, this.qrMargin, logo.getWidth(), logo.getHeight(),
+                isVertical, scaleFactor);
+        qrElement.setAttribute("width", String.valueOf(layout.getQrWidth()));
+        qrElement.setAttribute("height", String.valueOf(layout.getQrHeight()));
+
+        // Create a new empty SVG document for the merged result
+        DocumentBuilder docBuilder = this.documentBuilders.borrow();
+        Document mergedDoc;
+        try {
+            mergedDoc = docBuilder.newDocument();
+        } finally {
+            this.documentBuilders.release(docBuilder);
+        }
+
+        // Create the root <svg> element
+        Element rootElement = mergedDoc.createElement("svg");
+        rootElement.setAttribute("width", String.valueOf(layout.getWidth()));
+        rootElement.setAttribute("height", String.valueOf(layout.getHeight()));
+        rootElement.setAttribute("xmlns", "http://www.w3.org/2000/svg");
+        mergedDoc.appendChild(rootElement);
+
+        // Import the SVGs into the merged SVG
+        Element logoElement = logo.importScaled(mergedDoc, scaleFactor);
+        logoElement.setAttribute("x", String.valueOf(layout.getLogoX()));
+        logoElement.setAttribute("y", String.valueOf(layout.getLogoY()));
+        Element qrImage = (Element) mergedDoc.importNode(qrElement, true);
+        qrImage.setAttribute("x", String.valueOf(layout.getQrX()));
+        qrImage.setAttribute("y", String.valueOf(layout.getQrY()));
+        // The first image is the logo in the vertical images and the QR in the horizontal ones
+        if (isVertical) {
+            rootElement.appendChild(logoElement);
+            rootElement.appendChild(qrImage);
+        } else {
+            rootElement.appendChild(qrImage);
+            rootElement.appendChild(logoElement);
+        }
+        return mergedDoc;
+    }
+
+    /**
+     * Serializes the document to an indented string with an XML declaration
+     */
+    String serialize(Document doc) throws Exception {
+        StringWriter sw = new StringWriter();
+        Transformer t = this.transformers.borrow();
+        try {
+            t.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "no");
+            t.setOutputProperty(OutputKeys.METHOD, "xml");
+            t.setOutputProperty(OutputKeys.INDENT, "yes");
+            t.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
+            t.transform(new DOMSource(doc), new StreamResult(sw));
+        } finally {
+            this.transformers.release(t);
+        }
+        return sw.toString();
+    }
+
+    ResourcePool<?> getSvgDocumentFactories() {
+        return svgDocumentFactories;
+    }
+
+    ResourcePool<?> getDocumentBuilders() {
+        return documentBuilders;
+    }
+
+    ResourcePool<?> getTransformers() {
+        return transformers;
+    }
+
+    private static SAXSVGDocumentFactory newSVGDocumentFactory() {
+        return new SAXSVGDocumentFactory(XMLResourceDescriptor.getXMLParserClassName());
+    }
+
+    private static Transformer newTransformer() throws TransformerConfigurationException {
+        return TransformerFactory.newInstance().newTransformer();
+    }
+}
@@ -0,0 +1,76 @@
+package eu.europeanstudentcard.esc;
+
+import eu.europeanstudentcard.esc.constants.QRConstants;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The layouts and the SVG templates of a factory, one per logo and size
+ * <p>
+ * The QRs of a factory always have the same number of modules and the same margin, so there are only twelve different
+ * merged images, four logos by three sizes, and their twelve compact variants. Their layout and template are computed
+ * the first time a logo is used in a size, or when the table is created if the logos are loaded eagerly, and then
+ * reused by every QR. The entries are immutable: two threads using a new logo at the same time may both compute it, but
+ * they compute the same template. The table is safe to share between threads.
+ */
+final class LayoutTable {
+
+    private static final QRConstants.Size[] SIZES = QRConstants.Size.values();
+
+    private final int qrModules;
+    private final int qrMargin;
+    private final AtomicReferenceArray<SVGComposer.Template> templates = new AtomicReferenceArray<>(8 * SIZES.length);
+
+    /**
+     * @param qrModules the width and the height of the QRs in modules, including their margin
+     * @param qrMargin  the margin of the QRs in modules
+     */
+    LayoutTable(int qrModules, int qrMargin) {
+        this.qrModules = qrModules;
+        this.qrMargin = qrMargin;
+    }
+
+    /**
+     * Computes the templates of all the sizes of the logos, compact or not
+     *
+     * @param logos the logos, already loaded
+     */
+    void precompute(LogoTemplateCache logos) throws IOException {
+        for (boolean compact : new boolean[]{false, true}) {
+            for (boolean isVertical : new boolean[]{true, false}) {
+                for (boolean isPositive : new boolean[]{true, false}) {
+                    LogoTemplate logo = logos.get(isVertical, isPositive, compact);
+                    for (QRConstants.Size size : SIZES) {
+                        this.get(logo, isVertical, isPositive, size, compact);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the template of the logo of the style in its size
+     *
+     * @param logo  the logo of the orientation and colours of the style, minified if the style is compact
+     * @param style the style of the QR
+     * @return the template
+     */
+    SVGComposer.Template get(LogoTemplate logo, QRStyle style) {
+        return this.get(logo, style.isVertical(), style.isPositive(), style.getSize(), style.isCompact());
+    }
+
+    private SVGComposer.Template get(LogoTemplate logo, boolean isVertical, boolean isPositive, QRConstants.Size size,
+                                     boolean compact) {
+        int index = ((compact ? 4 : 0) + (isVertical ? 0 : 2) + (isPositive ? 0 : 1)) * SIZES.length + size.ordinal();
+        SVGComposer.Template template = this.templates.get(index);
+        if (template == null) {
+            QRLayout layout = QRLayout.compute(this.qrModules, this.qrModules, this.qrMargin, logo.getWidth(),
+                    logo.getHeight(), isVertical, size.getScaleFactor());
+            template = compact ? SVGComposer.compactTemplate(layout, logo, isVertical, isPositive)
+                    : SVGComposer.template(layout, logo, isVertical);
+            this.templates.set(index, template);
+        }
+        return template;
+    }
+}
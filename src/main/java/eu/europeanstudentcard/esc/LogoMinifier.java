@@ -0,0 +1,483 @@
+package eu.europeanstudentcard.esc;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Writes the minified variants of the ESC logos used by the compact SVGs, see {@link QRStyle#withCompact}
+ * <p>
+ * The variants are generated when the library is built, from src/main/resources/logos to logos/compact in the classes
+ * directory, by running {@link #main} in the process-classes phase. A minified logo has no XML declaration,
+ * indentation, comments, ids nor groups without attributes, its style sheet has no whitespace, and its coordinates are
+ * rounded to {@link #DECIMALS} decimals, which is less than a hundredth of a pixel at the largest size. The relative
+ * coordinates of the paths are rounded against the rounded position of the previous point, so the rounding errors do
+ * not add up along a path.
+ */
+public final class LogoMinifier {
+
+    /**
+     * The number of decimals of the coordinates, in units of the logo viewBox
+     */
+    static final int DECIMALS = 3;
+
+    private static final long SCALE = (long) Math.pow(10, DECIMALS);
+
+    /**
+     * The attributes holding a single number, rounded as the coordinates
+     */
+    private static final Set<String> NUMBER_ATTRIBUTES = Set.of("x", "y", "width", "height", "x1", "y1", "x2", "y2",
+            "cx", "cy", "r", "rx", "ry", "stroke-width");
+
+    private LogoMinifier() {
+    }
+
+    /**
+     * Minifies all the SVGs of a directory
+     *
+     * @param args the directory of the logos and the directory where the minified logos are written
+     * @throws IOException if a logo cannot be read, parsed or written
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            throw new IllegalArgumentException("Usage: LogoMinifier <source directory> <target directory>");
+        }
+        Path source = Paths.get(args[0]);
+        Path target = Paths.get(args[1]);
+        Files.createDirectories(target);
+        List<Path> logos;
+        try (Stream<Path> files = Files.list(source)) {
+            logos = files.filter(file -> file.getFileName().toString().endsWith(".svg")).sorted()
+                    .collect(Collectors.toList());
+        }
+        for (Path logo : logos) {
+            Files.write(target.resolve(logo.getFileName().toString()), minify(logo.toString(), Files.readAllBytes(logo)));
+        }
+    }
+
+    /**
+     * Minifies a logo
+     *
+     * @param path   the path of the logo, used in the error messages
+     * @param source the SVG content of the logo
+     * @return the minified SVG content, in UTF-8
+     * @throws IOException if the logo cannot be parsed
+     */
+    static byte[] minify(String path, byte[] source) throws IOException {
+        XMLInputFactory factory = XMLInputFactory.newDefaultFactory();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        // The style sheet is minified as a whole
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        StringBuilder out = new StringBuilder(source.length / 2);
+        try {
+            XMLStreamReader reader = factory.createXMLStreamReader(new ByteArrayInputStream(source));
+            try {
+                // The start tag of the current element is left open until its first child, to write empty elements
+                // as />
+                boolean openStartTag = false;
+                boolean inStyle = false;
+                // The groups without attributes are not written, their children are written in their place
+                Deque<Boolean> unwrapped = new ArrayDeque<>();
+                while (reader.hasNext()) {
+                    int event = reader.next();
+                    if (event == XMLStreamConstants.START_ELEMENT) {
+                        boolean unwrap = isEmptyGroup(reader);
+                        unwrapped.push(unwrap);
+                        if (unwrap) {
+                            continue;
+                        }
+                        if (openStartTag) {
+                            out.append('>');
+                        }
+                        writeStartTag(reader, out);
+                        openStartTag = true;
+                        inStyle = "style".equals(reader.getLocalName());
+                    } else if (event == XMLStreamConstants.END_ELEMENT) {
+                        if (unwrapped.pop()) {
+                            continue;
+                        }
+                        if (openStartTag) {
+                            out.append("/>");
+                            openStartTag = false;
+                        } else {
+                            out.append("</").append(qualifiedName(reader.getPrefix(), reader.getLocalName())).append('>');
+                        }
+                        inStyle = false;
+                    } else if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA) {
+                        // The whitespace between the elements is only indentation, SVG shapes have no text
+                        String text = inStyle ? minifyStyle(reader.getText()) : reader.getText().trim();
+                        if (!text.isEmpty()) {
+                            if (openStartTag) {
+                                out.append('>');
+                                openStartTag = false;
+                            }
+                            out.append(escapeText(text));
+                        }
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException("Error parsing the logo " + path, e);
+        }
+        return out.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static boolean isEmptyGroup(XMLStreamReader reader) {
+        if (!"g".equals(reader.getLocalName()) || reader.getNamespaceCount() > 0) {
+            return false;
+        }
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            if (!"id".equals(reader.getAttributeLocalName(i)) || !reader.getAttributePrefix(i).isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void writeStartTag(XMLStreamReader reader, StringBuilder out) {
+        out.append('<').append(qualifiedName(reader.getPrefix(), reader.getLocalName()));
+        for (int i = 0; i < reader.getNamespaceCount(); i++) {
+            String prefix = reader.getNamespacePrefix(i);
+            out.append(' ').append(prefix == null || prefix.isEmpty() ? "xmlns" : "xmlns:" + prefix).append("=\"")
+                    .append(SVGComposer.escapeAttribute(reader.getNamespaceURI(i))).append('"');
+        }
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            String name = qualifiedName(reader.getAttributePrefix(i), reader.getAttributeLocalName(i));
+            // The logos do not reference their elements, so the ids are only names given by the drawing tool
+            if (name.equals("id")) {
+                continue;
+            }
+            out.append(' ').append(name).append("=\"")
+                    .append(SVGComposer.escapeAttribute(minifyAttribute(name, reader.getAttributeValue(i)))).append('"');
+        }
+    }
+
+    private static String minifyAttribute(String name, String value) {
+        if (name.equals("d")) {
+            return minifyPath(value);
+        }
+        if (name.equals("points") || name.equals("viewBox")) {
+            return minifyNumbers(value);
+        }
+        if (NUMBER_ATTRIBUTES.contains(name)) {
+            try {
+                return format(Math.round(Double.parseDouble(value.trim()) * SCALE));
+            } catch (NumberFormatException e) {
+                // A length with a unit or a percentage is kept as it is
+                return value;
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Rounds a list of numbers, like the points of a polygon
+     */
+    static String minifyNumbers(String value) {
+        NumberWriter out = new NumberWriter();
+        PathTokenizer tokens = new PathTokenizer(value);
+        while (tokens.hasNext()) {
+            out.number(Math.round(tokens.nextNumber() * SCALE));
+        }
+        return out.toString();
+    }
+
+    /**
+     * Rounds the coordinates of path data, writing each command letter only when it changes
+     */
+    static String minifyPath(String value) {
+        NumberWriter out = new NumberWriter();
+        PathTokenizer tokens = new PathTokenizer(value);
+        // The exact current point and subpath start, and the scaled rounded ones written to the output
+        double x = 0;
+        double y = 0;
+        double startX = 0;
+        double startY = 0;
+        long roundedX = 0;
+        long roundedY = 0;
+        long roundedStartX = 0;
+        long roundedStartY = 0;
+        char command = 0;
+        while (tokens.hasNext()) {
+            if (tokens.nextIsCommand()) {
+                command = tokens.nextCommand();
+            } else if (command == 0) {
+                throw new IllegalArgumentException("Path data without command: " + value);
+            }
+            char upper = Character.toUpperCase(command);
+            boolean relative = command != upper;
+            if (upper == 'Z') {
+                out.command(command, true);
+                x = startX;
+                y = startY;
+                roundedX = roundedStartX;
+                roundedY = roundedStartY;
+                continue;
+            }
+            // A moveto followed by implicit coordinates is a moveto and then linetos, so it is always written
+            out.command(command, upper == 'M');
+
+            double baseX = relative ? x : 0;
+            double baseY = relative ? y : 0;
+            long roundedBaseX = relative ? roundedX : 0;
+            long roundedBaseY = relative ? roundedY : 0;
+            switch (upper) {
+                case 'H':
+                    x = baseX + tokens.nextNumber();
+                    roundedX = roundedBaseX + out.coordinate(x, roundedBaseX);
+                    break;
+                case 'V':
+                    y = baseY + tokens.nextNumber();
+                    roundedY = roundedBaseY + out.coordinate(y, roundedBaseY);
+                    break;
+                case 'A':
+                    // Radii, rotation and the two flags, then the end point
+                    for (int i = 0; i < 3; i++) {
+                        out.number(Math.round(tokens.nextNumber() * SCALE));
+                    }
+                    out.flag(tokens.nextFlag());
+                    out.flag(tokens.nextFlag());
+                    x = baseX + tokens.nextNumber();
+                    y = baseY + tokens.nextNumber();
+                    roundedX = roundedBaseX + out.coordinate(x, roundedBaseX);
+                    roundedY = roundedBaseY + out.coordinate(y, roundedBaseY);
+                    break;
+                default:
+                    // M, L, T: one point, S, Q: two points, C: three points, the last one is the end point
+                    int points = upper == 'C' ? 3 : upper == 'S' || upper == 'Q' ? 2 : 1;
+                    for (int i = 0; i < points; i++) {
+                        double pointX = baseX + tokens.nextNumber();
+                        double pointY = baseY + tokens.nextNumber();
+                        long deltaX = out.coordinate(pointX, roundedBaseX);
+                        long deltaY = out.coordinate(pointY, roundedBaseY);
+                        if (i == points - 1) {
+                            x = pointX;
+                            y = pointY;
+                            roundedX = roundedBaseX + deltaX;
+                            roundedY = roundedBaseY + deltaY;
+                        }
+                    }
+                    break;
+            }
+            if (upper == 'M') {
+                startX = x;
+                startY = y;
+                roundedStartX = roundedX;
+                roundedStartY = roundedY;
+                // The next coordinates without command are linetos
+                command = relative ? 'l' : 'L';
+                out.impliedCommand(command);
+            }
+        }
+        return out.toString();
+    }
+
+    /**
+     * Removes the whitespace of a style sheet which is not needed to separate two words
+     */
+    static String minifyStyle(String style) {
+        String collapsed = style.replaceAll("\\s+", " ").trim();
+        return collapsed.replaceAll(" ?([{}:;,>]) ?", "$1").replace(";}", "}");
+    }
+
+    private static String escapeText(String text) {
+        return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+    }
+
+    private static String qualifiedName(String prefix, String localName) {
+        return prefix == null || prefix.isEmpty() ? localName : prefix + ":" + localName;
+    }
+
+    /**
+     * Formats a number rounded to {@link #DECIMALS} decimals, without trailing zeros nor leading zero
+     */
+    static String format(double value) {
+        return format(Math.round(value * SCALE));
+    }
+
+    /**
+     * Formats a number scaled by {@link #SCALE}, without trailing zeros nor leading zero
+     */
+    static String format(long scaled) {
+        if (scaled == 0) {
+            return "0";
+        }
+        StringBuilder sb = new StringBuilder();
+        if (scaled < 0) {
+            sb.append('-');
+        }
+        long absolute = Math.abs(scaled);
+        long integer = absolute / SCALE;
+        long fraction = absolute % SCALE;
+        if (integer != 0 || fraction == 0) {
+            sb.append(integer);
+        }
+        if (fraction != 0) {
+            String digits = Long.toString(SCALE + fraction).substring(1);
+            int end = digits.length();
+            while (digits.charAt(end - 1) == '0') {
+                end--;
+            }
+            sb.append('.').append(digits, 0, end);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Writes path data with the fewest separators: none after a command, and none before a negative number or before
+     * a number starting with a point when the previous one has a point
+     */
+    private static final class NumberWriter {
+
+        private final StringBuilder sb = new StringBuilder();
+        private char lastCommand;
+        private boolean afterNumber;
+        private boolean lastHasPoint;
+
+        void command(char command, boolean always) {
+            if (always || command != this.lastCommand || Character.toUpperCase(command) == 'Z') {
+                this.sb.append(command);
+                this.afterNumber = false;
+            }
+            this.lastCommand = command;
+        }
+
+        void impliedCommand(char command) {
+            this.lastCommand = command;
+        }
+
+        /**
+         * Writes the rounded coordinate relative to the rounded base
+         *
+         * @return the scaled value written
+         */
+        long coordinate(double exact, long roundedBase) {
+            long delta = Math.round(exact * SCALE) - roundedBase;
+            this.number(delta);
+            return delta;
+        }
+
+        void number(long scaled) {
+            String value = format(scaled);
+            boolean needsSeparator = this.afterNumber && value.charAt(0) != '-'
+                    && !(value.charAt(0) == '.' && this.lastHasPoint);
+            if (needsSeparator) {
+                this.sb.append(' ');
+            }
+            this.sb.append(value);
+            this.afterNumber = true;
+            this.lastHasPoint = value.indexOf('.') >= 0;
+        }
+
+        void flag(boolean flag) {
+            if (this.afterNumber) {
+                this.sb.append(' ');
+            }
+            this.sb.append(flag ? '1' : '0');
+            this.afterNumber = true;
+            this.lastHasPoint = false;
+        }
+
+        @Override
+        public String toString() {
+            return this.sb.toString();
+        }
+    }
+
+    /**
+     * Splits path data or a list of numbers in commands and numbers, skipping the whitespace and the commas
+     */
+    private static final class PathTokenizer {
+
+        private final String value;
+        private int position;
+
+        PathTokenizer(String value) {
+            this.value = value;
+            this.skipSeparators();
+        }
+
+        boolean hasNext() {
+            return this.position < this.value.length();
+        }
+
+        boolean nextIsCommand() {
+            char c = this.value.charAt(this.position);
+            return Character.isLetter(c) && c != 'e' && c != 'E';
+        }
+
+        char nextCommand() {
+            char command = this.value.charAt(this.position++);
+            this.skipSeparators();
+            return command;
+        }
+
+        boolean nextFlag() {
+            char c = this.value.charAt(this.position++);
+            if (c != '0' && c != '1') {
+                throw new IllegalArgumentException("Invalid arc flag in path data: " + this.value);
+            }
+            this.skipSeparators();
+            return c == '1';
+        }
+
+        double nextNumber() {
+            if (!this.hasNext()) {
+                throw new IllegalArgumentException("Missing number in path data: " + this.value);
+            }
+            int start = this.position;
+            int i = start;
+            if (this.value.charAt(i) == '-' || this.value.charAt(i) == '+') {
+                i++;
+            }
+            boolean point = false;
+            while (i < this.value.length()) {
+                char c = this.value.charAt(i);
+                if (c >= '0' && c <= '9') {
+                    i++;
+                } else if (c == '.' && !point) {
+                    point = true;
+                    i++;
+                } else if ((c == 'e' || c == 'E') && i > start) {
+                    i++;
+                    if (i < this.value.length() && (this.value.charAt(i) == '-' || this.value.charAt(i) == '+')) {
+                        i++;
+                    }
+                    point = true;
+                } else {
+                    break;
+                }
+            }
+            this.position = i;
+            this.skipSeparators();
+            return Double.parseDouble(this.value.substring(start, i));
+        }
+
+        private void skipSeparators() {
+            while (this.position < this.value.length()) {
+                char c = this.value.charAt(this.position);
+                if (c == ',' || Character.isWhitespace(c)) {
+                    this.position++;
+                } else {
+                    break;
+                }
+            }
+        }
+    }
+}
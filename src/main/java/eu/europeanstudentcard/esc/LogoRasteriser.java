@@ -0,0 +1,51 @@
+package eu.europeanstudentcard.esc;
+
+import org.apache.batik.transcoder.TranscoderException;
+import org.apache.batik.transcoder.TranscoderInput;
+import org.apache.batik.transcoder.TranscoderOutput;
+import org.apache.batik.transcoder.image.ImageTranscoder;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+
+/**
+ * Rasterises the logos with Batik for the PNG output
+ * <p>
+ * Kept apart from {@link LogoTemplate}, so the logos can be loaded and composed in SVG without Batik on the
+ * classpath. The rasters of the recently used sizes are cached, see {@link LogoTemplate#rasterise}.
+ */
+final class LogoRasteriser {
+
+    private LogoRasteriser() {
+    }
+
+    /**
+     * @param path   the path of the logo, used in the error messages
+     * @param source the SVG content of the logo
+     * @param width  the width of the logo in pixels
+     * @param height the height of the logo in pixels
+     * @return the non-premultiplied ARGB pixels of the logo, row by row
+     */
+    static int[] rasterise(String path, byte[] source, int width, int height) {
+        BufferedImage[] result = new BufferedImage[1];
+        ImageTranscoder transcoder = new ImageTranscoder() {
+            @Override
+            public BufferedImage createImage(int w, int h) {
+                return new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+            }
+
+            @Override
+            public void writeImage(BufferedImage image, TranscoderOutput output) {
+                result[0] = image;
+            }
+        };
+        transcoder.addTranscodingHint(ImageTranscoder.KEY_WIDTH, (float) width);
+        transcoder.addTranscodingHint(ImageTranscoder.KEY_HEIGHT, (float) height);
+        try {
+            transcoder.transcode(new TranscoderInput(new ByteArrayInputStream(source)), null);
+        } catch (TranscoderException e) {
+            throw new IllegalStateException("Error rasterising the logo " + path, e);
+        }
+        return result[0].getRGB(0, 0, width, height, null, 0, width);
+    }
+}
@@ -0,0 +1,295 @@
+package eu.europeanstudentcard.esc;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A pre-parsed ESC logo, loaded once and shared by every QR generated with the same orientation and colours
+ * <p>
+ * The logo is read once, scaled forms of the logo are derived on first use for each scale factor and cached,
+ * so the logo is parsed once per variant and size instead of once per QR. In the same way the logo is rasterised
+ * once per size in pixels for the PNG output, keeping only the {@value #MAX_RASTERS} most recently used sizes, as
+ * every resolution gives other sizes. The cached documents and pixels are never modified after they are created.
+ * <p>
+ * Loading a logo only reads its root element with the StAX parser of the JDK, which is all the streaming composer
+ * needs. Batik is only used by the DOM path, {@link #importScaled}, and to rasterise the logo for the PNG output.
+ */
+public final class LogoTemplate {
+
+    /**
+     * The maximum number of rasterised sizes kept, enough for the three sizes at two resolutions. A logo at size M
+     * and 1200 DPI takes several MB
+     */
+    static final int MAX_RASTERS = 6;
+
+    private final String path;
+    private final byte[] source;
+    private final float width;
+    private final float height;
+    private final byte[] rootAttributes;
+    private final byte[] content;
+    private final Map<Float, ScaledDocument> scaledDocuments = new ConcurrentHashMap<>();
+    private final Lock rastersLock = new ReentrantLock();
+    private final LinkedHashMap<Long, int[]> rasters = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, int[]> eldest) {
+            return this.size() > MAX_RASTERS;
+        }
+    };
+
+    private LogoTemplate(String path, byte[] source, Map<String, String> rootAttributes) throws IOException {
+        this.path = path;
+        this.source = source;
+        try {
+            this.width = Float.parseFloat(rootAttributes.get("width"));
+            this.height = Float.parseFloat(rootAttributes.get("height"));
+        } catch (NullPointerException | NumberFormatException e) {
+            throw new IOException("Invalid size of logo " + path, e);
+        }
+        this.rootAttributes = serializeRootAttributes(rootAttributes);
+        this.content = extractContent(path, source);
+    }
+
+    /**
+     * Loads and parses a logo
+     *
+     * @param path the path of the logo, used as the document uri
+     * @param in   the stream with the SVG content of the logo
+     * @return the parsed logo
+     * @throws IOException if the logo cannot be read or parsed
+     */
+    public static LogoTemplate load(String path, InputStream in) throws IOException {
+        byte[] source = in.readAllBytes();
+        return new LogoTemplate(path, source, readRootAttributes(path, source));
+    }
+
+    /**
+     * Reads the attributes and the namespace declarations of the root element, with their qualified names, the rest
+     * of the document is not parsed
+     */
+    private static Map<String, String> readRootAttributes(String path, byte[] source) throws IOException {
+        XMLInputFactory factory = XMLInputFactory.newDefaultFactory();
+        // The logos are trusted resources, but no external entity or DTD is ever resolved
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        Map<String, String> attributes = new TreeMap<>();
+        try {
+            XMLStreamReader reader = factory.createXMLStreamReader(new ByteArrayInputStream(source));
+            try {
+                // Skip the prolog up to the root element
+                while (reader.hasNext() && !reader.isStartElement()) {
+                    reader.next();
+                }
+                if (!reader.isStartElement() || !"svg".equals(reader.getLocalName())) {
+                    throw new IOException("Root element not found in logo " + path);
+                }
+                for (int i = 0; i < reader.getNamespaceCount(); i++) {
+                    String prefix = reader.getNamespacePrefix(i);
+                    attributes.put(prefix == null || prefix.isEmpty() ? "xmlns" : "xmlns:" + prefix,
+                            reader.getNamespaceURI(i));
+                }
+                for (int i = 0; i < reader.getAttributeCount(); i++) {
+                    String prefix = reader.getAttributePrefix(i);
+                    String localName = reader.getAttributeLocalName(i);
+                    attributes.put(prefix == null || prefix.isEmpty() ? localName : prefix + ":" + localName,
+                            reader.getAttributeValue(i));
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException("Error parsing the logo " + path, e);
+        }
+        return attributes;
+    }
+
+    /**
+     * Copies the root element of the logo, scaled by the given factor, into the target document
+     *
+     * @param target      the document where the logo will be imported
+     * @param scaleFactor the width and the height of the logo will be scaled with by factor
+     * @return the imported logo element, owned by the target document
+     */
+    public Element importScaled(Document target, float scaleFactor) {
+        ScaledDocument scaled = this.scaledDocuments.computeIfAbsent(scaleFactor, this::createScaledDocument);
+        // DOM implementations do not guarantee thread safe reads, the lock is only held while copying
+        scaled.lock.lock();
+        try {
+            return (Element) target.importNode(scaled.document.getDocumentElement(), true);
+        } finally {
+            scaled.lock.unlock();
+        }
+    }
+
+    private ScaledDocument createScaledDocument(float scaleFactor) {
+        Document scaled;
+        try {
+            scaled = DOMMerger.parseSVG(this.path, new ByteArrayInputStream(this.source));
+        } catch (IOException e) {
+            // The same bytes were already parsed successfully when the template was loaded
+            throw new UncheckedIOException(e);
+        }
+        Element root = scaled.getDocumentElement();
+        root.setAttribute("width", String.valueOf(this.width * scaleFactor));
+        root.setAttribute("height", String.valueOf(this.height * scaleFactor));
+        return new ScaledDocument(scaled);
+    }
+
+    /**
+     * Rasterises the logo to the given size, the pixels of the most recently used sizes are cached
+     * <p>
+     * The lock is not held while the logo is rasterised, two threads rasterising a new size at the same time both
+     * rasterise it, but they get the same pixels.
+     *
+     * @param width  the width of the logo in pixels
+     * @param height the height of the logo in pixels
+     * @return the non-premultiplied ARGB pixels of the logo, row by row, the array must not be modified
+     */
+    int[] rasterise(int width, int height) {
+        Long key = ((long) width << 32) | height;
+        int[] raster;
+        this.rastersLock.lock();
+        try {
+            raster = this.rasters.get(key);
+        } finally {
+            this.rastersLock.unlock();
+        }
+        if (raster == null) {
+            raster = this.createRaster(width, height);
+            this.rastersLock.lock();
+            try {
+                this.rasters.put(key, raster);
+            } finally {
+                this.rastersLock.unlock();
+            }
+        }
+        return raster;
+    }
+
+    /**
+     * @return the number of rasterised sizes kept
+     */
+    int rasterCount() {
+        this.rastersLock.lock();
+        try {
+            return this.rasters.size();
+        } finally {
+            this.rastersLock.unlock();
+        }
+    }
+
+    private int[] createRaster(int width, int height) {
+        try {
+            return LogoRasteriser.rasterise(this.path, this.source, width, height);
+        } catch (NoClassDefFoundError e) {
+            throw new IllegalStateException("Batik is needed to generate PNGs, add org.apache.xmlgraphics:batik-all", e);
+        }
+    }
+
+    /**
+     * Serializes the attributes of the root element that are copied as they are to the merged SVG, the size, the
+     * position and the default namespace are written by the composer
+     */
+    private static byte[] serializeRootAttributes(Map<String, String> rootAttributes) {
+        Map<String, String> attributes = new TreeMap<>(rootAttributes);
+        attributes.keySet().removeAll(List.of("width", "height", "x", "y", "xmlns"));
+
+        StringBuilder sb = new StringBuilder();
+        attributes.forEach((name, value) -> sb.append(' ').append(name).append("=\"")
+                .append(SVGComposer.escapeAttribute(value)).append('"'));
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Extracts the raw content of the root element, from the end of the root start tag to the root end tag
+     */
+    private static byte[] extractContent(String path, byte[] source) throws IOException {
+        String svg = new String(source, StandardCharsets.UTF_8);
+        int start = svg.indexOf("<svg");
+        int end = svg.lastIndexOf("</svg>");
+        if (start < 0 || end < start) {
+            throw new IOException("Root element not found in logo " + path);
+        }
+
+        // Find the end of the root start tag, skipping the attribute values
+        int i = start;
+        char quote = 0;
+        for (; i < end; i++) {
+            char c = svg.charAt(i);
+            if (quote != 0) {
+                quote = c == quote ? 0 : quote;
+            } else if (c == '"' || c == '\'') {
+                quote = c;
+            } else if (c == '>') {
+                break;
+            }
+        }
+        if (i == end) {
+            throw new IOException("Unexpected root element in logo " + path);
+        }
+        return svg.substring(i + 1, end).getBytes(StandardCharsets.UTF_8);
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * @return a copy of the raw SVG content of the logo
+     */
+    public byte[] getSource() {
+        return source.clone();
+    }
+
+    /**
+     * @return the serialized attributes of the root element, except the size, the position and the namespace,
+     * each one preceded by a space. The array must not be modified
+     */
+    byte[] getRootAttributes() {
+        return rootAttributes;
+    }
+
+    /**
+     * @return the raw content of the root element, the array must not be modified
+     */
+    byte[] getContent() {
+        return content;
+    }
+
+    public float getWidth() {
+        return width;
+    }
+
+    public float getHeight() {
+        return height;
+    }
+
+    /**
+     * A scaled copy of the logo with the lock guarding the reads of the document
+     */
+    private static final class ScaledDocument {
+
+        private final Document document;
+        private final Lock lock = new ReentrantLock();
+
+        private ScaledDocument(Document document) {
+            this.document = document;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package eu.europeanstudentcard.esc;
+
+import eu.europeanstudentcard.esc.constants.QRConstants;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Immutable cache of the four ESC logos, vertical/horizontal x normal/inverted, and of their minified variants used by
+ * the compact SVGs
+ * <p>
+ * Each logo is read from the classpath once, either on first use or when the cache is created if eager loading
+ * is requested. The cache is safe to share between threads, including virtual threads.
+ */
+final class LogoTemplateCache {
+
+    private final Entry[] entries;
+
+    /**
+     * @param eager if true, all the logos are loaded and parsed before returning
+     * @throws IllegalStateException if eager and a logo cannot be loaded
+     */
+    LogoTemplateCache(boolean eager) {
+        // Indexed by the QR properties, so getting a logo does not build its path
+        this.entries = new Entry[]{
+                new Entry(path(true, true), false),
+                new Entry(path(true, false), false),
+                new Entry(path(false, true), false),
+                new Entry(path(false, false), false),
+                new Entry(compactPath(true, true), true),
+                new Entry(compactPath(true, false), true),
+                new Entry(compactPath(false, true), true),
+                new Entry(compactPath(false, false), true)};
+
+        if (eager) {
+            for (Entry entry : this.entries) {
+                try {
+                    entry.get();
+                } catch (IOException e) {
+                    throw new IllegalStateException("Error loading the logo " + entry.path, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the logo for the QR properties, loading it if it has not been used yet
+     *
+     * @param isVertical the orientation of the QR, if isVertical, the QR orientation is vertical, else, is horizontal
+     * @param isPositive the colours of the QR, if positive normals colours will be used, else, inverted colours
+     * @return the logo
+     * @throws IOException if the logo cannot be loaded
+     */
+    LogoTemplate get(boolean isVertical, boolean isPositive) throws IOException {
+        return this.get(isVertical, isPositive, false);
+    }
+
+    /**
+     * Returns the logo or its minified variant for the QR properties, loading it if it has not been used yet
+     *
+     * @param isVertical the orientation of the QR, if isVertical, the QR orientation is vertical, else, is horizontal
+     * @param isPositive the colours of the QR, if positive normals colours will be used, else, inverted colours
+     * @param compact    true for the minified logo of the compact SVGs
+     * @return the logo
+     * @throws IOException if the logo cannot be loaded
+     */
+    LogoTemplate get(boolean isVertical, boolean isPositive, boolean compact) throws IOException {
+        return this.entries[(compact ? 4 : 0) + (isVertical ? 0 : 2) + (isPositive ? 0 : 1)].get();
+    }
+
+    /**
+     * Generates the path of the logo based on the QR properties
+     */
+    static String path(boolean isVertical, boolean isPositive) {
+        return QRConstants.LOGOS_PATH
+                .concat(isVertical ? QRConstants.VERTICAL_ORIENTATION : QRConstants.HORIZONTAL_ORIENTATION)
+                .concat("_")
+                .concat(isPositive ? QRConstants.NORMAL_COLOUR : QRConstants.INVERTED_COLOUR)
+                .concat(QRConstants.SVG_EXTENSION);
+    }
+
+    /**
+     * Generates the path of the minified logo based on the QR properties
+     */
+    static String compactPath(boolean isVertical, boolean isPositive) {
+        return QRConstants.COMPACT_LOGOS_PATH.concat(path(isVertical, isPositive).substring(QRConstants.LOGOS_PATH.length()));
+    }
+
+    private static final class Entry {
+
+        private final String path;
+        private final boolean compact;
+        private final Lock lock = new ReentrantLock();
+        private volatile LogoTemplate template;
+
+        private Entry(String path, boolean compact) {
+            this.path = path;
+            this.compact = compact;
+        }
+
+        private LogoTemplate get() throws IOException {
+            LogoTemplate result = this.template;
+            if (result == null) {
+                // A lock instead of synchronized, so virtual threads waiting for the logo are not pinned
+                this.lock.lock();
+                try {
+                    result = this.template;
+                    if (result == null) {
+                        result = this.compact ? loadCompact(this.path) : load(this.path);
+                        this.template = result;
+                    }
+                } finally {
+                    this.lock.unlock();
+                }
+            }
+            return result;
+        }
+
+        private static LogoTemplate load(String path) throws IOException {
+            try (InputStream in = LogoTemplateCache.class.getClassLoader().getResourceAsStream(path)) {
+                if (in == null) {
+                    throw new IOException("Logo not found: " + path);
+                }
+                return LogoTemplate.load(path, in);
+            }
+        }
+
+        private static LogoTemplate loadCompact(String path) throws IOException {
+            InputStream in = LogoTemplateCache.class.getClassLoader().getResourceAsStream(path);
+            if (in == null) {
+                // The minified logos are generated by the build, minify the logo when the classes were built without it
+                String source = QRConstants.LOGOS_PATH.concat(path.substring(QRConstants.COMPACT_LOGOS_PATH.length()));
+                try (InputStream sourceIn = LogoTemplateCache.class.getClassLoader().getResourceAsStream(source)) {
+                    if (sourceIn == null) {
+                        throw new IOException("Logo not found: " + source);
+                    }
+                    in = new ByteArrayInputStream(LogoMinifier.minify(source, sourceIn.readAllBytes()));
+                }
+            }
+            try (InputStream minified = in) {
+                return LogoTemplate.load(path, minified);
+            }
+        }
+    }
+}
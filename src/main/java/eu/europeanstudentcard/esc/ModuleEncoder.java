@@ -0,0 +1,178 @@
+package eu.europeanstudentcard.esc;
+
+import com.google.zxing.common.BitArray;
+import com.google.zxing.common.BitMatrix;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes the markup of the dark modules of a QR to a buffer, without allocating any object per module
+ * <p>
+ * The rows of the BitMatrix are copied as 32 bit words into a reused row and the dark modules are found with bit
+ * operations, instead of testing each module with {@link BitMatrix#get}. The markup of a rect is built from two
+ * precomputed byte arrays, the start of the rect up to its column and the row until its end, so each dark module is
+ * two array copies. An encoder is not thread safe, it is borrowed from a pool by the thread composing a QR.
+ * <p>
+ * The compact markup has no indentation nor line breaks and no colour, which the modules inherit from the QR image of
+ * the compact template.
+ */
+final class ModuleEncoder {
+
+    private static final byte[] MODULE_POSITIVE = ascii("        <rect fill=\"black\" height=\"1\" width=\"1\" x=\"");
+    private static final byte[] MODULE_NEGATIVE = ascii("        <rect fill=\"white\" height=\"1\" width=\"1\" x=\"");
+    private static final byte[] PATH_POSITIVE = ascii("        <path fill=\"black\" d=\"M0 0");
+    private static final byte[] PATH_NEGATIVE = ascii("        <path fill=\"white\" d=\"M0 0");
+    private static final byte[] PATH_RUN_DOWN = ascii("v1h-");
+    private static final byte[] PATH_END = ascii("\"/>\n");
+    private static final byte[] COMPACT_MODULE = ascii("<rect x=\"");
+    private static final byte[] COMPACT_PATH = ascii("<path d=\"M0 0");
+    private static final byte[] COMPACT_PATH_END = ascii("\"/>");
+
+    private BitArray row = new BitArray(64);
+    private byte[][] positiveColumns = new byte[0][];
+    private byte[][] negativeColumns = new byte[0][];
+    private byte[][] rows = new byte[0][];
+    private byte[][] compactColumns = new byte[0][];
+    private byte[][] compactRows = new byte[0][];
+
+    /**
+     * Writes a rect for each dark module
+     *
+     * @param qr         the QR modules
+     * @param isPositive the colours of the QR, if positive normals colours will be used, else, inverted colours
+     * @param out        the buffer where the markup is written
+     */
+    void writeRects(BitMatrix qr, boolean isPositive, OutputBuffer out) {
+        this.ensureTables(qr.getWidth(), qr.getHeight());
+        this.writeRects(qr, isPositive ? this.positiveColumns : this.negativeColumns, this.rows, out);
+    }
+
+    /**
+     * Writes a rect without colour for each dark module, without indentation nor line breaks
+     *
+     * @param qr  the QR modules
+     * @param out the buffer where the markup is written
+     */
+    void writeCompactRects(BitMatrix qr, OutputBuffer out) {
+        this.ensureCompactTables(qr.getWidth(), qr.getHeight());
+        this.writeRects(qr, this.compactColumns, this.compactRows, out);
+    }
+
+    private void writeRects(BitMatrix qr, byte[][] columns, byte[][] rows, OutputBuffer out) {
+        for (int y = 0; y < qr.getHeight(); y++) {
+            this.row = qr.getRow(y, this.row);
+            int[] words = this.row.getBitArray();
+            byte[] rowEnd = rows[y];
+            for (int i = 0; i < words.length; i++) {
+                int word = words[i];
+                while (word != 0) {
+                    out.write(columns[(i << 5) + Integer.numberOfTrailingZeros(word)]);
+                    out.write(rowEnd);
+                    // Clear the lowest dark module of the word
+                    word &= word - 1;
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes a single path with a closed rectangle for each horizontal run of dark modules
+     * <p>
+     * Each run is written as "m dx dy h length v 1 h -length z", where dx and dy are relative to the start of the
+     * previous run, as closing a subpath moves the current point back to its start.
+     *
+     * @param qr         the QR modules
+     * @param isPositive the colours of the QR, if positive normals colours will be used, else, inverted colours
+     * @param out        the buffer where the markup is written
+     */
+    void writePath(BitMatrix qr, boolean isPositive, OutputBuffer out) {
+        this.writePath(qr, isPositive ? PATH_POSITIVE : PATH_NEGATIVE, PATH_END, out);
+    }
+
+    /**
+     * Writes the single path of {@link #writePath} without colour, indentation nor line break
+     *
+     * @param qr  the QR modules
+     * @param out the buffer where the markup is written
+     */
+    void writeCompactPath(BitMatrix qr, OutputBuffer out) {
+        this.writePath(qr, COMPACT_PATH, COMPACT_PATH_END, out);
+    }
+
+    private void writePath(BitMatrix qr, byte[] pathStart, byte[] pathEnd, OutputBuffer out) {
+        out.write(pathStart);
+        int lastColumn = 0;
+        int lastRow = 0;
+        for (int y = 0; y < qr.getHeight(); y++) {
+            this.row = qr.getRow(y, this.row);
+            // The bits after the last column are clear, so the runs end at the width at the latest
+            int start = this.row.getNextSet(0);
+            while (start < qr.getWidth()) {
+                int end = this.row.getNextUnset(start);
+                out.write('m');
+                out.writeDecimal(start - lastColumn);
+                out.write(' ');
+                out.writeDecimal(y - lastRow);
+                out.write('h');
+                out.writeDecimal(end - start);
+                out.write(PATH_RUN_DOWN);
+                out.writeDecimal(end - start);
+                out.write('z');
+                lastColumn = start;
+                lastRow = y;
+                start = this.row.getNextSet(end);
+            }
+        }
+        out.write(pathEnd);
+    }
+
+    /**
+     * Builds the markup of the columns and the rows, only when the QR is larger than the previous ones
+     */
+    private void ensureTables(int width, int height) {
+        if (this.positiveColumns.length < width) {
+            this.positiveColumns = new byte[width][];
+            this.negativeColumns = new byte[width][];
+            for (int x = 0; x < width; x++) {
+                byte[] column = ascii(x + "\" y=\"");
+                this.positiveColumns[x] = concat(MODULE_POSITIVE, column);
+                this.negativeColumns[x] = concat(MODULE_NEGATIVE, column);
+            }
+        }
+        if (this.rows.length < height) {
+            this.rows = new byte[height][];
+            for (int y = 0; y < height; y++) {
+                this.rows[y] = ascii(y + "\"/>\n");
+            }
+        }
+    }
+
+    /**
+     * Builds the compact markup of the columns and the rows, only when the QR is larger than the previous ones
+     */
+    private void ensureCompactTables(int width, int height) {
+        if (this.compactColumns.length < width) {
+            this.compactColumns = new byte[width][];
+            for (int x = 0; x < width; x++) {
+                this.compactColumns[x] = concat(COMPACT_MODULE, ascii(x + "\" y=\""));
+            }
+        }
+        if (this.compactRows.length < height) {
+            this.compactRows = new byte[height][];
+            for (int y = 0; y < height; y++) {
+                this.compactRows[y] = ascii(y + "\" width=\"1\" height=\"1\"/>");
+            }
+        }
+    }
+
+    private static byte[] concat(byte[] first, byte[] second) {
+        byte[] result = new byte[first.length + second.length];
+        System.arraycopy(first, 0, result, 0, first.length);
+        System.arraycopy(second, 0, result, first.length, second.length);
+        return result;
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+}
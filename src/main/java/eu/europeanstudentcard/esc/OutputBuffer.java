@@ -0,0 +1,136 @@
+package eu.europeanstudentcard.esc;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A growable byte buffer where a QR is composed before it is copied once to its destination
+ * <p>
+ * Unlike ByteArrayOutputStream its methods are not synchronized and it gives access to its content without copying
+ * it. The buffers are pooled, so they are not thread safe and must only be used by the thread that borrowed them.
+ */
+final class OutputBuffer extends OutputStream {
+
+    /**
+     * The buffers that grew beyond this size while composing an unusually large QR are not kept in the pool
+     */
+    static final int MAX_RETAINED_CAPACITY = 1024 * 1024;
+
+    private byte[] buffer;
+    private int count;
+
+    /**
+     * @param capacity the initial capacity, enough for a QR with its logo avoids growing the buffer
+     */
+    OutputBuffer(int capacity) {
+        this.buffer = new byte[capacity];
+    }
+
+    @Override
+    public void write(int b) {
+        ensureCapacity(this.count + 1);
+        this.buffer[this.count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        ensureCapacity(this.count + len);
+        System.arraycopy(b, off, this.buffer, this.count, len);
+        this.count += len;
+    }
+
+    @Override
+    public void write(byte[] b) {
+        write(b, 0, b.length);
+    }
+
+    /**
+     * Writes the decimal digits of the value in ASCII, without creating a String
+     */
+    void writeDecimal(int value) {
+        if (value < 0) {
+            write('-');
+            // The digits of the smallest int are written from its negative, which has no positive counterpart
+            writeNegativeDigits(value);
+        } else {
+            writeNegativeDigits(-value);
+        }
+    }
+
+    private void writeNegativeDigits(int negative) {
+        int digits = 1;
+        for (int rest = negative / 10; rest != 0; rest /= 10) {
+            digits++;
+        }
+        ensureCapacity(this.count + digits);
+        for (int i = this.count + digits - 1; i >= this.count; i--) {
+            this.buffer[i] = (byte) ('0' - negative % 10);
+            negative /= 10;
+        }
+        this.count += digits;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > this.buffer.length) {
+            this.buffer = Arrays.copyOf(this.buffer, Math.max(capacity, this.buffer.length * 2));
+        }
+    }
+
+    /**
+     * Empties the buffer, keeping its capacity
+     */
+    void reset() {
+        this.count = 0;
+    }
+
+    int size() {
+        return this.count;
+    }
+
+    int capacity() {
+        return this.buffer.length;
+    }
+
+    /**
+     * Writes the content of the buffer to the stream, without flushing or closing it
+     */
+    void writeTo(OutputStream out) throws IOException {
+        out.write(this.buffer, 0, this.count);
+    }
+
+    /**
+     * Writes the whole content of the buffer to the channel, which should be in blocking mode
+     */
+    void writeTo(WritableByteChannel channel) throws IOException {
+        ByteBuffer content = ByteBuffer.wrap(this.buffer, 0, this.count);
+        while (content.hasRemaining()) {
+            channel.write(content);
+        }
+    }
+
+    /**
+     * Appends the content of the buffer, decoded from UTF-8, to the appendable
+     */
+    void appendTo(Appendable out) throws IOException {
+        out.append(StandardCharsets.UTF_8.decode(ByteBuffer.wrap(this.buffer, 0, this.count)));
+    }
+
+    /**
+     * @return a copy of the content of the buffer
+     */
+    byte[] toByteArray() {
+        return Arrays.copyOf(this.buffer, this.count);
+    }
+
+    /**
+     * @return the content of the buffer decoded from UTF-8
+     */
+    @Override
+    public String toString() {
+        return new String(this.buffer, 0, this.count, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,194 @@
+package eu.europeanstudentcard.esc;
+
+import com.google.zxing.common.BitMatrix;
+import eu.europeanstudentcard.esc.constants.QRConstants;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Renders the QR merged with the ESC logo directly to a PNG
+ * <p>
+ * The modules of the BitMatrix are painted into the pixels of the image and the logo, rasterised and cached by
+ * {@link LogoTemplate#rasterise}, is copied next to them, so the merged SVG is never built nor transcoded. The images
+ * and the PNG writer are held by a {@link Canvas}, which is pooled and reused for the following QRs. The layout is the
+ * same as the SVG written by {@link SVGComposer}, scaled from 96 DPI to the requested resolution. The renderer keeps
+ * no state between calls and can be shared between threads.
+ */
+final class PNGRenderer {
+
+    private static final int TRANSPARENT = 0x00000000;
+    private static final int BLACK = 0xFF000000;
+    private static final int WHITE = 0xFFFFFFFF;
+    private static final double METERS_PER_INCH = 0.0254;
+
+    private final int qrMargin;
+
+    /**
+     * @param qrMargin the margin of the QR in modules, used to calculate the margin of the merged image
+     */
+    PNGRenderer(int qrMargin) {
+        this.qrMargin = qrMargin;
+    }
+
+    /**
+     * Renders the merged image and writes it as a PNG
+     *
+     * @param qr          the QR modules
+     * @param isPositive  the colours of the QR, if positive normals colours will be used, else, inverted colours
+     * @param logo        the logo
+     * @param isVertical  the orientation of the QR, if isVertical, the QR orientation is vertical, else, is horizontal
+     * @param scaleFactor the width and the height of the QR and the logo will be scaled with by factor
+     * @param dpi         the resolution of the image, at 96 DPI one SVG unit is one pixel
+     * @param canvas      the canvas where the image is rendered, borrowed by the calling thread
+     * @param out         the stream where the PNG is written, it is not closed
+     * @throws IOException if an error occurs while writing to the stream
+     */
+    void render(BitMatrix qr, boolean isPositive, LogoTemplate logo, boolean isVertical, float scaleFactor, int dpi,
+                Canvas canvas, OutputStream out) throws IOException {
+        // The layout of the SVG scaled to pixels
+        float pixelScale = scaleFactor * dpi / QRConstants.DEFAULT_DPI;
+        QRLayout layout = QRLayout.compute(qr.getWidth(), qr.getHeight(), this.qrMargin, logo.getWidth(),
+                logo.getHeight(), isVertical, pixelScale);
+
+        int width = (int) Math.ceil(layout.getWidth());
+        int height = (int) Math.ceil(layout.getHeight());
+        int[] pixels = canvas.clear(width, height);
+
+        paintLogo(pixels, width, height, logo, layout.getLogoWidth(), layout.getLogoHeight(), layout.getLogoX(),
+                layout.getLogoY());
+        paintQR(pixels, width, height, qr, isPositive, layout.getQrWidth(), layout.getQrHeight(), layout.getQrX(),
+                layout.getQrY());
+
+        canvas.write(dpi, out);
+    }
+
+    private static void paintLogo(int[] pixels, int width, int height, LogoTemplate logo, float logoWidth,
+                                  float logoHeight, float x, float y) {
+        int rasterWidth = Math.max(1, Math.round(logoWidth));
+        int rasterHeight = Math.max(1, Math.round(logoHeight));
+        int[] raster = logo.rasterise(rasterWidth, rasterHeight);
+
+        // The logo and the QR do not overlap, so the pixels are copied instead of blended
+        int left = Math.round(x);
+        int top = Math.round(y);
+        int columns = Math.min(rasterWidth, width - left);
+        for (int row = 0; row < rasterHeight && top + row < height; row++) {
+            System.arraycopy(raster, row * rasterWidth, pixels, (top + row) * width + left, columns);
+        }
+    }
+
+    private static void paintQR(int[] pixels, int width, int height, BitMatrix qr, boolean isPositive,
+                                float qrWidth, float qrHeight, float x, float y) {
+        int colour = isPositive ? BLACK : WHITE;
+        int[] columnEdges = edges(qr.getWidth(), qrWidth / qr.getWidth(), x, width);
+        int[] rowEdges = edges(qr.getHeight(), qrHeight / qr.getHeight(), y, height);
+        int left = columnEdges[0];
+        int rowWidth = columnEdges[qr.getWidth()] - left;
+
+        for (int row = 0; row < qr.getHeight(); row++) {
+            int top = rowEdges[row];
+            int bottom = rowEdges[row + 1];
+            if (top == bottom) {
+                continue;
+            }
+
+            // Paint the first pixel row of the modules and copy it to the rest of the rows of the modules
+            int first = top * width;
+            for (int column = 0; column < qr.getWidth(); column++) {
+                if (qr.get(column, row)) {
+                    Arrays.fill(pixels, first + columnEdges[column], first + columnEdges[column + 1], colour);
+                }
+            }
+            for (int line = top + 1; line < bottom; line++) {
+                System.arraycopy(pixels, first + left, pixels, line * width + left, rowWidth);
+            }
+        }
+    }
+
+    /**
+     * Calculates the pixel edges of the modules, rounding each edge so the modules have no gaps nor overlaps
+     */
+    private static int[] edges(int modules, float moduleSize, float start, int limit) {
+        int[] edges = new int[modules + 1];
+        for (int i = 0; i <= modules; i++) {
+            edges[i] = Math.min(limit, Math.round(start + i * moduleSize));
+        }
+        return edges;
+    }
+
+    /**
+     * The image where the QRs are rendered and the PNG writer, reused by the QRs with the same size
+     * <p>
+     * A canvas is not thread safe, it is borrowed from a pool by the thread rendering a QR.
+     */
+    static final class Canvas {
+
+        private final ImageWriter writer;
+        private final ImageWriteParam writeParam;
+        private BufferedImage image;
+        private int[] pixels;
+        private IIOMetadata metadata;
+        private int metadataDpi;
+
+        Canvas() {
+            this.writer = ImageIO.getImageWritersByFormatName("png").next();
+            this.writeParam = this.writer.getDefaultWriteParam();
+        }
+
+        /**
+         * @return the pixels of a transparent image of the given size, the image is only allocated if the size changed
+         */
+        int[] clear(int width, int height) {
+            if (this.image == null || this.image.getWidth() != width || this.image.getHeight() != height) {
+                this.image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+                this.pixels = ((DataBufferInt) this.image.getRaster().getDataBuffer()).getData();
+            } else {
+                Arrays.fill(this.pixels, TRANSPARENT);
+            }
+            return this.pixels;
+        }
+
+        /**
+         * Writes the image as a PNG, with its resolution in the pHYs chunk
+         */
+        void write(int dpi, OutputStream out) throws IOException {
+            if (this.metadata == null || this.metadataDpi != dpi) {
+                this.metadata = createMetadata(dpi);
+                this.metadataDpi = dpi;
+            }
+            try (ImageOutputStream stream = new MemoryCacheImageOutputStream(out)) {
+                this.writer.setOutput(stream);
+                this.writer.write(null, new IIOImage(this.image, null, this.metadata), this.writeParam);
+            } finally {
+                this.writer.setOutput(null);
+            }
+        }
+
+        private IIOMetadata createMetadata(int dpi) throws IOException {
+            IIOMetadata result = this.writer.getDefaultImageMetadata(
+                    ImageTypeSpecifier.createFromBufferedImageType(BufferedImage.TYPE_INT_ARGB), this.writeParam);
+            String pixelsPerMeter = String.valueOf(Math.round(dpi / METERS_PER_INCH));
+            IIOMetadataNode physicalDimensions = new IIOMetadataNode("pHYs");
+            physicalDimensions.setAttribute("pixelsPerUnitXAxis", pixelsPerMeter);
+            physicalDimensions.setAttribute("pixelsPerUnitYAxis", pixelsPerMeter);
+            physicalDimensions.setAttribute("unitSpecifier", "meter");
+            IIOMetadataNode root = new IIOMetadataNode(result.getNativeMetadataFormatName());
+            root.appendChild(physicalDimensions);
+            result.mergeTree(result.getNativeMetadataFormatName(), root);
+            return result;
+        }
+    }
+}
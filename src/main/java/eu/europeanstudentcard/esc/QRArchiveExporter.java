@@ -0,0 +1,275 @@
+package eu.europeanstudentcard.esc;
+
+import eu.europeanstudentcard.esc.constants.QRConstants;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Exports the QRs of many cards to a ZIP or tar archive, one SVG entry per card
+ * <p>
+ * The QRs are generated in parallel in an executor and written by the calling thread, in the same order as the card
+ * numbers. The card numbers are read one by one and at most {@code maxInFlight} QRs are generated but not yet
+ * written, so the memory used does not depend on the number of cards. An exporter is immutable and can be shared.
+ */
+public class QRArchiveExporter {
+
+    private final QRFactory qrFactory;
+    private final QRConstants.ArchiveFormat format;
+    private final Function<String, String> entryName;
+    private final Executor executor;
+    private final int maxInFlight;
+
+    /**
+     * Creates an exporter naming the entries after the card numbers, cardNumber.svg, and generating the QRs in the
+     * common fork join pool
+     *
+     * @param qrFactory the factory generating the QRs
+     * @param format    the format of the archive
+     */
+    public QRArchiveExporter(QRFactory qrFactory, QRConstants.ArchiveFormat format) {
+        this(qrFactory, format, cardNumber -> cardNumber.concat(QRConstants.SVG_EXTENSION), ForkJoinPool.commonPool(),
+                ForkJoinPool.getCommonPoolParallelism() * 4);
+    }
+
+    /**
+     * @param qrFactory   the factory generating the QRs
+     * @param format      the format of the archive
+     * @param entryName   returns the name of the entry of a card number
+     * @param executor    the executor where the QRs are generated
+     * @param maxInFlight the maximum number of QRs generated but not yet written, it should be a few times the
+     *                    number of threads of the executor
+     */
+    public QRArchiveExporter(QRFactory qrFactory, QRConstants.ArchiveFormat format, Function<String, String> entryName,
+                             Executor executor, int maxInFlight) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("maxInFlight must be positive");
+        }
+        this.qrFactory = qrFactory;
+        this.format = format;
+        this.entryName = entryName;
+        this.executor = executor;
+        this.maxInFlight = maxInFlight;
+    }
+
+    /**
+     * Generates the QRs of the cards and writes them to the archive
+     * <p>
+     * A card whose QR cannot be generated, whose entry is already in a ZIP archive or whose entry name is longer than
+     * 100 bytes in a tar archive, is skipped and reported in the summary, an error writing the archive stops the
+     * export.
+     *
+     * @param cardNumbers the numbers of the cards, read one by one
+     * @param orientation the orientation of the QRs, vertical/horizontal
+     * @param colours     the colours of the QRs, normal/inverted
+     * @param size        the size of the QRs, XS (41x41px) + logo, S (61.5x61.5px) + logo, M (164x164px) + logo
+     * @param out         the stream where the archive is written, it is finished but not closed
+     * @return the number of exported QRs and the cards that could not be exported
+     * @throws QRFactoryException if the parameters are invalid or an error occurs while writing the archive
+     */
+    public Summary export(Iterator<String> cardNumbers, String orientation, String colours, String size,
+                          OutputStream out) throws QRFactoryException {
+        //Check the parameters once for the whole export
+        return this.export(cardNumbers, QRStyle.parse(orientation, colours, size), out);
+    }
+
+    /**
+     * Generates the QRs of the cards in a style resolved beforehand and writes them to the archive, see
+     * {@link #export(Iterator, String, String, String, OutputStream)}
+     *
+     * @param cardNumbers the numbers of the cards, read one by one
+     * @param style       the orientation, colours, size and render mode of the QRs
+     * @param out         the stream where the archive is written, it is finished but not closed
+     * @return the number of exported QRs and the cards that could not be exported
+     * @throws QRFactoryException if the style is null or an error occurs while writing the archive
+     */
+    public Summary export(Iterator<String> cardNumbers, QRStyle style, OutputStream out) throws QRFactoryException {
+        if (style == null) {
+            throw new QRFactoryException("Error validating parameters, invalid style");
+        }
+
+        ArchiveWriter writer = this.format == QRConstants.ArchiveFormat.ZIP ? new ZipArchiveWriter(out) : new TarArchiveWriter(out);
+        Deque<CompletableFuture<Entry>> inFlight = new ArrayDeque<>(this.maxInFlight);
+        List<QRResult> failures = new ArrayList<>();
+        int exported = 0;
+        try {
+            while (cardNumbers.hasNext() || !inFlight.isEmpty()) {
+                // Keep the generators busy, without holding more than maxInFlight QRs in memory
+                while (inFlight.size() < this.maxInFlight && cardNumbers.hasNext()) {
+                    String cardNumber = cardNumbers.next();
+                    inFlight.add(CompletableFuture.supplyAsync(
+                            () -> this.generate(cardNumber, style), this.executor));
+                }
+
+                Entry entry = inFlight.poll().get();
+                if (entry.error == null) {
+                    try {
+                        writer.putEntry(this.entryName.apply(entry.cardNumber), entry.content);
+                        exported++;
+                    } catch (QRFactoryException e) {
+                        failures.add(QRResult.failure(entry.cardNumber, e));
+                    }
+                } else {
+                    failures.add(QRResult.failure(entry.cardNumber, entry.error));
+                }
+            }
+            writer.finish();
+        } catch (IOException | ExecutionException e) {
+            throw new QRFactoryException(e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new QRFactoryException(e.getMessage());
+        } finally {
+            inFlight.forEach(future -> future.cancel(false));
+        }
+        return new Summary(exported, failures);
+    }
+
+    /**
+     * Generates the QR of one card, reporting any error in the entry instead of throwing it
+     */
+    private Entry generate(String cardNumber, QRStyle style) {
+        try {
+            return new Entry(cardNumber, this.qrFactory.generateQRBytes(cardNumber, style), null);
+        } catch (QRFactoryException e) {
+            return new Entry(cardNumber, null, e);
+        } catch (RuntimeException e) {
+            return new Entry(cardNumber, null, new QRFactoryException(e.getMessage()));
+        }
+    }
+
+    /**
+     * Exports the QRs of the cards, see {@link #export(Iterator, String, String, String, OutputStream)}
+     */
+    public Summary export(Iterable<String> cardNumbers, String orientation, String colours, String size,
+                          OutputStream out) throws QRFactoryException {
+        return this.export(cardNumbers.iterator(), orientation, colours, size, out);
+    }
+
+    /**
+     * Exports the QRs of the cards, see {@link #export(Iterator, QRStyle, OutputStream)}
+     */
+    public Summary export(Iterable<String> cardNumbers, QRStyle style, OutputStream out) throws QRFactoryException {
+        return this.export(cardNumbers.iterator(), style, out);
+    }
+
+    /**
+     * The result of an export
+     */
+    public static final class Summary {
+
+        private final int exported;
+        private final List<QRResult> failures;
+
+        private Summary(int exported, List<QRResult> failures) {
+            this.exported = exported;
+            this.failures = Collections.unmodifiableList(failures);
+        }
+
+        /**
+         * @return the number of QRs written to the archive
+         */
+        public int getExported() {
+            return exported;
+        }
+
+        /**
+         * @return the cards that could not be exported, with their errors, in the same order as the card numbers
+         */
+        public List<QRResult> getFailures() {
+            return failures;
+        }
+    }
+
+    /**
+     * A generated QR waiting to be written to the archive
+     */
+    private static final class Entry {
+
+        private final String cardNumber;
+        private final byte[] content;
+        private final QRFactoryException error;
+
+        private Entry(String cardNumber, byte[] content, QRFactoryException error) {
+            this.cardNumber = cardNumber;
+            this.content = content;
+            this.error = error;
+        }
+    }
+
+    private interface ArchiveWriter {
+        /**
+         * @throws QRFactoryException if the archive cannot contain the entry, nothing is written
+         * @throws IOException        if an error occurs while writing the archive
+         */
+        void putEntry(String name, byte[] content) throws IOException, QRFactoryException;
+
+        void finish() throws IOException;
+    }
+
+    private static final class ZipArchiveWriter implements ArchiveWriter {
+
+        private final ZipOutputStream zip;
+        // The stream keeps its own names, but fails the whole archive on a duplicate entry
+        private final Set<String> names = new HashSet<>();
+
+        private ZipArchiveWriter(OutputStream out) {
+            this.zip = new ZipOutputStream(out);
+        }
+
+        @Override
+        public void putEntry(String name, byte[] content) throws IOException, QRFactoryException {
+            if (!this.names.add(name)) {
+                throw new QRFactoryException("Duplicate entry " + name);
+            }
+            this.zip.putNextEntry(new ZipEntry(name));
+            this.zip.write(content);
+            this.zip.closeEntry();
+        }
+
+        @Override
+        public void finish() throws IOException {
+            this.zip.finish();
+            this.zip.flush();
+        }
+    }
+
+    private static final class TarArchiveWriter implements ArchiveWriter {
+
+        private final TarWriter tar;
+
+        private TarArchiveWriter(OutputStream out) {
+            this.tar = new TarWriter(out);
+        }
+
+        @Override
+        public void putEntry(String name, byte[] content) throws IOException, QRFactoryException {
+            // The names do not fit in a ustar header above 100 bytes, the archive would be cut short by the error
+            if (!TarWriter.isValidName(name)) {
+                throw new QRFactoryException(TarWriter.nameTooLong(name));
+            }
+            // A tar archive can contain the same name twice, the last entry is the one extracted
+            this.tar.putEntry(name, content);
+        }
+
+        @Override
+        public void finish() throws IOException {
+            this.tar.finish();
+        }
+    }
+}
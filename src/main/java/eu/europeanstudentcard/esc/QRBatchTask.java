@@ -0,0 +1,66 @@
+package eu.europeanstudentcard.esc;
+
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Fork join task generating the QRs of a range of card numbers
+ * <p>
+ * The range is split in halves until it has at most {@link #CHUNK_SIZE} cards, which are generated sequentially.
+ * Each task writes only its own range of the results array.
+ */
+final class QRBatchTask extends RecursiveAction {
+
+    /**
+     * The number of QRs generated sequentially by a task, a QR takes around a millisecond, so a chunk is enough
+     * work to make the cost of forking negligible while keeping the load balanced between threads
+     */
+    static final int CHUNK_SIZE = 16;
+
+    /**
+     * Generates the QR of one card
+     */
+    @FunctionalInterface
+    interface Generator {
+        String generate(String cardNumber) throws QRFactoryException;
+    }
+
+    private final String[] cardNumbers;
+    private final QRResult[] results;
+    private final int from;
+    private final int to;
+    private final Generator generator;
+
+    QRBatchTask(String[] cardNumbers, QRResult[] results, int from, int to, Generator generator) {
+        this.cardNumbers = cardNumbers;
+        this.results = results;
+        this.from = from;
+        this.to = to;
+        this.generator = generator;
+    }
+
+    @Override
+    protected void compute() {
+        if (this.to - this.from <= CHUNK_SIZE) {
+            for (int i = this.from; i < this.to; i++) {
+                this.results[i] = generate(this.cardNumbers[i], this.generator);
+            }
+        } else {
+            int middle = (this.from + this.to) >>> 1;
+            invokeAll(new QRBatchTask(this.cardNumbers, this.results, this.from, middle, this.generator),
+                    new QRBatchTask(this.cardNumbers, this.results, middle, this.to, this.generator));
+        }
+    }
+
+    /**
+     * Generates the QR of one card, reporting any error in the result instead of throwing it
+     */
+    static QRResult generate(String cardNumber, Generator generator) {
+        try {
+            return QRResult.success(cardNumber, generator.generate(cardNumber));
+        } catch (QRFactoryException e) {
+            return QRResult.failure(cardNumber, e);
+        } catch (RuntimeException e) {
+            return QRResult.failure(cardNumber, new QRFactoryException(e.getMessage()));
+        }
+    }
+}
@@ -0,0 +1,305 @@
+package eu.europeanstudentcard.esc;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * A bounded cache of generated QRs, for the QRs of the same cards that are generated again and again
+ * <p>
+ * The QRs are stored as the bytes written by the factory, keyed by the verifier uri, the card number, the style,
+ * the output format and the size and margin of the QRs of the factory. The least recently used QRs are evicted when
+ * the number of QRs or their approximate size in memory exceeds the limits, and a QR older than the time to live is
+ * generated again. The hits, misses, evictions and expirations are counted, so the cache can be sized from its
+ * {@link #getStats() statistics}.
+ * <p>
+ * A cache is thread safe and can be shared by several factories. The entries are guarded by a lock, held only while
+ * the map is read or updated and never while a QR is generated, so two threads missing the same QR at the same time
+ * both generate it.
+ */
+public final class QRCache {
+
+    /**
+     * The approximate size in bytes of an entry without its content: the map node, the key and its uri
+     */
+    static final int ENTRY_OVERHEAD = 160;
+
+    private final int maxEntries;
+    private final long maxBytes;
+    private final long timeToLiveNanos;
+    private final LongSupplier nanoTime;
+    private final Lock lock = new ReentrantLock();
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+    private long bytes;
+
+    /**
+     * Creates a cache whose QRs do not expire
+     *
+     * @param maxEntries the maximum number of QRs
+     * @param maxBytes   the maximum approximate size in memory of the QRs
+     */
+    public QRCache(int maxEntries, long maxBytes) {
+        this(maxEntries, maxBytes, null);
+    }
+
+    /**
+     * @param maxEntries the maximum number of QRs
+     * @param maxBytes   the maximum approximate size in memory of the QRs
+     * @param timeToLive the time after which a QR is generated again, or null if the QRs do not expire
+     */
+    public QRCache(int maxEntries, long maxBytes, Duration timeToLive) {
+        this(maxEntries, maxBytes, timeToLive, System::nanoTime);
+    }
+
+    QRCache(int maxEntries, long maxBytes, Duration timeToLive, LongSupplier nanoTime) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("maxEntries must be positive");
+        }
+        if (maxBytes < 1) {
+            throw new IllegalArgumentException("maxBytes must be positive");
+        }
+        if (timeToLive != null && (timeToLive.isNegative() || timeToLive.isZero())) {
+            throw new IllegalArgumentException("timeToLive must be positive");
+        }
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        this.timeToLiveNanos = timeToLive == null ? Long.MAX_VALUE : timeToLive.toNanos();
+        this.nanoTime = nanoTime;
+    }
+
+    /**
+     * @return the cached QR, or null if it is not cached or it expired
+     */
+    byte[] get(Key key) {
+        long now = this.nanoTime.getAsLong();
+        this.lock.lock();
+        try {
+            Entry entry = this.entries.get(key);
+            if (entry != null && now - entry.created < this.timeToLiveNanos) {
+                this.hits.increment();
+                return entry.content;
+            }
+            if (entry != null) {
+                this.remove(key, entry);
+                this.expirations.increment();
+            }
+            this.misses.increment();
+            return null;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Caches a generated QR, evicting the least recently used QRs if the cache is full
+     *
+     * @param content the generated QR, it must not be modified once cached
+     */
+    void put(Key key, byte[] content) {
+        long weight = weight(content);
+        if (weight > this.maxBytes) {
+            return;
+        }
+        long now = this.nanoTime.getAsLong();
+        this.lock.lock();
+        try {
+            Entry previous = this.entries.put(key, new Entry(content, now));
+            if (previous != null) {
+                this.bytes -= weight(previous.content);
+            }
+            this.bytes += weight;
+
+            Iterator<Map.Entry<Key, Entry>> eldest = this.entries.entrySet().iterator();
+            while (this.entries.size() > this.maxEntries || this.bytes > this.maxBytes) {
+                Map.Entry<Key, Entry> evicted = eldest.next();
+                eldest.remove();
+                this.bytes -= weight(evicted.getValue().content);
+                this.evictions.increment();
+            }
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Removes all the QRs, the statistics are kept
+     */
+    public void clear() {
+        this.lock.lock();
+        try {
+            this.entries.clear();
+            this.bytes = 0;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * @return a snapshot of the statistics of the cache
+     */
+    public Stats getStats() {
+        this.lock.lock();
+        try {
+            return new Stats(this.hits.sum(), this.misses.sum(), this.evictions.sum(), this.expirations.sum(),
+                    this.entries.size(), this.bytes);
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    private void remove(Key key, Entry entry) {
+        this.entries.remove(key);
+        this.bytes -= weight(entry.content);
+    }
+
+    private static long weight(byte[] content) {
+        return (long) content.length + ENTRY_OVERHEAD;
+    }
+
+    /**
+     * The key of a cached QR
+     */
+    static final class Key {
+
+        private final String uri;
+        private final QRStyle style;
+        private final int dpi;
+        private final int qrSize;
+        private final int qrMargin;
+        private final int hash;
+
+        /**
+         * @param uri      the verifier uri concatenated with the card number
+         * @param style    the style of the QR, the styles are cached so they are compared by identity
+         * @param dpi      the resolution of a PNG, or 0 for an SVG
+         * @param qrSize   the size of the QR of the factory, the factories sharing a cache may have different sizes
+         * @param qrMargin the margin of the QR of the factory
+         */
+        Key(String uri, QRStyle style, int dpi, int qrSize, int qrMargin) {
+            this.uri = uri;
+            this.style = style;
+            this.dpi = dpi;
+            this.qrSize = qrSize;
+            this.qrMargin = qrMargin;
+            this.hash = Objects.hash(uri, System.identityHashCode(style), dpi, qrSize, qrMargin);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return this.style == key.style && this.dpi == key.dpi && this.qrSize == key.qrSize
+                    && this.qrMargin == key.qrMargin && this.uri.equals(key.uri);
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hash;
+        }
+    }
+
+    private static final class Entry {
+
+        private final byte[] content;
+        private final long created;
+
+        private Entry(byte[] content, long created) {
+            this.content = content;
+            this.created = created;
+        }
+    }
+
+    /**
+     * The statistics of a cache at a given time
+     */
+    public static final class Stats {
+
+        private final long hitCount;
+        private final long missCount;
+        private final long evictionCount;
+        private final long expirationCount;
+        private final int entryCount;
+        private final long byteSize;
+
+        private Stats(long hitCount, long missCount, long evictionCount, long expirationCount, int entryCount,
+                      long byteSize) {
+            this.hitCount = hitCount;
+            this.missCount = missCount;
+            this.evictionCount = evictionCount;
+            this.expirationCount = expirationCount;
+            this.entryCount = entryCount;
+            this.byteSize = byteSize;
+        }
+
+        /**
+         * @return the number of QRs found in the cache
+         */
+        public long getHitCount() {
+            return hitCount;
+        }
+
+        /**
+         * @return the number of QRs not found in the cache, including the expired ones
+         */
+        public long getMissCount() {
+            return missCount;
+        }
+
+        /**
+         * @return the number of QRs removed to keep the cache within its limits
+         */
+        public long getEvictionCount() {
+            return evictionCount;
+        }
+
+        /**
+         * @return the number of QRs removed because they were older than the time to live
+         */
+        public long getExpirationCount() {
+            return expirationCount;
+        }
+
+        /**
+         * @return the number of cached QRs
+         */
+        public int getEntryCount() {
+            return entryCount;
+        }
+
+        /**
+         * @return the approximate size in memory of the cached QRs
+         */
+        public long getByteSize() {
+            return byteSize;
+        }
+
+        /**
+         * @return the ratio of hits to requests, or 0 if there were no requests
+         */
+        public double getHitRate() {
+            long requests = hitCount + missCount;
+            return requests == 0 ? 0 : (double) hitCount / requests;
+        }
+
+        @Override
+        public String toString() {
+            return "QRCache.Stats{hits=" + hitCount + ", misses=" + missCount + ", evictions=" + evictionCount
+                    + ", expirations=" + expirationCount + ", entries=" + entryCount + ", bytes=" + byteSize + '}';
+        }
+    }
+}
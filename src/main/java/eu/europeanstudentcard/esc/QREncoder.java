@@ -0,0 +1,655 @@
+package eu.europeanstudentcard.esc;
+
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+import com.google.zxing.qrcode.decoder.Mode;
+import com.google.zxing.qrcode.decoder.Version;
+import com.google.zxing.qrcode.encoder.Encoder;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Encodes the ESC payloads in QRs of a fixed version and error correction level
+ * <p>
+ * The payloads are always the verifier uri followed by the card number, encoded in byte mode at the same version and
+ * level, so everything that the generic ZXing writer computes for each QR is computed once here: the error correction
+ * blocks, the function patterns of the symbol, the order in which the data modules are placed, the type information
+ * and the data mask of each of the eight mask patterns, and the generator polynomial of the Reed-Solomon error
+ * correction. Encoding a QR only writes the codewords, divides them by the generator, places them with each mask and
+ * keeps the mask with the lowest penalty, in a {@link Workspace} borrowed from a pool by the calling thread, so no
+ * object is created but the result. The masks can be evaluated in parallel.
+ * <p>
+ * The result is the same BitMatrix as the one written by {@link com.google.zxing.qrcode.QRCodeWriter}, the steps and
+ * the penalty rules follow the ZXing encoder. The payloads that are not encoded in byte mode, or that do not fit in
+ * the version, are not supported and must be encoded by the generic writer. An encoder is immutable and can be shared
+ * between threads.
+ */
+final class QREncoder {
+
+    private static final byte EMPTY = -1;
+    private static final int NUM_MASK_PATTERNS = 8;
+
+    /**
+     * The type information of the error correction level and the mask, 5 bits, is protected by a BCH code and masked
+     */
+    private static final int TYPE_INFO_POLY = 0x537;
+    private static final int TYPE_INFO_MASK_PATTERN = 0x5412;
+    private static final int[][] TYPE_INFO_COORDINATES = {
+            {8, 0}, {8, 1}, {8, 2}, {8, 3}, {8, 4}, {8, 5}, {8, 7}, {8, 8},
+            {7, 8}, {5, 8}, {4, 8}, {3, 8}, {2, 8}, {1, 8}, {0, 8}};
+
+    /**
+     * The penalties of the adjacent modules of the same colour, the 2x2 blocks, the finder like patterns and the
+     * unbalanced dark modules
+     */
+    private static final int N1 = 3;
+    private static final int N2 = 3;
+    private static final int N3 = 40;
+    private static final int N4 = 10;
+
+    /**
+     * The exponentials and the logarithms of the Galois field GF(256) of the QR error correction, x^8+x^4+x^3+x^2+1
+     */
+    private static final int FIELD_POLY = 0x011D;
+    private static final int[] EXP = new int[256];
+    private static final int[] LOG = new int[256];
+
+    static {
+        int x = 1;
+        for (int i = 0; i < 255; i++) {
+            EXP[i] = x;
+            LOG[x] = i;
+            x <<= 1;
+            if (x >= 256) {
+                x ^= FIELD_POLY;
+            }
+        }
+        EXP[255] = EXP[0];
+    }
+
+    private final int dimension;
+    private final int quietZone;
+    private final int numDataBytes;
+    private final int numTotalBytes;
+    private final int numECBytesPerBlock;
+    private final int[] blockDataBytes;
+    private final int[] generator;
+    private final int characterCountBits;
+    private final boolean parallelMasks;
+    private final byte[] functionPatterns;
+    private final int[] dataPositions;
+    private final byte[][] dataMasks;
+    private final int[] typeInfoPositions;
+    private final byte[][] typeInfoBits;
+
+    /**
+     * @param version       the version of the QRs, from 1 to 6, the larger versions have version information
+     * @param level         the error correction level of the QRs
+     * @param quietZone     the margin of the QRs in modules
+     * @param parallelMasks if true, the penalties of the masks are evaluated in parallel in the common pool
+     */
+    QREncoder(Version version, ErrorCorrectionLevel level, int quietZone, boolean parallelMasks) {
+        if (version.getVersionNumber() > 6) {
+            throw new IllegalArgumentException("Only the versions 1 to 6 are supported");
+        }
+        this.dimension = version.getDimensionForVersion();
+        this.quietZone = quietZone;
+        this.parallelMasks = parallelMasks;
+        this.characterCountBits = Mode.BYTE.getCharacterCountBits(version);
+
+        // The error correction blocks
+        Version.ECBlocks ecBlocks = version.getECBlocksForLevel(level);
+        this.numTotalBytes = version.getTotalCodewords();
+        this.numECBytesPerBlock = ecBlocks.getECCodewordsPerBlock();
+        this.numDataBytes = this.numTotalBytes - ecBlocks.getTotalECCodewords();
+        this.blockDataBytes = new int[ecBlocks.getNumBlocks()];
+        int block = 0;
+        for (Version.ECB ecb : ecBlocks.getECBlocks()) {
+            for (int i = 0; i < ecb.getCount(); i++) {
+                this.blockDataBytes[block++] = ecb.getDataCodewords();
+            }
+        }
+
+        this.generator = generator(this.numECBytesPerBlock);
+
+        // The function patterns, the type information is reserved so the data is not placed over it
+        this.functionPatterns = new byte[this.dimension * this.dimension];
+        Arrays.fill(this.functionPatterns, EMPTY);
+        this.embedBasicPatterns(version);
+        this.typeInfoPositions = this.typeInfoPositions();
+        for (int position : this.typeInfoPositions) {
+            this.functionPatterns[position] = 0;
+        }
+        this.typeInfoBits = new byte[NUM_MASK_PATTERNS][];
+        for (int mask = 0; mask < NUM_MASK_PATTERNS; mask++) {
+            this.typeInfoBits[mask] = typeInfoBits(level, mask);
+        }
+
+        // The positions of the data modules, in the order of the bits, and their value in each mask
+        this.dataPositions = this.dataPositions();
+        this.dataMasks = new byte[NUM_MASK_PATTERNS][this.dataPositions.length];
+        for (int mask = 0; mask < NUM_MASK_PATTERNS; mask++) {
+            for (int i = 0; i < this.dataPositions.length; i++) {
+                int x = this.dataPositions[i] % this.dimension;
+                int y = this.dataPositions[i] / this.dimension;
+                this.dataMasks[mask][i] = (byte) (getDataMaskBit(mask, x, y) ? 1 : 0);
+            }
+        }
+    }
+
+    /**
+     * @return a new workspace, to be pooled
+     */
+    Workspace newWorkspace() {
+        return new Workspace(this);
+    }
+
+    /**
+     * Encodes the content like {@link com.google.zxing.qrcode.QRCodeWriter#encode}, with the version, level and
+     * margin of the encoder
+     *
+     * @param content   the content of the QR
+     * @param width     the minimum width of the result, the modules are scaled by a whole factor and centred
+     * @param height    the minimum height of the result
+     * @param workspace the workspace, borrowed by the calling thread
+     * @return the modules of the QR, or null if the content is not encoded in byte mode or does not fit in the version
+     */
+    BitMatrix encode(String content, int width, int height, Workspace workspace) {
+        if (content.isEmpty() || width < 0 || height < 0 || !this.writeDataCodewords(content, workspace.codewords)) {
+            return null;
+        }
+        this.appendErrorCorrection(workspace);
+
+        if (this.parallelMasks) {
+            ForkJoinTask<?>[] tasks = new ForkJoinTask<?>[NUM_MASK_PATTERNS];
+            for (int mask = 0; mask < NUM_MASK_PATTERNS; mask++) {
+                int pattern = mask;
+                tasks[mask] = ForkJoinPool.commonPool().submit(() -> {
+                    workspace.penalties[pattern] = this.buildMatrix(workspace, pattern);
+                });
+            }
+            for (ForkJoinTask<?> task : tasks) {
+                task.join();
+            }
+        } else {
+            for (int mask = 0; mask < NUM_MASK_PATTERNS; mask++) {
+                workspace.penalties[mask] = this.buildMatrix(workspace, mask);
+            }
+        }
+        // The first mask with the lowest penalty, as the generic writer
+        int bestMask = 0;
+        for (int mask = 1; mask < NUM_MASK_PATTERNS; mask++) {
+            if (workspace.penalties[mask] < workspace.penalties[bestMask]) {
+                bestMask = mask;
+            }
+        }
+        return this.render(workspace.matrices[bestMask], width, height);
+    }
+
+    /**
+     * Writes the mode, the length, the bytes of the content, the terminator and the padding
+     *
+     * @return false if the content is not encoded in byte mode or does not fit in the version
+     */
+    private boolean writeDataCodewords(String content, byte[] codewords) {
+        int length = content.length();
+        if (Encoder.chooseMode(content) != Mode.BYTE
+                || 4 + this.characterCountBits + length * 8 > this.numDataBytes * 8) {
+            return false;
+        }
+        Arrays.fill(codewords, 0, this.numDataBytes, (byte) 0);
+        int bit = writeBits(codewords, 0, Mode.BYTE.getBits(), 4);
+        bit = writeBits(codewords, bit, length, this.characterCountBits);
+        for (int i = 0; i < length; i++) {
+            char c = content.charAt(i);
+            // Only the characters of ISO-8859-1, the default encoding, are written as they are
+            if (c > 0xFF) {
+                return false;
+            }
+            bit = writeBits(codewords, bit, c, 8);
+        }
+
+        // Up to 4 zero bits as terminator, zero bits until the end of the byte, and the padding bytes
+        bit = Math.min(bit + 4, this.numDataBytes * 8);
+        for (int i = (bit + 7) / 8, padding = 0; i < this.numDataBytes; i++, padding++) {
+            codewords[i] = (byte) ((padding & 1) == 0 ? 0xEC : 0x11);
+        }
+        return true;
+    }
+
+    private static int writeBits(byte[] codewords, int bit, int value, int numBits) {
+        for (int i = numBits - 1; i >= 0; i--, bit++) {
+            if (((value >> i) & 1) != 0) {
+                codewords[bit >> 3] |= (byte) (0x80 >>> (bit & 7));
+            }
+        }
+        return bit;
+    }
+
+    /**
+     * Computes the error correction of each block and interleaves the data and the error correction codewords
+     */
+    private void appendErrorCorrection(Workspace workspace) {
+        int dataOffset = 0;
+        for (int block = 0; block < this.blockDataBytes.length; block++) {
+            this.reedSolomon(workspace.codewords, dataOffset, this.blockDataBytes[block], workspace.ecCodewords[block]);
+            dataOffset += this.blockDataBytes[block];
+        }
+
+        int offset = 0;
+        int maxDataBytes = this.blockDataBytes[this.blockDataBytes.length - 1];
+        for (int i = 0; i < maxDataBytes; i++) {
+            dataOffset = 0;
+            for (int block = 0; block < this.blockDataBytes.length; block++) {
+                if (i < this.blockDataBytes[block]) {
+                    workspace.interleaved[offset++] = workspace.codewords[dataOffset + i];
+                }
+                dataOffset += this.blockDataBytes[block];
+            }
+        }
+        for (int i = 0; i < this.numECBytesPerBlock; i++) {
+            for (int block = 0; block < this.blockDataBytes.length; block++) {
+                workspace.interleaved[offset++] = (byte) workspace.ecCodewords[block][i];
+            }
+        }
+    }
+
+    /**
+     * Computes the error correction codewords of a block, the remainder of the division of the data by the generator
+     */
+    private void reedSolomon(byte[] data, int offset, int length, int[] remainder) {
+        Arrays.fill(remainder, 0);
+        int last = remainder.length - 1;
+        for (int i = 0; i < length; i++) {
+            int factor = (data[offset + i] & 0xFF) ^ remainder[0];
+            System.arraycopy(remainder, 1, remainder, 0, last);
+            remainder[last] = 0;
+            if (factor != 0) {
+                int logFactor = LOG[factor];
+                for (int j = 0; j <= last; j++) {
+                    if (this.generator[j] >= 0) {
+                        remainder[j] ^= EXP[(this.generator[j] + logFactor) % 255];
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the logarithms of the coefficients but the leading one of the generator polynomial (x-a^0)...(x-a^(n-1)),
+     * -1 for the zero coefficients
+     */
+    private static int[] generator(int degree) {
+        int[] coefficients = new int[degree + 1];
+        coefficients[0] = 1;
+        for (int i = 0; i < degree; i++) {
+            // Multiply by (x - a^i), the highest degree coefficients first
+            for (int j = i + 1; j > 0; j--) {
+                coefficients[j] ^= multiply(coefficients[j - 1], EXP[i]);
+            }
+        }
+        int[] logarithms = new int[degree];
+        for (int j = 0; j < degree; j++) {
+            logarithms[j] = coefficients[j + 1] == 0 ? -1 : LOG[coefficients[j + 1]];
+        }
+        return logarithms;
+    }
+
+    private static int multiply(int a, int b) {
+        return a == 0 || b == 0 ? 0 : EXP[(LOG[a] + LOG[b]) % 255];
+    }
+
+    /**
+     * Places the codewords with the mask in the matrix of the mask
+     *
+     * @return the penalty of the mask
+     */
+    private int buildMatrix(Workspace workspace, int mask) {
+        byte[] matrix = workspace.matrices[mask];
+        System.arraycopy(this.functionPatterns, 0, matrix, 0, matrix.length);
+        byte[] typeInfo = this.typeInfoBits[mask];
+        for (int i = 0; i < this.typeInfoPositions.length; i++) {
+            matrix[this.typeInfoPositions[i]] = typeInfo[i];
+        }
+
+        // The modules after the last codeword are the remainder bits, zero before the mask
+        byte[] dataMask = this.dataMasks[mask];
+        byte[] codewords = workspace.interleaved;
+        int numBits = this.numTotalBytes * 8;
+        for (int i = 0; i < this.dataPositions.length; i++) {
+            int bit = i < numBits ? (codewords[i >> 3] >> (7 - (i & 7))) & 1 : 0;
+            matrix[this.dataPositions[i]] = (byte) (bit ^ dataMask[i]);
+        }
+        return this.penalty(matrix);
+    }
+
+    /**
+     * Scales the modules and adds the quiet zone, like the generic writer
+     */
+    private BitMatrix render(byte[] matrix, int width, int height) {
+        int qrWidth = this.dimension + this.quietZone * 2;
+        int outputWidth = Math.max(width, qrWidth);
+        int outputHeight = Math.max(height, qrWidth);
+        int multiple = Math.min(outputWidth / qrWidth, outputHeight / qrWidth);
+        int leftPadding = (outputWidth - this.dimension * multiple) / 2;
+        int topPadding = (outputHeight - this.dimension * multiple) / 2;
+
+        BitMatrix output = new BitMatrix(outputWidth, outputHeight);
+        for (int y = 0; y < this.dimension; y++) {
+            int outputY = topPadding + y * multiple;
+            for (int x = 0; x < this.dimension; x++) {
+                if (matrix[y * this.dimension + x] == 1) {
+                    output.setRegion(leftPadding + x * multiple, outputY, multiple, multiple);
+                }
+            }
+        }
+        return output;
+    }
+
+    private int penalty(byte[] matrix) {
+        return this.penaltyRule1(matrix) + this.penaltyRule2(matrix) + this.penaltyRule3(matrix)
+                + this.penaltyRule4(matrix);
+    }
+
+    /**
+     * Penalises the runs of 5 or more modules of the same colour, in the rows and in the columns
+     */
+    private int penaltyRule1(byte[] matrix) {
+        int penalty = 0;
+        for (int i = 0; i < this.dimension; i++) {
+            int rowRun = 0;
+            int rowPrevious = -1;
+            int columnRun = 0;
+            int columnPrevious = -1;
+            for (int j = 0; j < this.dimension; j++) {
+                int rowBit = matrix[i * this.dimension + j];
+                if (rowBit == rowPrevious) {
+                    rowRun++;
+                } else {
+                    if (rowRun >= 5) {
+                        penalty += N1 + (rowRun - 5);
+                    }
+                    rowRun = 1;
+                    rowPrevious = rowBit;
+                }
+                int columnBit = matrix[j * this.dimension + i];
+                if (columnBit == columnPrevious) {
+                    columnRun++;
+                } else {
+                    if (columnRun >= 5) {
+                        penalty += N1 + (columnRun - 5);
+                    }
+                    columnRun = 1;
+                    columnPrevious = columnBit;
+                }
+            }
+            if (rowRun >= 5) {
+                penalty += N1 + (rowRun - 5);
+            }
+            if (columnRun >= 5) {
+                penalty += N1 + (columnRun - 5);
+            }
+        }
+        return penalty;
+    }
+
+    /**
+     * Penalises the 2x2 blocks of modules of the same colour
+     */
+    private int penaltyRule2(byte[] matrix) {
+        int penalty = 0;
+        for (int y = 0; y < this.dimension - 1; y++) {
+            int row = y * this.dimension;
+            int next = row + this.dimension;
+            for (int x = 0; x < this.dimension - 1; x++) {
+                byte value = matrix[row + x];
+                if (value == matrix[row + x + 1] && value == matrix[next + x] && value == matrix[next + x + 1]) {
+                    penalty++;
+                }
+            }
+        }
+        return N2 * penalty;
+    }
+
+    /**
+     * Penalises the 1:1:3:1:1 patterns, similar to the finder patterns, with 4 light modules on either side
+     */
+    private int penaltyRule3(byte[] matrix) {
+        int d = this.dimension;
+        int penalties = 0;
+        for (int y = 0; y < d; y++) {
+            for (int x = 0; x < d; x++) {
+                int i = y * d + x;
+                if (x + 6 < d && matrix[i] == 1 && matrix[i + 1] == 0 && matrix[i + 2] == 1 && matrix[i + 3] == 1
+                        && matrix[i + 4] == 1 && matrix[i + 5] == 0 && matrix[i + 6] == 1
+                        && (this.isLight(matrix, y * d, 1, x - 4, x) || this.isLight(matrix, y * d, 1, x + 7, x + 11))) {
+                    penalties++;
+                }
+                if (y + 6 < d && matrix[i] == 1 && matrix[i + d] == 0 && matrix[i + 2 * d] == 1
+                        && matrix[i + 3 * d] == 1 && matrix[i + 4 * d] == 1 && matrix[i + 5 * d] == 0
+                        && matrix[i + 6 * d] == 1
+                        && (this.isLight(matrix, x, d, y - 4, y) || this.isLight(matrix, x, d, y + 7, y + 11))) {
+                    penalties++;
+                }
+            }
+        }
+        return penalties * N3;
+    }
+
+    /**
+     * @return true if the modules from and until to of a row or a column are light, false if they are out of the matrix
+     */
+    private boolean isLight(byte[] matrix, int start, int step, int from, int to) {
+        if (from < 0 || this.dimension < to) {
+            return false;
+        }
+        for (int i = from; i < to; i++) {
+            if (matrix[start + i * step] == 1) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Penalises each 5% of dark modules more or less than half of the modules
+     */
+    private int penaltyRule4(byte[] matrix) {
+        int dark = 0;
+        for (byte module : matrix) {
+            dark += module;
+        }
+        int total = matrix.length;
+        return Math.abs(dark * 2 - total) * 10 / total * N4;
+    }
+
+    private void embedBasicPatterns(Version version) {
+        int d = this.dimension;
+        // The finder patterns and their separators, in three corners
+        this.embedFinderPattern(0, 0);
+        this.embedFinderPattern(d - 7, 0);
+        this.embedFinderPattern(0, d - 7);
+        for (int i = 0; i < 8; i++) {
+            this.set(i, 7, 0);
+            this.set(d - 8 + i, 7, 0);
+            this.set(i, d - 8, 0);
+        }
+        for (int i = 0; i < 7; i++) {
+            this.set(7, i, 0);
+            this.set(d - 8, i, 0);
+            this.set(7, d - 7 + i, 0);
+        }
+
+        // The dark module
+        this.set(8, d - 8, 1);
+
+        // The alignment patterns which do not overlap the finder patterns
+        int[] centers = version.getAlignmentPatternCenters();
+        for (int y : centers) {
+            for (int x : centers) {
+                if (this.functionPatterns[y * d + x] == EMPTY) {
+                    for (int dy = -2; dy <= 2; dy++) {
+                        for (int dx = -2; dx <= 2; dx++) {
+                            int ring = Math.max(Math.abs(dx), Math.abs(dy));
+                            this.set(x + dx, y + dy, ring == 1 ? 0 : 1);
+                        }
+                    }
+                }
+            }
+        }
+
+        // The timing patterns
+        for (int i = 8; i < d - 8; i++) {
+            int bit = (i + 1) % 2;
+            if (this.functionPatterns[6 * d + i] == EMPTY) {
+                this.set(i, 6, bit);
+            }
+            if (this.functionPatterns[i * d + 6] == EMPTY) {
+                this.set(6, i, bit);
+            }
+        }
+    }
+
+    private void embedFinderPattern(int left, int top) {
+        for (int dy = 0; dy < 7; dy++) {
+            for (int dx = 0; dx < 7; dx++) {
+                int ring = Math.max(Math.abs(dx - 3), Math.abs(dy - 3));
+                this.set(left + dx, top + dy, ring == 2 ? 0 : 1);
+            }
+        }
+    }
+
+    private void set(int x, int y, int value) {
+        this.functionPatterns[y * this.dimension + x] = (byte) value;
+    }
+
+    /**
+     * @return the two positions of each of the 15 bits of the type information
+     */
+    private int[] typeInfoPositions() {
+        int[] positions = new int[TYPE_INFO_COORDINATES.length * 2];
+        for (int i = 0; i < TYPE_INFO_COORDINATES.length; i++) {
+            positions[i * 2] = TYPE_INFO_COORDINATES[i][1] * this.dimension + TYPE_INFO_COORDINATES[i][0];
+            if (i < 8) {
+                positions[i * 2 + 1] = 8 * this.dimension + this.dimension - i - 1;
+            } else {
+                positions[i * 2 + 1] = (this.dimension - 7 + (i - 8)) * this.dimension + 8;
+            }
+        }
+        return positions;
+    }
+
+    /**
+     * @return the modules of the type information of the level and the mask, at the type information positions
+     */
+    private static byte[] typeInfoBits(ErrorCorrectionLevel level, int mask) {
+        int typeInfo = (level.getBits() << 3) | mask;
+        int bits = ((typeInfo << 10) | bchCode(typeInfo, TYPE_INFO_POLY)) ^ TYPE_INFO_MASK_PATTERN;
+        byte[] modules = new byte[TYPE_INFO_COORDINATES.length * 2];
+        for (int i = 0; i < TYPE_INFO_COORDINATES.length; i++) {
+            // The least significant bit first
+            byte bit = (byte) ((bits >> i) & 1);
+            modules[i * 2] = bit;
+            modules[i * 2 + 1] = bit;
+        }
+        return modules;
+    }
+
+    private static int bchCode(int value, int poly) {
+        int polyMsb = 32 - Integer.numberOfLeadingZeros(poly);
+        value <<= polyMsb - 1;
+        while (32 - Integer.numberOfLeadingZeros(value) >= polyMsb) {
+            value ^= poly << (32 - Integer.numberOfLeadingZeros(value) - polyMsb);
+        }
+        return value;
+    }
+
+    /**
+     * @return the positions of the modules that are not function patterns, in the zigzag order of the data bits
+     */
+    private int[] dataPositions() {
+        int d = this.dimension;
+        int[] positions = new int[d * d];
+        int count = 0;
+        int direction = -1;
+        int x = d - 1;
+        int y = d - 1;
+        while (x > 0) {
+            // Skip the vertical timing pattern
+            if (x == 6) {
+                x--;
+            }
+            while (y >= 0 && y < d) {
+                for (int i = 0; i < 2; i++) {
+                    if (this.functionPatterns[y * d + x - i] == EMPTY) {
+                        positions[count++] = y * d + x - i;
+                    }
+                }
+                y += direction;
+            }
+            direction = -direction;
+            y += direction;
+            x -= 2;
+        }
+        return Arrays.copyOf(positions, count);
+    }
+
+    private static boolean getDataMaskBit(int mask, int x, int y) {
+        int intermediate;
+        int temp;
+        switch (mask) {
+            case 0:
+                intermediate = (y + x) & 0x1;
+                break;
+            case 1:
+                intermediate = y & 0x1;
+                break;
+            case 2:
+                intermediate = x % 3;
+                break;
+            case 3:
+                intermediate = (y + x) % 3;
+                break;
+            case 4:
+                intermediate = ((y / 2) + (x / 3)) & 0x1;
+                break;
+            case 5:
+                temp = y * x;
+                intermediate = (temp & 0x1) + (temp % 3);
+                break;
+            case 6:
+                temp = y * x;
+                intermediate = ((temp & 0x1) + (temp % 3)) & 0x1;
+                break;
+            default:
+                temp = y * x;
+                intermediate = ((temp % 3) + ((y + x) & 0x1)) & 0x1;
+                break;
+        }
+        return intermediate == 0;
+    }
+
+    /**
+     * The buffers where a QR is encoded, reused by the following QRs
+     * <p>
+     * A workspace is not thread safe, it is borrowed from a pool by the thread encoding a QR. When the masks are
+     * evaluated in parallel, each task only writes the matrix and the penalty of its mask.
+     */
+    static final class Workspace {
+
+        private final byte[] codewords;
+        private final int[][] ecCodewords;
+        private final byte[] interleaved;
+        private final byte[][] matrices;
+        private final int[] penalties = new int[NUM_MASK_PATTERNS];
+
+        private Workspace(QREncoder encoder) {
+            this.codewords = new byte[encoder.numDataBytes];
+            this.ecCodewords = new int[encoder.blockDataBytes.length][encoder.numECBytesPerBlock];
+            this.interleaved = new byte[encoder.numTotalBytes];
+            this.matrices = new byte[NUM_MASK_PATTERNS][encoder.dimension * encoder.dimension];
+        }
+    }
+}
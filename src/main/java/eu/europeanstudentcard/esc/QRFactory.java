@@ -6,57 +6,193 @@ import com.google.zxing.WriterException;
 import com.google.zxing.common.BitMatrix;
 import com.google.zxing.qrcode.QRCodeWriter;
 import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+import com.google.zxing.qrcode.decoder.Version;
 import eu.europeanstudentcard.esc.constants.QRConstants;
-import org.apache.batik.anim.dom.SAXSVGDocumentFactory;
-import org.apache.batik.util.XMLResourceDescriptor;
-import org.apache.commons.io.FileUtils;
 import org.springframework.core.io.ClassPathResource;
 import org.w3c.dom.Document;
-import org.w3c.dom.Element;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.EnumMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * This class is used to generate QRs for the european student cards
  * <p>
  * verifierUri: the uri pointing to the ESC Verifier, this uri will be concatenated with the card number
  * <p>
- * qrSize: the minimum size of the QR 41x41px
+ * qrSize: the minimum size of the QR 41x41px, configurable with the builder
  * <p>
- * qrMargin: the minimum margin of the QR 4 modules/px
+ * qrMargin: the minimum margin of the QR 4 modules/px, configurable with the builder
  * <p>
  * qrVersion: the version of the QR: Version 4, contains 33 modules of information
  * <p>
  * qrErrorCorrectionLevel: the error correction level: M
+ * <p>
+ * A factory is thread safe and is meant to be created once and shared, also between virtual threads. The logos, the QR
+ * writer and the encoding hints are immutable and shared by all the calls, and the output buffers and the XML parsers
+ * and transformers of the DOM path, which are not thread safe, are borrowed from lock-free pools. No lock is held while
+ * a QR is generated and no file is accessed, so virtual threads are not pinned to their carrier threads. An optional
+ * {@link QRCache} returns the QRs generated before, see {@link #builder()}.
+ * <p>
+ * The asynchronous methods, {@link #generateQRAsync} and {@link #publishQRs}, generate the QRs in two bounded
+ * executors of the factory, so non-blocking servers do not generate them in their event loops. The single QRs and the
+ * batches have their own executor, a large batch only slows down the single QRs by sharing the processors.
+ * <p>
+ * The SVGs only need ZXing and the JDK. Batik is an optional dependency, needed to generate PNGs and by the DOM path,
+ * {@link #mergeSVG} and {@link #serializeDocument}, whose parsers are only created on first use. Spring is only needed
+ * by the {@code mergeSVG} method taking a {@code ClassPathResource}.
  */
 public class QRFactory {
 
+    /**
+     * The initial size in bytes of the buffers where the QRs are composed, enough for a logo of 45 KB and a QR of
+     * around 800 dark modules
+     */
+    private static final int OUTPUT_BUFFER_CAPACITY = 128 * 1024;
+
+    /**
+     * The writer keeps no state between calls, so it is shared by all the factories and threads
+     */
+    private static final QRCodeWriter QR_CODE_WRITER = new QRCodeWriter();
+
+    /**
+     * The maximum number of idle output buffers, and of idle parsers, builders and transformers kept for the DOM path
+     */
+    private static final int MAX_IDLE_RESOURCES = Runtime.getRuntime().availableProcessors();
+
+    private static final String DEFAULT_VERIFIER_URI = "https://s.esc-r.eu/";
+
+    /**
+     * The resolution given to the SVGs in the cache keys, the PNGs have a resolution of at least 1 DPI
+     */
+    private static final int SVG_CACHE_DPI = 0;
+
+    /**
+     * The threads of the default executor of the single QRs, and of the batches, which leave half of the processors
+     * to the single QRs
+     */
+    private static final int ASYNC_THREADS = Runtime.getRuntime().availableProcessors();
+    private static final int BULK_THREADS = Math.max(1, ASYNC_THREADS / 2);
+
+    /**
+     * The maximum number of QRs waiting for a thread in a default executor, a QR takes around a millisecond, so a full
+     * queue is a second of work for each thread
+     */
+    private static final int EXECUTOR_QUEUE_CAPACITY = 1024;
+
+    /**
+     * The number of QRs of a batch generated ahead of its subscriber by default, a few per thread of the default
+     * executor of the batches
+     */
+    private static final int DEFAULT_MAX_IN_FLIGHT = BULK_THREADS * 4;
+
     private final String verifierUri;
     private final int qrSize;
     private final int qrMargin;
+    private final int encodedMargin;
     private final int qrVersion;
-    private final String qrErrorCorrectionLevel;
+    private final QRConstants.ErrorLevel qrErrorCorrectionLevel;
+    private final LogoTemplateCache logoTemplates;
+    private final LayoutTable layouts;
+    private final SVGComposer composer;
+    private final PNGRenderer pngRenderer;
+    private final Map<EncodeHintType, Object> encodeHints;
+    private final QREncoder encoder;
+    private final ResourcePool<QREncoder.Workspace> encoderWorkspaces;
+    private final QRCache cache;
+    private final QRListener listener;
+    private final boolean instrumented;
+    private final Executor asyncExecutor;
+    private final Executor bulkExecutor;
+    private final ResourcePool<OutputBuffer> outputBuffers = new ResourcePool<>(
+            () -> new OutputBuffer(OUTPUT_BUFFER_CAPACITY), OutputBuffer::reset, MAX_IDLE_RESOURCES);
+    private final ResourcePool<ModuleEncoder> moduleEncoders = new ResourcePool<>(
+            ModuleEncoder::new, MAX_IDLE_RESOURCES);
+    private final ResourcePool<PNGRenderer.Canvas> canvases = new ResourcePool<>(
+            PNGRenderer.Canvas::new, MAX_IDLE_RESOURCES);
+    private final Lock domMergerLock = new ReentrantLock();
+    private volatile DOMMerger domMerger;
 
     public QRFactory() {
-        this.qrErrorCorrectionLevel = "M";
-        this.qrVersion = 4;
-        this.qrMargin = 4;
-        this.qrSize = 41;
-        this.verifierUri = "https://s.esc-r.eu/";
+        this(DEFAULT_VERIFIER_URI);
     }
 
     public QRFactory(String host) {
-        this.verifierUri = host;
-        this.qrErrorCorrectionLevel = "M";
+        this(host, false);
+    }
+
+    /**
+     * @param host           the uri pointing to the ESC Verifier
+     * @param eagerLoadLogos if true, the logos are loaded when the factory is created instead of on first use
+     */
+    public QRFactory(String host, boolean eagerLoadLogos) {
+        this(new Builder().host(host).eagerLoadLogos(eagerLoadLogos));
+    }
+
+    private QRFactory(Builder builder) {
+        this.verifierUri = builder.host;
+        this.qrErrorCorrectionLevel = QRConstants.ErrorLevel.M;
         this.qrVersion = 4;
-        this.qrMargin = 4;
-        this.qrSize = 41;
+        this.qrMargin = builder.qrMargin;
+        this.qrSize = builder.qrSize;
+        this.logoTemplates = new LogoTemplateCache(builder.eagerLoadLogos);
+
+        // The modules are scaled by the largest whole factor fitting in the size and centred, as done by the writer,
+        // so the size in modules and the margin of the encoded QRs are known beforehand
+        int codeModules = 17 + 4 * this.qrVersion;
+        int qrModules = Math.max(this.qrSize, codeModules + this.qrMargin * 2);
+        int moduleScale = qrModules / (codeModules + this.qrMargin * 2);
+        this.encodedMargin = (qrModules - codeModules * moduleScale) / 2;
+        this.layouts = new LayoutTable(qrModules, this.encodedMargin);
+        this.composer = new SVGComposer(this.encodedMargin);
+        this.pngRenderer = new PNGRenderer(this.encodedMargin);
+        if (builder.eagerLoadLogos) {
+            try {
+                this.layouts.precompute(this.logoTemplates);
+            } catch (IOException e) {
+                throw new IllegalStateException("Error loading the logos", e);
+            }
+        }
+        this.cache = builder.cache;
+        this.listener = builder.listener;
+        // Without listener no time is measured
+        this.instrumented = builder.listener != QRListener.NOOP;
+        // The threads of the default executors are only started by the asynchronous methods
+        this.asyncExecutor = builder.asyncExecutor != null ? builder.asyncExecutor : newExecutor("qr-async", ASYNC_THREADS);
+        this.bulkExecutor = builder.bulkExecutor != null ? builder.bulkExecutor : newExecutor("qr-bulk", BULK_THREADS);
+
+        // Set the parameters of the QR
+        Map<EncodeHintType, Object> hints = new EnumMap<>(EncodeHintType.class);
+        ErrorCorrectionLevel errorCorrectionLevel = ErrorCorrectionLevel.forBits(this.qrErrorCorrectionLevel.getBits());
+        hints.put(EncodeHintType.ERROR_CORRECTION, errorCorrectionLevel);
+        hints.put(EncodeHintType.QR_VERSION, this.qrVersion);
+        hints.put(EncodeHintType.MARGIN, this.qrMargin);
+        this.encodeHints = Collections.unmodifiableMap(hints);
+        this.encoder = new QREncoder(Version.getVersionForNumber(this.qrVersion), errorCorrectionLevel, this.qrMargin,
+                builder.parallelMasks);
+        this.encoderWorkspaces = new ResourcePool<>(this.encoder::newWorkspace, MAX_IDLE_RESOURCES);
     }
 
     public static QRFactory create() {
@@ -67,6 +203,17 @@ public class QRFactory {
         return new QRFactory(host);
     }
 
+    public static QRFactory create(String host, boolean eagerLoadLogos) {
+        return new QRFactory(host, eagerLoadLogos);
+    }
+
+    /**
+     * @return a builder of factories with the optional features, like the cache of generated QRs
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
     /**
      * Generates the QR with the ESC Logo
      *
@@ -78,51 +225,587 @@ public class QRFactory {
      * @return the QR pointing to the ESC Verifier
      */
     public String generateQR(String cardNumber, String orientation, String colours, String size) throws QRFactoryException {
-        //Check the parameters
-        this.areValidParameters(orientation, colours, size);
-
-        String result = "";
-        // Get the QR properties and the scale factor
-        boolean isVertical = QRConstants.VERTICAL_ORIENTATION.equalsIgnoreCase(orientation);
-        boolean isPositive = QRConstants.NORMAL_COLOUR.equalsIgnoreCase(colours);
-        boolean isExtraSmallSize = QRConstants.EXTRA_SMALL_SIZE.equalsIgnoreCase(size);
-        boolean isSmallSize = QRConstants.SMALL_SIZE.equalsIgnoreCase(size);
-
-        float scaleFactor = isExtraSmallSize ? 1.0f : isSmallSize ? 1.5f : 4f;
-
-        // Generate the path of the logo based on the QR properties
-        String documentPath = "logos/";
-        String path = documentPath
-                .concat(isVertical ? QRConstants.VERTICAL_ORIENTATION : QRConstants.HORIZONTAL_ORIENTATION)
-                .concat("_")
-                .concat(isPositive ? QRConstants.NORMAL_COLOUR : QRConstants.INVERTED_COLOUR)
-                .concat(QRConstants.SVG_EXTENSION);
+        return this.generateQR(cardNumber, this.style(orientation, colours, size, QRConstants.RenderMode.RECT));
+    }
+
+    /**
+     * Generates the QR with the ESC Logo, drawing the modules of the QR with the given render mode
+     *
+     * @param cardNumber:  the number of the card, will be concatenated with the uri
+     * @param orientation: the orientation of the QR, vertical/horizontal
+     * @param colours:     the colours of the QR, normal/inverted
+     * @param size:        the size of the QR, XS (41x41px) + logo, S (61.5x61.5px) + logo, M (164x164px) + logo
+     * @param renderMode:  RECT, one rect per dark module, or PATH, one path for all the dark modules
+     * @throws QRFactoryException if an error occurs while generating the QR
+     * @return the QR pointing to the ESC Verifier
+     */
+    public String generateQR(String cardNumber, String orientation, String colours, String size,
+                             QRConstants.RenderMode renderMode) throws QRFactoryException {
+        return this.generateQR(cardNumber, this.style(orientation, colours, size, renderMode));
+    }
+
+    /**
+     * Generates the QR with the ESC Logo in a style resolved beforehand, without parsing any parameter
+     *
+     * @param cardNumber: the number of the card, will be concatenated with the uri
+     * @param style:      the orientation, colours, size and render mode of the QR, and whether its SVG is compact
+     * @throws QRFactoryException if an error occurs while generating the QR
+     * @return the QR pointing to the ESC Verifier
+     */
+    public String generateQR(String cardNumber, QRStyle style) throws QRFactoryException {
+        return this.generate(cardNumber, checkStyle(style), OutputBuffer::toString);
+    }
+
+    /**
+     * Generates the QR with the ESC Logo and writes it to the stream in UTF-8, without creating a String
+     *
+     * @param cardNumber:  the number of the card, will be concatenated with the uri
+     * @param orientation: the orientation of the QR, vertical/horizontal
+     * @param colours:     the colours of the QR, normal/inverted
+     * @param size:        the size of the QR, XS (41x41px) + logo, S (61.5x61.5px) + logo, M (164x164px) + logo
+     * @param out:         the stream where the QR is written, it is neither flushed nor closed
+     * @throws QRFactoryException if an error occurs while generating or writing the QR
+     */
+    public void writeQR(String cardNumber, String orientation, String colours, String size, OutputStream out) throws QRFactoryException {
+        this.writeQR(cardNumber, this.style(orientation, colours, size, QRConstants.RenderMode.RECT), out);
+    }
+
+    /**
+     * Generates the QR with the ESC Logo and writes it to the channel in UTF-8, without creating a String
+     *
+     * @param cardNumber:  the number of the card, will be concatenated with the uri
+     * @param orientation: the orientation of the QR, vertical/horizontal
+     * @param colours:     the colours of the QR, normal/inverted
+     * @param size:        the size of the QR, XS (41x41px) + logo, S (61.5x61.5px) + logo, M (164x164px) + logo
+     * @param channel:     the channel where the QR is written, in blocking mode, it is not closed
+     * @throws QRFactoryException if an error occurs while generating or writing the QR
+     */
+    public void writeQR(String cardNumber, String orientation, String colours, String size, WritableByteChannel channel) throws QRFactoryException {
+        this.writeQR(cardNumber, this.style(orientation, colours, size, QRConstants.RenderMode.RECT), channel);
+    }
+
+    /**
+     * Generates the QR with the ESC Logo and appends it to a character sequence, like a Writer or a StringBuilder
+     *
+     * @param cardNumber:  the number of the card, will be concatenated with the uri
+     * @param orientation: the orientation of the QR, vertical/horizontal
+     * @param colours:     the colours of the QR, normal/inverted
+     * @param size:        the size of the QR, XS (41x41px) + logo, S (61.5x61.5px) + logo, M (164x164px) + logo
+     * @param out:         where the QR is appended, it is neither flushed nor closed
+     * @throws QRFactoryException if an error occurs while generating or appending the QR
+     */
+    public void writeQR(String cardNumber, String orientation, String colours, String size, Appendable out) throws QRFactoryException {
+        this.writeQR(cardNumber, this.style(orientation, colours, size, QRConstants.RenderMode.RECT), out);
+    }
+
+    /**
+     * Generates the QR with the ESC Logo in a style resolved beforehand and writes it to the stream in UTF-8
+     *
+     * @param cardNumber: the number of the card, will be concatenated with the uri
+     * @param style:      the orientation, colours, size and render mode of the QR
+     * @param out:        the stream where the QR is written, it is neither flushed nor closed
+     * @throws QRFactoryException if an error occurs while generating or writing the QR
+     */
+    public void writeQR(String cardNumber, QRStyle style, OutputStream out) throws QRFactoryException {
+        this.generate(cardNumber, checkStyle(style), buffer -> {
+            buffer.writeTo(out);
+            return null;
+        });
+    }
+
+    /**
+     * Generates the QR with the ESC Logo in a style resolved beforehand and writes it to the channel in UTF-8
+     *
+     * @param cardNumber: the number of the card, will be concatenated with the uri
+     * @param style:      the orientation, colours, size and render mode of the QR
+     * @param channel:    the channel where the QR is written, in blocking mode, it is not closed
+     * @throws QRFactoryException if an error occurs while generating or writing the QR
+     */
+    public void writeQR(String cardNumber, QRStyle style, WritableByteChannel channel) throws QRFactoryException {
+        this.generate(cardNumber, checkStyle(style), buffer -> {
+            buffer.writeTo(channel);
+            return null;
+        });
+    }
+
+    /**
+     * Generates the QR with the ESC Logo in a style resolved beforehand and appends it to a character sequence
+     *
+     * @param cardNumber: the number of the card, will be concatenated with the uri
+     * @param style:      the orientation, colours, size and render mode of the QR
+     * @param out:        where the QR is appended, it is neither flushed nor closed
+     * @throws QRFactoryException if an error occurs while generating or appending the QR
+     */
+    public void writeQR(String cardNumber, QRStyle style, Appendable out) throws QRFactoryException {
+        this.generate(cardNumber, checkStyle(style), buffer -> {
+            buffer.appendTo(out);
+            return null;
+        });
+    }
+
+    /**
+     * Generates the QR with the ESC Logo as a PNG at 96 DPI, where the image has the same size in pixels as the SVG
+     *
+     * @param cardNumber:  the number of the card, will be concatenated with the uri
+     * @param orientation: the orientation of the QR, vertical/horizontal
+     * @param colours:     the colours of the QR, normal/inverted
+     * @param size:        the size of the QR, XS (41x41px) + logo, S (61.5x61.5px) + logo, M (164x164px) + logo
+     * @throws QRFactoryException if an error occurs while generating the QR
+     * @return the PNG of the QR pointing to the ESC Verifier
+     */
+    public byte[] generateQRPng(String cardNumber, String orientation, String colours, String size) throws QRFactoryException {
+        return this.generateQRPng(cardNumber, orientation, colours, size, QRConstants.DEFAULT_DPI);
+    }
+
+    /**
+     * Generates the QR with the ESC Logo as a PNG, rendering the QR modules directly without transcoding the SVG
+     *
+     * @param cardNumber:  the number of the card, will be concatenated with the uri
+     * @param orientation: the orientation of the QR, vertical/horizontal
+     * @param colours:     the colours of the QR, normal/inverted
+     * @param size:        the size of the QR, XS (41x41px) + logo, S (61.5x61.5px) + logo, M (164x164px) + logo
+     * @param dpi:         the resolution of the image, from 1 to 1200, the sizes are given at 96 DPI
+     * @throws QRFactoryException if an error occurs while generating the QR
+     * @return the PNG of the QR pointing to the ESC Verifier
+     */
+    public byte[] generateQRPng(String cardNumber, String orientation, String colours, String size, int dpi) throws QRFactoryException {
+        return this.generateQRPng(cardNumber, this.style(orientation, colours, size, QRConstants.RenderMode.RECT), dpi);
+    }
+
+    /**
+     * Generates the QR with the ESC Logo as a PNG, in a style resolved beforehand
+     *
+     * @param cardNumber: the number of the card, will be concatenated with the uri
+     * @param style:      the orientation, colours and size of the QR, the render mode is not used
+     * @param dpi:        the resolution of the image, from 1 to 1200, the sizes are given at 96 DPI
+     * @throws QRFactoryException if an error occurs while generating the QR
+     * @return the PNG of the QR pointing to the ESC Verifier
+     */
+    public byte[] generateQRPng(String cardNumber, QRStyle style, int dpi) throws QRFactoryException {
+        return this.generatePng(cardNumber, checkStyle(style), dpi, OutputBuffer::toByteArray);
+    }
+
+    /**
+     * Generates the QR with the ESC Logo as a PNG and writes it to the stream
+     *
+     * @param cardNumber:  the number of the card, will be concatenated with the uri
+     * @param orientation: the orientation of the QR, vertical/horizontal
+     * @param colours:     the colours of the QR, normal/inverted
+     * @param size:        the size of the QR, XS (41x41px) + logo, S (61.5x61.5px) + logo, M (164x164px) + logo
+     * @param dpi:         the resolution of the image, from 1 to 1200, the sizes are given at 96 DPI
+     * @param out:         the stream where the PNG is written, it is neither flushed nor closed
+     * @throws QRFactoryException if an error occurs while generating or writing the QR
+     */
+    public void writeQRPng(String cardNumber, String orientation, String colours, String size, int dpi,
+                           OutputStream out) throws QRFactoryException {
+        this.writeQRPng(cardNumber, this.style(orientation, colours, size, QRConstants.RenderMode.RECT), dpi, out);
+    }
+
+    /**
+     * Generates the QR with the ESC Logo as a PNG, in a style resolved beforehand, and writes it to the stream
+     *
+     * @param cardNumber: the number of the card, will be concatenated with the uri
+     * @param style:      the orientation, colours and size of the QR, the render mode is not used
+     * @param dpi:        the resolution of the image, from 1 to 1200, the sizes are given at 96 DPI
+     * @param out:        the stream where the PNG is written, it is neither flushed nor closed
+     * @throws QRFactoryException if an error occurs while generating or writing the QR
+     */
+    public void writeQRPng(String cardNumber, QRStyle style, int dpi, OutputStream out) throws QRFactoryException {
+        this.generatePng(cardNumber, checkStyle(style), dpi, buffer -> {
+            buffer.writeTo(out);
+            return null;
+        });
+    }
+
+    /**
+     * Generates the QR with the ESC Logo as an SVG encoded in UTF-8
+     *
+     * @throws QRFactoryException if an error occurs while generating the QR
+     * @return the QR pointing to the ESC Verifier
+     */
+    byte[] generateQRBytes(String cardNumber, QRStyle style) throws QRFactoryException {
+        return this.generate(cardNumber, checkStyle(style), OutputBuffer::toByteArray);
+    }
+
+    /**
+     * Generates the QRs of several cards with the same orientation, colours and size in the common fork join pool
+     *
+     * @param cardNumbers: the numbers of the cards, each one will be concatenated with the uri
+     * @param orientation: the orientation of the QRs, vertical/horizontal
+     * @param colours:     the colours of the QRs, normal/inverted
+     * @param size:        the size of the QRs, XS (41x41px) + logo, S (61.5x61.5px) + logo, M (164x164px) + logo
+     * @throws QRFactoryException if the orientation, the colours or the size are invalid
+     * @return a result per card number, in the same order as the card numbers
+     */
+    public List<QRResult> generateQRs(Collection<String> cardNumbers, String orientation, String colours, String size) throws QRFactoryException {
+        return this.generateQRs(cardNumbers, orientation, colours, size, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Generates the QRs of several cards with the same orientation, colours and size in parallel
+     * <p>
+     * The card numbers are split in chunks that are generated as fork join tasks in the given pool. A card whose QR
+     * cannot be generated does not stop the others, its error is reported in its result.
+     *
+     * @param cardNumbers: the numbers of the cards, each one will be concatenated with the uri
+     * @param orientation: the orientation of the QRs, vertical/horizontal
+     * @param colours:     the colours of the QRs, normal/inverted
+     * @param size:        the size of the QRs, XS (41x41px) + logo, S (61.5x61.5px) + logo, M (164x164px) + logo
+     * @param pool:        the pool where the QRs are generated, its parallelism limits the number of threads used
+     * @throws QRFactoryException if the orientation, the colours or the size are invalid
+     * @return a result per card number, in the same order as the card numbers
+     */
+    public List<QRResult> generateQRs(Collection<String> cardNumbers, String orientation, String colours, String size,
+                                      ForkJoinPool pool) throws QRFactoryException {
+        //Check the parameters once for the whole batch
+        return this.generateQRs(cardNumbers, this.style(orientation, colours, size, QRConstants.RenderMode.RECT), pool);
+    }
+
+    /**
+     * Generates the QRs of several cards in the same style in the common fork join pool
+     *
+     * @param cardNumbers: the numbers of the cards, each one will be concatenated with the uri
+     * @param style:       the orientation, colours, size and render mode of the QRs
+     * @throws QRFactoryException if the style is null
+     * @return a result per card number, in the same order as the card numbers
+     */
+    public List<QRResult> generateQRs(Collection<String> cardNumbers, QRStyle style) throws QRFactoryException {
+        return this.generateQRs(cardNumbers, style, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Generates the QRs of several cards in the same style in parallel, see
+     * {@link #generateQRs(Collection, String, String, String, ForkJoinPool)}
+     *
+     * @param cardNumbers: the numbers of the cards, each one will be concatenated with the uri
+     * @param style:       the orientation, colours, size and render mode of the QRs
+     * @param pool:        the pool where the QRs are generated, its parallelism limits the number of threads used
+     * @throws QRFactoryException if the style is null
+     * @return a result per card number, in the same order as the card numbers
+     */
+    public List<QRResult> generateQRs(Collection<String> cardNumbers, QRStyle style, ForkJoinPool pool) throws QRFactoryException {
+        checkStyle(style);
+        String[] numbers = cardNumbers.toArray(new String[0]);
+        QRResult[] results = new QRResult[numbers.length];
+        pool.invoke(new QRBatchTask(numbers, results, 0, numbers.length,
+                cardNumber -> this.generate(cardNumber, style, OutputBuffer::toString)));
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Generates the QRs of a stream of cards in the same style in the common fork join pool, see
+     * {@link #generateQRs(Collection, String, String, String, ForkJoinPool)}
+     *
+     * @param cardNumbers: the numbers of the cards, each one will be concatenated with the uri, the stream is consumed
+     * @param style:       the orientation, colours, size and render mode of the QRs
+     * @throws QRFactoryException if the style is null
+     * @return a result per card number, in the same order as the card numbers
+     */
+    public List<QRResult> generateQRs(Stream<String> cardNumbers, QRStyle style) throws QRFactoryException {
+        checkStyle(style);
+        return this.generateQRs(cardNumbers.collect(Collectors.toList()), style, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Generates the QRs of several cards in the same style in parallel in an executor
+     * <p>
+     * The card numbers are split in chunks of {@value QRBatchTask#CHUNK_SIZE} cards, each one generated by a task of
+     * the executor, and the calling thread waits for all of them. A chunk rejected by the executor is generated by the
+     * calling thread, so a saturated executor slows down the batch instead of failing its cards. A card whose QR
+     * cannot be generated does not stop the others, its error is reported in its result.
+     *
+     * @param cardNumbers: the numbers of the cards, each one will be concatenated with the uri
+     * @param style:       the orientation, colours, size and render mode of the QRs
+     * @param executor:    the executor where the QRs are generated, its threads limit the number of threads used
+     * @throws QRFactoryException if the style is null
+     * @return a result per card number, in the same order as the card numbers
+     */
+    public List<QRResult> generateQRs(Iterable<String> cardNumbers, QRStyle style, Executor executor)
+            throws QRFactoryException {
+        checkStyle(style);
+        List<String> numbers = new ArrayList<>();
+        cardNumbers.forEach(numbers::add);
+        QRResult[] results = new QRResult[numbers.size()];
+        QRBatchTask.Generator generator = cardNumber -> this.generate(cardNumber, style, OutputBuffer::toString);
+        List<CompletableFuture<Void>> chunks = new ArrayList<>(numbers.size() / QRBatchTask.CHUNK_SIZE + 1);
+        for (int from = 0; from < results.length; from += QRBatchTask.CHUNK_SIZE) {
+            int start = from;
+            int end = Math.min(from + QRBatchTask.CHUNK_SIZE, results.length);
+            Runnable chunk = () -> {
+                for (int i = start; i < end; i++) {
+                    results[i] = QRBatchTask.generate(numbers.get(i), generator);
+                }
+            };
+            try {
+                chunks.add(CompletableFuture.runAsync(chunk, executor));
+            } catch (RejectedExecutionException e) {
+                chunk.run();
+            }
+        }
+        CompletableFuture.allOf(chunks.toArray(new CompletableFuture<?>[0])).join();
+        return Arrays.asList(results);
+    }
 
+    /**
+     * Generates the QR with the ESC Logo in the executor of the single QRs, without blocking the calling thread
+     *
+     * @param cardNumber:  the number of the card, will be concatenated with the uri
+     * @param orientation: the orientation of the QR, vertical/horizontal
+     * @param colours:     the colours of the QR, normal/inverted
+     * @param size:        the size of the QR, XS (41x41px) + logo, S (61.5x61.5px) + logo, M (164x164px) + logo
+     * @return the QR pointing to the ESC Verifier, completed with a QRFactoryException if the parameters are invalid
+     * or an error occurs while generating the QR
+     */
+    public CompletableFuture<String> generateQRAsync(String cardNumber, String orientation, String colours, String size) {
         try {
-            // Concatenate the uri with the card number and retrieve the logo with the generated path
-            String uri = this.getVerifierUri().concat(cardNumber);
-            String file = Objects.requireNonNull(getClass().getClassLoader().getResource(path)).getFile();
-            ClassPathResource cpr = new ClassPathResource(path);
+            return this.generateQRAsync(cardNumber, this.style(orientation, colours, size, QRConstants.RenderMode.RECT));
+        } catch (QRFactoryException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Generates the QR with the ESC Logo in a style resolved beforehand in the executor of the single QRs, without
+     * blocking the calling thread
+     * <p>
+     * If the executor is saturated, the future is completed with a QRFactoryException, the QR is not generated.
+     *
+     * @param cardNumber: the number of the card, will be concatenated with the uri
+     * @param style:      the orientation, colours, size and render mode of the QR, and whether its SVG is compact
+     * @return the QR pointing to the ESC Verifier, completed with a QRFactoryException if the style is null or an
+     * error occurs while generating the QR
+     */
+    public CompletableFuture<String> generateQRAsync(String cardNumber, QRStyle style) {
+        CompletableFuture<String> result = new CompletableFuture<>();
+        try {
+            this.asyncExecutor.execute(() -> {
+                try {
+                    result.complete(this.generateQR(cardNumber, style));
+                } catch (QRFactoryException | RuntimeException e) {
+                    result.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            QRFactoryException rejected = new QRFactoryException("Error generating the QR, too many QRs are waiting");
+            if (this.instrumented) {
+                this.listener.onError(rejected);
+            }
+            result.completeExceptionally(rejected);
+        }
+        return result;
+    }
+
+    /**
+     * Publishes the QRs of several cards with the same orientation, colours and size as they are requested, see
+     * {@link #publishQRs(Iterable, QRStyle, int)}
+     *
+     * @param cardNumbers: the numbers of the cards, each one will be concatenated with the uri
+     * @param orientation: the orientation of the QRs, vertical/horizontal
+     * @param colours:     the colours of the QRs, normal/inverted
+     * @param size:        the size of the QRs, XS (41x41px) + logo, S (61.5x61.5px) + logo, M (164x164px) + logo
+     * @throws QRFactoryException if the orientation, the colours or the size are invalid
+     * @return the publisher of a result per card number, in the same order as the card numbers
+     */
+    public Flow.Publisher<QRResult> publishQRs(Iterable<String> cardNumbers, String orientation, String colours,
+                                               String size) throws QRFactoryException {
+        return this.publishQRs(cardNumbers, this.style(orientation, colours, size, QRConstants.RenderMode.RECT),
+                DEFAULT_MAX_IN_FLIGHT);
+    }
+
+    /**
+     * Publishes the QRs of several cards in the same style as they are requested, see
+     * {@link #publishQRs(Iterable, QRStyle, int)}
+     *
+     * @param cardNumbers: the numbers of the cards, each one will be concatenated with the uri
+     * @param style:       the orientation, colours, size and render mode of the QRs, and whether their SVG is compact
+     * @throws QRFactoryException if the style is null
+     * @return the publisher of a result per card number, in the same order as the card numbers
+     */
+    public Flow.Publisher<QRResult> publishQRs(Iterable<String> cardNumbers, QRStyle style) throws QRFactoryException {
+        return this.publishQRs(cardNumbers, style, DEFAULT_MAX_IN_FLIGHT);
+    }
+
+    /**
+     * Publishes the QRs of several cards in the same style, generating them in the executor of the batches only when
+     * the subscriber requests them
+     * <p>
+     * The card numbers are read one by one and at most {@code maxInFlight} QRs are generated ahead of the subscriber,
+     * so a slow subscriber slows down the generation and the memory used does not depend on the number of cards. A
+     * card whose QR cannot be generated does not stop the others, its error is reported in its result. Each subscriber
+     * iterates the card numbers again.
+     *
+     * @param cardNumbers: the numbers of the cards, each one will be concatenated with the uri
+     * @param style:       the orientation, colours, size and render mode of the QRs, and whether their SVG is compact
+     * @param maxInFlight: the maximum number of QRs generated ahead of the subscriber, it should be a few times the
+     *                     number of threads of the executor of the batches
+     * @throws QRFactoryException if the style is null
+     * @throws IllegalArgumentException if maxInFlight is not positive
+     * @return the publisher of a result per card number, in the same order as the card numbers
+     */
+    public Flow.Publisher<QRResult> publishQRs(Iterable<String> cardNumbers, QRStyle style, int maxInFlight)
+            throws QRFactoryException {
+        checkStyle(style);
+        return new QRPublisher(cardNumbers, cardNumber -> this.generate(cardNumber, style, OutputBuffer::toString),
+                this.bulkExecutor, maxInFlight);
+    }
+
+    /**
+     * Creates a default executor of the asynchronous methods, with a bounded queue and daemon threads which are
+     * stopped after a minute without QRs, so a factory does not need to be closed
+     */
+    private static ThreadPoolExecutor newExecutor(String name, int threads) {
+        AtomicInteger count = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(EXECUTOR_QUEUE_CAPACITY), runnable -> {
+                    Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Validates the String parameters and resolves their style, parsing each of them once
+     */
+    private QRStyle style(String orientation, String colours, String size, QRConstants.RenderMode renderMode)
+            throws QRFactoryException {
+        try {
+            return QRStyle.parse(orientation, colours, size, renderMode);
+        } catch (QRFactoryException e) {
+            if (this.instrumented) {
+                this.listener.onError(e);
+            }
+            throw e;
+        }
+    }
+
+    private static QRStyle checkStyle(QRStyle style) throws QRFactoryException {
+        if (style == null) {
+            throw new QRFactoryException("Error validating parameters, invalid style");
+        }
+        return style;
+    }
 
-            // Generate QR SVG string
-            String qrSVG = this.generateQRCodeSvg(uri, this.qrSize, this.qrSize, isPositive);
+    /**
+     * Generates the QR with the ESC Logo as an SVG in a pooled buffer and passes the buffer to the handler, which
+     * copies the QR to its destination
+     */
+    private <T> T generate(String cardNumber, QRStyle style, BufferHandler<T> handler) throws QRFactoryException {
+        // Write the QR and the logo in one SVG, without building a DOM
+        return this.generate(cardNumber, style, SVG_CACHE_DPI, (bitMatrix, logo, buffer) -> {
+            SVGComposer.Template template = this.layouts.get(logo, style);
+            if (template.getLayout().fits(bitMatrix)) {
+                ModuleEncoder encoder = this.moduleEncoders.borrow();
+                try {
+                    this.composer.compose(bitMatrix, style.isPositive(), style.getRenderMode(), template, encoder, buffer);
+                } finally {
+                    this.moduleEncoders.release(encoder);
+                }
+            } else {
+                // Only if encodeQR is overridden to encode QRs of another size
+                this.composer.compose(bitMatrix, style.isPositive(), style.getRenderMode(), style.isCompact(), logo,
+                        style.isVertical(), style.getScaleFactor(), buffer);
+            }
+        }, handler);
+    }
 
-            // Create a temporary file for the QR
-            File qrFile = File.createTempFile("temp", QRConstants.SVG_EXTENSION);
-            FileUtils.writeStringToFile(qrFile, qrSVG);
+    /**
+     * Checks the resolution and renders the QR with the ESC Logo as a PNG in a pooled buffer
+     */
+    private <T> T generatePng(String cardNumber, QRStyle style, int dpi, BufferHandler<T> handler) throws QRFactoryException {
+        if (dpi < 1 || dpi > QRConstants.MAX_DPI) {
+            QRFactoryException e = new QRFactoryException("Error validating parameters, invalid dpi");
+            if (this.instrumented) {
+                this.listener.onError(e);
+            }
+            throw e;
+        }
 
+        // The PNGs of the compact styles are the same, they share the cached PNG and the rasters of the original logos
+        QRStyle pngStyle = style.withCompact(false);
+        return this.generate(cardNumber, pngStyle, dpi, (bitMatrix, logo, buffer) -> {
+            PNGRenderer.Canvas canvas = this.canvases.borrow();
             try {
-                // Merge the QR SVG and the Logo SVG in one SVG
-                result = this.mergeSVG(qrFile, new File(file), isVertical, cpr, scaleFactor);
+                this.pngRenderer.render(bitMatrix, pngStyle.isPositive(), logo, pngStyle.isVertical(),
+                        pngStyle.getScaleFactor(), dpi, canvas, buffer);
             } finally {
-                qrFile.delete();
+                this.canvases.release(canvas);
+            }
+        }, handler);
+    }
+
+    /**
+     * Encodes the QR, renders it with its logo in a pooled buffer and passes the buffer to the handler
+     * <p>
+     * If the factory has a cache, a cached QR is copied to the buffer instead, and a rendered QR is cached.
+     */
+    private <T> T generate(String cardNumber, QRStyle style, int dpi, Renderer renderer, BufferHandler<T> handler)
+            throws QRFactoryException {
+        long start = this.instrumented ? System.nanoTime() : 0;
+        try {
+            // Concatenate the uri with the card number
+            String uri = this.getVerifierUri().concat(cardNumber);
+            QRCache.Key key = this.cache == null ? null : new QRCache.Key(uri, style, dpi, this.qrSize, this.qrMargin);
+            byte[] cached = key == null ? null : this.cache.get(key);
+            if (key != null && this.instrumented) {
+                this.listener.onCacheAccess(cached != null);
             }
 
+            OutputBuffer buffer = this.outputBuffers.borrow();
+            try {
+                if (cached != null) {
+                    buffer.write(cached);
+                } else {
+                    // Retrieve the logo based on the QR properties and generate the QR modules
+                    LogoTemplate logo = this.logoTemplates.get(style.isVertical(), style.isPositive(), style.isCompact());
+                    long encodeStart = this.instrumented ? System.nanoTime() : 0;
+                    BitMatrix bitMatrix = this.encodeQR(uri, this.qrSize, this.qrSize);
+
+                    long renderStart = this.instrumented ? System.nanoTime() : 0;
+                    renderer.render(bitMatrix, logo, buffer);
+                    if (this.instrumented) {
+                        this.listener.onStage(QRConstants.Stage.ENCODE, renderStart - encodeStart);
+                        this.listener.onStage(dpi == SVG_CACHE_DPI ? QRConstants.Stage.COMPOSE : QRConstants.Stage.RASTERISE,
+                                System.nanoTime() - renderStart);
+                    }
+                    if (key != null) {
+                        this.cache.put(key, buffer.toByteArray());
+                    }
+                }
+                T result = handler.handle(buffer);
+                if (this.instrumented) {
+                    this.listener.onGenerated(dpi == SVG_CACHE_DPI ? QRConstants.OutputFormat.SVG : QRConstants.OutputFormat.PNG,
+                            style, buffer.size(), System.nanoTime() - start);
+                }
+                return result;
+            } finally {
+                if (buffer.capacity() <= OutputBuffer.MAX_RETAINED_CAPACITY) {
+                    this.outputBuffers.release(buffer);
+                }
+            }
         } catch (Exception e) {
+            if (this.instrumented) {
+                this.listener.onError(e);
+            }
             throw new QRFactoryException(e.getMessage());
         }
+    }
 
-        return result;
+    /**
+     * Writes the encoded QR and the logo to the buffer, as an SVG or a PNG
+     */
+    @FunctionalInterface
+    private interface Renderer {
+        void render(BitMatrix bitMatrix, LogoTemplate logo, OutputBuffer buffer) throws Exception;
+    }
+
+    /**
+     * Copies the generated QR from the buffer to its destination
+     */
+    @FunctionalInterface
+    private interface BufferHandler<T> {
+        T handle(OutputBuffer buffer) throws IOException;
     }
 
     /**
@@ -132,22 +815,41 @@ public class QRFactory {
      * @param colours:     the colours of the QR, normal/inverted
      * @param size:        the size of the QR, XS (41x41px) + logo, S (61.5x61.5px) + logo, M (164x164px) + logo
      * @throws QRFactoryException if the input parameters are invalid
+     * @deprecated the String methods, like {@code generateQR}, no longer call this method, they resolve the style
+     * with {@link QRStyle#parse}, so overriding it has no effect on the generated QRs. Use {@link QRStyle#parse} to
+     * validate the parameters
      */
+    @Deprecated
     protected void areValidParameters(String orientation, String colours, String size) throws QRFactoryException {
-        if (!orientation.equalsIgnoreCase(QRConstants.VERTICAL_ORIENTATION) && !
-                orientation.equalsIgnoreCase(QRConstants.HORIZONTAL_ORIENTATION)) {
-            throw new QRFactoryException("Error validating parameters, invalid orientation");
-        }
+        QRStyle.parse(orientation, colours, size);
+    }
 
-        if (!colours.equalsIgnoreCase(QRConstants.NORMAL_COLOUR) && !colours.equalsIgnoreCase(QRConstants.INVERTED_COLOUR)) {
-            throw new QRFactoryException("Error validating parameters, invalid colour");
+    /**
+     * Encodes the content in a QR
+     *
+     * @param content the uri that will be pointed in the QR
+     * @param width   the width of the QR
+     * @param height  the height of the QR
+     * @return the modules of the QR
+     * @throws WriterException if an error occurs while generating the QR
+     */
+    protected BitMatrix encodeQR(String content, int width, int height) throws WriterException {
+        QREncoder.Workspace workspace;
+        try {
+            workspace = this.encoderWorkspaces.borrow();
+        } catch (Exception e) {
+            throw new WriterException(e);
         }
-
-        if (!size.equalsIgnoreCase(QRConstants.EXTRA_SMALL_SIZE) &&
-                !size.equalsIgnoreCase(QRConstants.SMALL_SIZE) &&
-                !size.equalsIgnoreCase(QRConstants.MEDIUM_SIZE)) {
-            throw new QRFactoryException("Error validating parameters, invalid size");
+        try {
+            BitMatrix bitMatrix = this.encoder.encode(content, width, height, workspace);
+            if (bitMatrix != null) {
+                return bitMatrix;
+            }
+        } finally {
+            this.encoderWorkspaces.release(workspace);
         }
+        // The contents which are not encoded in byte mode or are too long are encoded by the generic writer
+        return QR_CODE_WRITER.encode(content, BarcodeFormat.QR_CODE, width, height, this.encodeHints);
     }
 
     /**
@@ -159,16 +861,13 @@ public class QRFactory {
      * @param isPositive the colours of the QR, if positive normals colours will be used, else, inverted colours
      * @return the QR code in SVG format
      * @throws WriterException if an error occurs while generating the QR
+     * @deprecated {@code generateQR} no longer calls this method, the QRs are written by the streaming composer, so
+     * overriding it has no effect on the generated QRs
      */
+    @Deprecated
 
     protected String generateQRCodeSvg(String content, int width, int height, boolean isPositive) throws WriterException {
-        QRCodeWriter qrCodeWriter = new QRCodeWriter();
-        Map<EncodeHintType, Object> hints = new EnumMap<>(EncodeHintType.class);
-        // Set the parameters of the QR
-        ErrorCorrectionLevel errorCorrectionLevel = ErrorCorrectionLevel.forBits(QRConstants.ErrorLevel.getBitsFromName(this.qrErrorCorrectionLevel));
-        hints.put(EncodeHintType.ERROR_CORRECTION, errorCorrectionLevel);
-        hints.put(EncodeHintType.QR_VERSION, this.qrVersion);
-        BitMatrix bitMatrix = qrCodeWriter.encode(content, BarcodeFormat.QR_CODE, width, height, hints);        // Start building the SVG string
+        BitMatrix bitMatrix = this.encodeQR(content, width, height);
         // Generate the SVG String
         StringBuilder svgBuilder = new StringBuilder();
         svgBuilder.append("<svg xmlns=\"http://www.w3.org/2000/svg\" ");
@@ -181,7 +880,8 @@ public class QRFactory {
         for (int y = 0; y < height; y++) {
             for (int x = 0; x < width; x++) {
                 if (bitMatrix.get(x, y)) {
-                    svgBuilder.append("<rect x=\"").append(x).append("\" y=\"").append(y).append("\" width=\"1\" height=\"1\" fill=\"" + pixelColor + "\"/>");
+                    svgBuilder.append("<rect x=\"").append(x).append("\" y=\"").append(y)
+                            .append("\" width=\"1\" height=\"1\" fill=\"").append(pixelColor).append("\"/>");
                 }
             }
         }
@@ -190,7 +890,7 @@ public class QRFactory {
     }
 
     /**
-     * Merge the SVG files in one
+     * Merge the SVG files in one, it needs the optional spring-core dependency, unlike the other mergeSVG methods
      *
      * @param qrSVG       The QR SVG File
      * @param logoSVG     The logo SVG File
@@ -199,80 +899,88 @@ public class QRFactory {
      * @param scaleFactor the width and the height of the QR and the logo will be scaled with by factor
      * @return the SVG file merged
      * @throws Exception if an error occurs while merging the files
+     * @deprecated {@code generateQR} no longer calls the DOM path, the QRs are written by the streaming composer, so
+     * overriding it has no effect on the generated QRs
      */
-
+    @Deprecated
     protected String mergeSVG(File qrSVG, File logoSVG, boolean isVertical, ClassPathResource cpr, float scaleFactor) throws Exception {
-        // Load both SVG files
-        SAXSVGDocumentFactory factory = new SAXSVGDocumentFactory(XMLResourceDescriptor.getXMLParserClassName());
-        Document qrDoc = factory.createDocument(qrSVG.toURI().toString());
         try (InputStream in = cpr.getInputStream()) {
-            Document logoDoc = factory.createDocument(logoSVG.toURI().toString(), in);
-
-            // Get width and height of both images
-            Element qrElement = qrDoc.getDocumentElement();
-            float qrWidth = Float.parseFloat(qrElement.getAttribute("width"));
-            float qrHeight = Float.parseFloat(qrElement.getAttribute("height"));
-
-            Element logoElement = logoDoc.getDocumentElement();
-            float logoWidth = Float.parseFloat(logoElement.getAttribute("width"));
-            float logoHeight = Float.parseFloat(logoElement.getAttribute("height"));
-
-            // Scale width and height of both images
-            qrWidth = qrWidth * scaleFactor;
-            qrHeight = qrHeight * scaleFactor;
-            logoWidth = logoWidth * scaleFactor;
-            logoHeight = logoHeight * scaleFactor;
-            float margin = this.qrMargin * scaleFactor;
-
-            logoElement.setAttribute("width", String.valueOf(logoWidth));
-            logoElement.setAttribute("height", String.valueOf(logoHeight));
-            qrElement.setAttribute("width", String.valueOf(qrWidth));
-            qrElement.setAttribute("height", String.valueOf(qrHeight));
-
-            // Calculate the extra margin for the merged image
-            float extraMargin = ((qrWidth - (margin * 2)) * 0.2f) - margin;
-
-            // Calculate new width and height for merged image
-            float mergedWidth = (isVertical ? qrWidth : (qrWidth + logoWidth)) + (extraMargin * 2);
-            float mergedHeight = (isVertical ? (qrHeight + logoHeight) : qrHeight) + (extraMargin * 2);
-
-            // Create a new empty SVG document for the merged result
-            DocumentBuilderFactory docFactory = DocumentBuilderFactory.newInstance();
-            DocumentBuilder docBuilder = docFactory.newDocumentBuilder();
-            Document mergedDoc = docBuilder.newDocument();
-
-            // Create the root <svg> element
-            Element rootElement = mergedDoc.createElement("svg");
-            rootElement.setAttribute("width", String.valueOf(mergedWidth));
-            rootElement.setAttribute("height", String.valueOf(mergedHeight));
-            rootElement.setAttribute("xmlns", "http://www.w3.org/2000/svg");
-            mergedDoc.appendChild(rootElement);
-
-            // Import the SVGs into the merged SVG
-            if (isVertical) {
-                Element firstImage = (Element) mergedDoc.importNode(logoElement, true);
-                firstImage.setAttribute("x", String.valueOf(extraMargin));
-                firstImage.setAttribute("y", String.valueOf(extraMargin));
-                rootElement.appendChild(firstImage);
-
-                Element secondImage = (Element) mergedDoc.importNode(qrElement, true);
-                secondImage.setAttribute("x", String.valueOf(extraMargin));
-                secondImage.setAttribute("y", String.valueOf(logoHeight + extraMargin));
-                rootElement.appendChild(secondImage);
-            } else {
-                Element firstImage = (Element) mergedDoc.importNode(qrElement, true);
-                firstImage.setAttribute("x", String.valueOf(extraMargin));
-                firstImage.setAttribute("y", String.valueOf(extraMargin));
-                rootElement.appendChild(firstImage);
-
-                Element secondImage = (Element) mergedDoc.importNode(logoElement, true);
-                secondImage.setAttribute("x", String.valueOf(qrWidth + extraMargin));
-                secondImage.setAttribute("y", String.valueOf(extraMargin));
-                rootElement.appendChild(secondImage);
-            }
+            return this.mergeSVG(qrSVG, LogoTemplate.load(logoSVG.toURI().toString(), in), isVertical, scaleFactor);
+        }
+    }
+
+    /**
+     * Merge the QR SVG file and a cached logo in one SVG
+     *
+     * @param qrSVG       The QR SVG File
+     * @param logo        The logo, it is not modified
+     * @param isVertical  the orientation of the QR, if isVertical, the QR orientation is vertical, else, is horizontal
+     * @param scaleFactor the width and the height of the QR and the logo will be scaled with by factor
+     * @return the SVG file merged
+     * @throws Exception if an error occurs while merging the files
+     * @deprecated {@code generateQR} no longer calls the DOM path, the QRs are written by the streaming composer, so
+     * overriding it has no effect on the generated QRs
+     */
+    @Deprecated
+    protected String mergeSVG(File qrSVG, LogoTemplate logo, boolean isVertical, float scaleFactor) throws Exception {
+        // Load the QR SVG file
+        long start = this.instrumented ? System.nanoTime() : 0;
+        Document qrDoc = this.domMerger().parseFile(qrSVG.toURI().toString());
+        if (this.instrumented) {
+            this.listener.onStage(QRConstants.Stage.PARSE, System.nanoTime() - start);
+        }
+        return this.mergeSVG(qrDoc, logo, isVertical, scaleFactor);
+    }
 
-            return serializeDocument(mergedDoc);
+    /**
+     * Merge the QR SVG and a cached logo in one SVG without accessing the filesystem
+     *
+     * @param qrSVG       The QR in SVG format, as returned by generateQRCodeSvg
+     * @param logo        The logo, it is not modified
+     * @param isVertical  the orientation of the QR, if isVertical, the QR orientation is vertical, else, is horizontal
+     * @param scaleFactor the width and the height of the QR and the logo will be scaled with by factor
+     * @return the SVG merged
+     * @throws Exception if an error occurs while merging the SVGs
+     * @deprecated {@code generateQR} no longer calls the DOM path, the QRs are written by the streaming composer, so
+     * overriding it has no effect on the generated QRs
+     */
+    @Deprecated
+    protected String mergeSVG(String qrSVG, LogoTemplate logo, boolean isVertical, float scaleFactor) throws Exception {
+        // Parse the QR SVG from memory
+        long start = this.instrumented ? System.nanoTime() : 0;
+        Document qrDoc = this.domMerger().parseString(qrSVG);
+        if (this.instrumented) {
+            this.listener.onStage(QRConstants.Stage.PARSE, System.nanoTime() - start);
+        }
+        return this.mergeSVG(qrDoc, logo, isVertical, scaleFactor);
+    }
+
+    /**
+     * Merge the parsed QR document and a cached logo in one SVG
+     *
+     * @param qrDoc       The QR document, its root element will be scaled
+     * @param logo        The logo, it is not modified
+     * @param isVertical  the orientation of the QR, if isVertical, the QR orientation is vertical, else, is horizontal
+     * @param scaleFactor the width and the height of the QR and the logo will be scaled with by factor
+     * @return the SVG merged
+     * @throws Exception if an error occurs while merging the documents
+     */
+    private String mergeSVG(Document qrDoc, LogoTemplate logo, boolean isVertical, float scaleFactor) throws Exception {
+        long start = this.instrumented ? System.nanoTime() : 0;
+        try {
+            Document mergedDoc = this.domMerger().merge(qrDoc, logo, isVertical, scaleFactor);
+            if (!this.instrumented) {
+                return serializeDocument(mergedDoc);
+            }
+            long serializeStart = System.nanoTime();
+            this.listener.onStage(QRConstants.Stage.MERGE, serializeStart - start);
+            String merged = serializeDocument(mergedDoc);
+            this.listener.onStage(QRConstants.Stage.SERIALIZE, System.nanoTime() - serializeStart);
+            return merged;
         } catch (Exception e) {
+            if (this.instrumented) {
+                this.listener.onError(e);
+            }
             throw new QRFactoryException(e.getMessage());
         }
     }
@@ -283,20 +991,195 @@ public class QRFactory {
      * @param doc the document to be serialized
      * @return the serialized document in string format
      * @throws Exception if an error occurs while serializing the document
+     * @deprecated {@code generateQR} no longer calls the DOM path, the QRs are written by the streaming composer, so
+     * overriding it has no effect on the generated QRs
      */
+    @Deprecated
     protected String serializeDocument(Document doc) throws Exception {
-        java.io.StringWriter sw = new java.io.StringWriter();
-        javax.xml.transform.Transformer t = javax.xml.transform.TransformerFactory.newInstance().newTransformer();
-        t.setOutputProperty(javax.xml.transform.OutputKeys.OMIT_XML_DECLARATION, "no");
-        t.setOutputProperty(javax.xml.transform.OutputKeys.METHOD, "xml");
-        t.setOutputProperty(javax.xml.transform.OutputKeys.INDENT, "yes");
-        t.setOutputProperty(javax.xml.transform.OutputKeys.ENCODING, "UTF-8");
-        t.transform(new javax.xml.transform.dom.DOMSource(doc), new javax.xml.transform.stream.StreamResult(sw));
-        return sw.toString();
+        return this.domMerger().serialize(doc);
+    }
+
+    /**
+     * Returns the merger of the DOM path, creating it on first use, so the factories which only generate QRs with the
+     * streaming composer never load Batik
+     */
+    private DOMMerger domMerger() {
+        DOMMerger result = this.domMerger;
+        if (result == null) {
+            this.domMergerLock.lock();
+            try {
+                result = this.domMerger;
+                if (result == null) {
+                    result = new DOMMerger(this.encodedMargin, MAX_IDLE_RESOURCES);
+                    this.domMerger = result;
+                }
+            } finally {
+                this.domMergerLock.unlock();
+            }
+        }
+        return result;
     }
 
     public String getVerifierUri() {
         return verifierUri;
     }
 
-}
\ No newline at end of file
+    /**
+     * @return the statistics of the pools of objects reused between QRs, to check that they are large enough
+     */
+    public List<PoolStats> getPoolStats() {
+        // The pools of the DOM path are empty until a DOM method is called
+        DOMMerger dom = this.domMerger;
+        return List.of(
+                new PoolStats("outputBuffers", this.outputBuffers),
+                new PoolStats("encoderWorkspaces", this.encoderWorkspaces),
+                new PoolStats("moduleEncoders", this.moduleEncoders),
+                new PoolStats("canvases", this.canvases),
+                new PoolStats("svgDocumentFactories", dom == null ? null : dom.getSvgDocumentFactories()),
+                new PoolStats("documentBuilders", dom == null ? null : dom.getDocumentBuilders()),
+                new PoolStats("transformers", dom == null ? null : dom.getTransformers()));
+    }
+
+    /**
+     * The statistics of a pool of objects at a given time
+     */
+    public static final class PoolStats {
+
+        private final String name;
+        private final int idleCount;
+        private final long createdCount;
+
+        private PoolStats(String name, ResourcePool<?> pool) {
+            this.name = name;
+            this.idleCount = pool == null ? 0 : pool.idleCount();
+            this.createdCount = pool == null ? 0 : pool.createdCount();
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return the number of objects waiting in the pool to be reused
+         */
+        public int getIdleCount() {
+            return idleCount;
+        }
+
+        /**
+         * @return the number of objects created since the factory was created, because the pool was empty
+         */
+        public long getCreatedCount() {
+            return createdCount;
+        }
+    }
+
+
+    /**
+     * Builds factories with the optional features, the builder can be reused to build several factories
+     */
+    public static final class Builder {
+
+        private String host = DEFAULT_VERIFIER_URI;
+        private boolean eagerLoadLogos;
+        private QRCache cache;
+        private QRListener listener = QRListener.NOOP;
+        private int qrSize = 41;
+        private int qrMargin = 4;
+        private boolean parallelMasks;
+        private Executor asyncExecutor;
+        private Executor bulkExecutor;
+
+        private Builder() {
+        }
+
+        /**
+         * @param host the uri pointing to the ESC Verifier, https://s.esc-r.eu/ by default
+         */
+        public Builder host(String host) {
+            this.host = host;
+            return this;
+        }
+
+        /**
+         * @param eagerLoadLogos if true, the logos are loaded when the factory is created instead of on first use
+         */
+        public Builder eagerLoadLogos(boolean eagerLoadLogos) {
+            this.eagerLoadLogos = eagerLoadLogos;
+            return this;
+        }
+
+        /**
+         * @param cache the cache of generated QRs, which can be shared by several factories, or null for no cache
+         */
+        public Builder cache(QRCache cache) {
+            this.cache = cache;
+            return this;
+        }
+
+        /**
+         * @param listener receives the measures of the generated QRs, {@link QRListener#NOOP} by default
+         */
+        public Builder listener(QRListener listener) {
+            this.listener = listener == null ? QRListener.NOOP : listener;
+            return this;
+        }
+
+        /**
+         * @param qrSize the width and the height of the QR with its margin at size XS, 41 by default, which is one
+         *               unit per module. The modules are scaled by the largest whole factor that fits and centred
+         * @throws IllegalArgumentException if the size is not positive
+         */
+        public Builder qrSize(int qrSize) {
+            if (qrSize < 1) {
+                throw new IllegalArgumentException("qrSize must be positive");
+            }
+            this.qrSize = qrSize;
+            return this;
+        }
+
+        /**
+         * @param qrMargin the minimum margin of the QR in modules, 4 by default as required by the QR specification
+         * @throws IllegalArgumentException if the margin is negative
+         */
+        public Builder qrMargin(int qrMargin) {
+            if (qrMargin < 0) {
+                throw new IllegalArgumentException("qrMargin must not be negative");
+            }
+            this.qrMargin = qrMargin;
+            return this;
+        }
+
+        /**
+         * @param parallelMasks if true, the eight masks of a QR are evaluated in parallel in the common fork join
+         *                      pool, which lowers the latency of a single QR on an idle machine. It is false by
+         *                      default, as it lowers the throughput when many QRs are generated in parallel
+         */
+        public Builder parallelMasks(boolean parallelMasks) {
+            this.parallelMasks = parallelMasks;
+            return this;
+        }
+
+        /**
+         * @param asyncExecutor the executor of {@link #generateQRAsync}, or null for the default one, with a thread per
+         *                      processor and at most 1024 waiting QRs
+         */
+        public Builder asyncExecutor(Executor asyncExecutor) {
+            this.asyncExecutor = asyncExecutor;
+            return this;
+        }
+
+        /**
+         * @param bulkExecutor the executor of {@link #publishQRs}, or null for the default one, with a thread for two
+         *                     processors, so the batches leave half of the processors to the single QRs
+         */
+        public Builder bulkExecutor(Executor bulkExecutor) {
+            this.bulkExecutor = bulkExecutor;
+            return this;
+        }
+
+        public QRFactory build() {
+            return new QRFactory(this);
+        }
+    }
+}
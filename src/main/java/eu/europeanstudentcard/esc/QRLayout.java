@@ -0,0 +1,162 @@
+package eu.europeanstudentcard.esc;
+
+import com.google.zxing.common.BitMatrix;
+
+/**
+ * The size and position of the QR and the logo in a merged image
+ * <p>
+ * The geometry only depends on the modules of the QR, its margin, the size of the logo, the orientation and the scale
+ * factor, so the factory computes it once per logo and size, see {@link LayoutTable}, instead of once per QR. The
+ * values are in SVG units, or in pixels when the scale factor includes the resolution of a PNG. A layout is immutable.
+ */
+final class QRLayout {
+
+    private final int qrColumns;
+    private final int qrRows;
+    private final float qrWidth;
+    private final float qrHeight;
+    private final float qrX;
+    private final float qrY;
+    private final float logoWidth;
+    private final float logoHeight;
+    private final float logoX;
+    private final float logoY;
+    private final float width;
+    private final float height;
+
+    private QRLayout(int qrColumns, int qrRows, float qrWidth, float qrHeight, float qrX, float qrY, float logoWidth,
+                     float logoHeight, float logoX, float logoY, float width, float height) {
+        this.qrColumns = qrColumns;
+        this.qrRows = qrRows;
+        this.qrWidth = qrWidth;
+        this.qrHeight = qrHeight;
+        this.qrX = qrX;
+        this.qrY = qrY;
+        this.logoWidth = logoWidth;
+        this.logoHeight = logoHeight;
+        this.logoX = logoX;
+        this.logoY = logoY;
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Computes the layout of a merged image
+     *
+     * @param qrColumns   the width of the QR in modules, including its margin
+     * @param qrRows      the height of the QR in modules, including its margin
+     * @param qrMargin    the margin of the QR in modules, used to calculate the margin of the merged image
+     * @param logoWidth   the width of the logo
+     * @param logoHeight  the height of the logo
+     * @param isVertical  the orientation of the QR, if isVertical, the QR orientation is vertical, else, is horizontal
+     * @param scaleFactor the width and the height of the QR and the logo will be scaled with by factor
+     * @return the layout
+     */
+    static QRLayout compute(int qrColumns, int qrRows, int qrMargin, float logoWidth, float logoHeight,
+                            boolean isVertical, float scaleFactor) {
+        return compute(qrColumns, qrRows, qrColumns, qrRows, qrMargin, logoWidth, logoHeight, isVertical, scaleFactor);
+    }
+
+    /**
+     * Computes the layout of a merged image from the size of a parsed QR SVG, whose modules are not known, as done by
+     * the DOM path, so both paths give the same geometry. The layout fits no QR.
+     *
+     * @param qrWidth     the width of the QR SVG, including its margin
+     * @param qrHeight    the height of the QR SVG, including its margin
+     * @param qrMargin    the margin of the QR in modules, used to calculate the margin of the merged image
+     * @param logoWidth   the width of the logo
+     * @param logoHeight  the height of the logo
+     * @param isVertical  the orientation of the QR, if isVertical, the QR orientation is vertical, else, is horizontal
+     * @param scaleFactor the width and the height of the QR and the logo will be scaled with by factor
+     * @return the layout
+     */
+    static QRLayout compute(float qrWidth, float qrHeight, int qrMargin, float logoWidth, float logoHeight,
+                            boolean isVertical, float scaleFactor) {
+        return compute(-1, -1, qrWidth, qrHeight, qrMargin, logoWidth, logoHeight, isVertical, scaleFactor);
+    }
+
+    private static QRLayout compute(int qrColumns, int qrRows, float unscaledQrWidth, float unscaledQrHeight,
+                                    int qrMargin, float logoWidth, float logoHeight, boolean isVertical,
+                                    float scaleFactor) {
+        // Scale width and height of both images
+        float qrWidth = unscaledQrWidth * scaleFactor;
+        float qrHeight = unscaledQrHeight * scaleFactor;
+        float scaledLogoWidth = logoWidth * scaleFactor;
+        float scaledLogoHeight = logoHeight * scaleFactor;
+        float margin = qrMargin * scaleFactor;
+
+        // Calculate the extra margin and the size of the merged image, a wide margin of the QR is kept as it is
+        float extraMargin = Math.max(0f, ((qrWidth - (margin * 2)) * 0.2f) - margin);
+        float mergedWidth = (isVertical ? qrWidth : (qrWidth + scaledLogoWidth)) + (extraMargin * 2);
+        float mergedHeight = (isVertical ? (qrHeight + scaledLogoHeight) : qrHeight) + (extraMargin * 2);
+
+        // The logo goes above the QR in the vertical images and on its right in the horizontal ones
+        if (isVertical) {
+            return new QRLayout(qrColumns, qrRows, qrWidth, qrHeight, extraMargin, scaledLogoHeight + extraMargin,
+                    scaledLogoWidth, scaledLogoHeight, extraMargin, extraMargin, mergedWidth, mergedHeight);
+        }
+        return new QRLayout(qrColumns, qrRows, qrWidth, qrHeight, extraMargin, extraMargin,
+                scaledLogoWidth, scaledLogoHeight, qrWidth + extraMargin, extraMargin, mergedWidth, mergedHeight);
+    }
+
+    /**
+     * @return true if the layout was computed for the number of modules of the QR
+     */
+    boolean fits(BitMatrix qr) {
+        return qr.getWidth() == this.qrColumns && qr.getHeight() == this.qrRows;
+    }
+
+    int getQrColumns() {
+        return qrColumns;
+    }
+
+    int getQrRows() {
+        return qrRows;
+    }
+
+    float getQrWidth() {
+        return qrWidth;
+    }
+
+    float getQrHeight() {
+        return qrHeight;
+    }
+
+    float getQrX() {
+        return qrX;
+    }
+
+    float getQrY() {
+        return qrY;
+    }
+
+    float getLogoWidth() {
+        return logoWidth;
+    }
+
+    float getLogoHeight() {
+        return logoHeight;
+    }
+
+    float getLogoX() {
+        return logoX;
+    }
+
+    float getLogoY() {
+        return logoY;
+    }
+
+    /**
+     * @return the width of the merged image
+     */
+    float getWidth() {
+        return width;
+    }
+
+    /**
+     * @return the height of the merged image
+     */
+    float getHeight() {
+        return height;
+    }
+}
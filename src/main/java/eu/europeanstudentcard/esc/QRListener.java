@@ -0,0 +1,55 @@
+package eu.europeanstudentcard.esc;
+
+import eu.europeanstudentcard.esc.constants.QRConstants;
+
+/**
+ * Receives the measures of the QRs generated by a factory, to export them as metrics or traces
+ * <p>
+ * All the methods do nothing by default, so a listener only implements the events it needs. The methods are called
+ * by the threads generating the QRs, so they must be thread safe and fast, and must not throw exceptions. A factory
+ * without listener does not take any measure. See {@code MicrometerQRListener} for an adapter to Micrometer.
+ */
+public interface QRListener {
+
+    /**
+     * The listener of the factories without listener, it is never called
+     */
+    QRListener NOOP = new QRListener() {
+    };
+
+    /**
+     * Called after each stage of the generation of a QR
+     *
+     * @param stage the stage
+     * @param nanos the duration of the stage in nanoseconds
+     */
+    default void onStage(QRConstants.Stage stage, long nanos) {
+    }
+
+    /**
+     * Called after a QR has been generated and copied to its destination
+     *
+     * @param format the format of the QR
+     * @param style  the style of the QR
+     * @param bytes  the size of the QR in bytes
+     * @param nanos  the duration of the whole generation in nanoseconds, including the copy to the destination
+     */
+    default void onGenerated(QRConstants.OutputFormat format, QRStyle style, int bytes, long nanos) {
+    }
+
+    /**
+     * Called when a QR cannot be generated, including when its parameters are invalid
+     *
+     * @param cause the error that prevented generating the QR
+     */
+    default void onError(Throwable cause) {
+    }
+
+    /**
+     * Called when a QR is looked up in the cache of the factory
+     *
+     * @param hit true if the QR was found in the cache
+     */
+    default void onCacheAccess(boolean hit) {
+    }
+}
@@ -0,0 +1,223 @@
+package eu.europeanstudentcard.esc;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publishes the QRs of many cards to a subscriber, as fast as the subscriber requests them
+ * <p>
+ * The card numbers are read one by one and each QR is generated in the executor only when it has been requested, so
+ * a slow subscriber slows down the generation instead of having the QRs pile up in memory. At most
+ * {@code maxInFlight} QRs are generated ahead of the subscriber. The results are published in the same order as the
+ * card numbers, a card whose QR cannot be generated is published as a failed result. A card rejected by a saturated
+ * executor is not failed, it is submitted again when one of the QRs of the subscriber is generated, or after
+ * {@value #RETRY_DELAY_MILLIS} ms if none is being generated, so several publishers sharing an executor slow down
+ * instead of losing cards. The publisher is cold: each subscriber reads the card numbers again from the start.
+ */
+final class QRPublisher implements Flow.Publisher<QRResult> {
+
+    /**
+     * The delay before submitting again a card rejected by the executor, when no QR of the subscriber is being
+     * generated to trigger it, around ten QRs
+     */
+    static final long RETRY_DELAY_MILLIS = 10;
+
+    private final Iterable<String> cardNumbers;
+    private final QRBatchTask.Generator generator;
+    private final Executor executor;
+    private final int maxInFlight;
+
+    /**
+     * @param cardNumbers the numbers of the cards, iterated once per subscriber
+     * @param generator   generates the QR of one card
+     * @param executor    the executor where the QRs are generated
+     * @param maxInFlight the maximum number of QRs requested and generated ahead of the subscriber
+     */
+    QRPublisher(Iterable<String> cardNumbers, QRBatchTask.Generator generator, Executor executor, int maxInFlight) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("maxInFlight must be positive");
+        }
+        this.cardNumbers = Objects.requireNonNull(cardNumbers, "cardNumbers");
+        this.generator = generator;
+        this.executor = Objects.requireNonNull(executor, "executor");
+        this.maxInFlight = maxInFlight;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super QRResult> subscriber) {
+        Objects.requireNonNull(subscriber, "subscriber");
+        Iterator<String> iterator;
+        try {
+            iterator = this.cardNumbers.iterator();
+        } catch (RuntimeException e) {
+            subscriber.onSubscribe(new CancelledSubscription());
+            subscriber.onError(e);
+            return;
+        }
+        QRSubscription subscription = new QRSubscription(subscriber, iterator);
+        subscriber.onSubscribe(subscription);
+        subscription.drain();
+    }
+
+    /**
+     * The subscription of one subscriber
+     * <p>
+     * The signals to the subscriber are only sent by the drain loop, which is entered by one thread at a time: the
+     * subscriber requesting more QRs or the executor completing one. A thread finding the loop busy only increments
+     * {@code pending}, and the thread in the loop runs it once more, so no signal is lost and the subscriber is never
+     * called concurrently nor recursively.
+     */
+    private final class QRSubscription implements Flow.Subscription {
+
+        private final Flow.Subscriber<? super QRResult> subscriber;
+        private final AtomicInteger pending = new AtomicInteger();
+        private final AtomicLong requested = new AtomicLong();
+
+        // Only accessed in the drain loop
+        private final Iterator<String> iterator;
+        private final Deque<CompletableFuture<QRResult>> inFlight = new ArrayDeque<>();
+        private String rejected;
+        private boolean done;
+
+        private volatile boolean cancelled;
+        private volatile IllegalArgumentException invalidRequest;
+
+        private QRSubscription(Flow.Subscriber<? super QRResult> subscriber, Iterator<String> iterator) {
+            this.subscriber = subscriber;
+            this.iterator = iterator;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                this.invalidRequest = new IllegalArgumentException("The number of requested QRs must be positive: " + n);
+            } else {
+                // Capped at Long.MAX_VALUE, which is an unbounded demand
+                this.requested.accumulateAndGet(n, (current, added) -> current + added < 0 ? Long.MAX_VALUE : current + added);
+            }
+            this.drain();
+        }
+
+        @Override
+        public void cancel() {
+            this.cancelled = true;
+            this.drain();
+        }
+
+        private void drain() {
+            if (this.pending.getAndIncrement() != 0) {
+                return;
+            }
+            int missed = 1;
+            do {
+                this.drainLoop();
+                missed = this.pending.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void drainLoop() {
+            while (!this.done) {
+                if (this.cancelled) {
+                    this.finish();
+                    return;
+                }
+                if (this.invalidRequest != null) {
+                    this.finish();
+                    this.subscriber.onError(this.invalidRequest);
+                    return;
+                }
+
+                // Generate the requested QRs, without generating more than maxInFlight ahead
+                long demand = this.requested.get();
+                boolean hasNext;
+                try {
+                    while (this.inFlight.size() < Math.min(demand, QRPublisher.this.maxInFlight)
+                            && (this.rejected != null || this.iterator.hasNext())) {
+                        String cardNumber = this.rejected != null ? this.rejected : this.iterator.next();
+                        CompletableFuture<QRResult> result = this.submit(cardNumber);
+                        if (result == null) {
+                            // The executor is saturated, the card is kept and submitted again on a later drain
+                            this.rejected = cardNumber;
+                            if (this.inFlight.isEmpty()) {
+                                CompletableFuture.runAsync(this::drain, CompletableFuture.delayedExecutor(
+                                        RETRY_DELAY_MILLIS, TimeUnit.MILLISECONDS));
+                            }
+                            break;
+                        }
+                        this.rejected = null;
+                        this.inFlight.add(result);
+                    }
+                    hasNext = this.inFlight.isEmpty() && (this.rejected != null || this.iterator.hasNext());
+                } catch (RuntimeException e) {
+                    // An error reading the card numbers stops the publication
+                    this.finish();
+                    this.subscriber.onError(e);
+                    return;
+                }
+
+                CompletableFuture<QRResult> head = this.inFlight.peek();
+                if (head == null) {
+                    if (!hasNext) {
+                        this.finish();
+                        this.subscriber.onComplete();
+                    }
+                    // Otherwise waiting for a request or for the retry of a rejected card
+                    return;
+                }
+                if (!head.isDone()) {
+                    // Drained again when the QR is generated
+                    return;
+                }
+                this.inFlight.poll();
+                if (demand != Long.MAX_VALUE) {
+                    this.requested.decrementAndGet();
+                }
+                this.subscriber.onNext(head.join());
+            }
+        }
+
+        /**
+         * @return the QR being generated, or null if the executor rejected it
+         */
+        private CompletableFuture<QRResult> submit(String cardNumber) {
+            CompletableFuture<QRResult> result;
+            try {
+                result = CompletableFuture.supplyAsync(
+                        () -> QRBatchTask.generate(cardNumber, QRPublisher.this.generator), QRPublisher.this.executor);
+            } catch (RejectedExecutionException e) {
+                return null;
+            }
+            result.whenComplete((qr, e) -> this.drain());
+            return result;
+        }
+
+        /**
+         * Stops the publication, the QRs being generated are completed but not published
+         */
+        private void finish() {
+            this.done = true;
+            this.inFlight.clear();
+            this.rejected = null;
+        }
+    }
+
+    private static final class CancelledSubscription implements Flow.Subscription {
+
+        @Override
+        public void request(long n) {
+        }
+
+        @Override
+        public void cancel() {
+        }
+    }
+}
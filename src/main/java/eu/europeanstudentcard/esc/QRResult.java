@@ -0,0 +1,47 @@
+package eu.europeanstudentcard.esc;
+
+/**
+ * The result of generating the QR of one card in a batch, either the QR or the error that prevented generating it
+ */
+public final class QRResult {
+
+    private final String cardNumber;
+    private final String qr;
+    private final QRFactoryException error;
+
+    private QRResult(String cardNumber, String qr, QRFactoryException error) {
+        this.cardNumber = cardNumber;
+        this.qr = qr;
+        this.error = error;
+    }
+
+    static QRResult success(String cardNumber, String qr) {
+        return new QRResult(cardNumber, qr, null);
+    }
+
+    static QRResult failure(String cardNumber, QRFactoryException error) {
+        return new QRResult(cardNumber, null, error);
+    }
+
+    public String getCardNumber() {
+        return cardNumber;
+    }
+
+    /**
+     * @return the generated QR, or null if it could not be generated
+     */
+    public String getQR() {
+        return qr;
+    }
+
+    /**
+     * @return the error that prevented generating the QR, or null if it was generated
+     */
+    public QRFactoryException getError() {
+        return error;
+    }
+
+    public boolean isSuccess() {
+        return error == null;
+    }
+}
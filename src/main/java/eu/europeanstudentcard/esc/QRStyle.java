@@ -0,0 +1,187 @@
+package eu.europeanstudentcard.esc;
+
+import eu.europeanstudentcard.esc.constants.QRConstants;
+
+import java.util.Objects;
+
+/**
+ * The style of a QR: the orientation, the colours and the size of the QR, the way its modules are drawn and whether
+ * its SVG is compact
+ * <p>
+ * A style is resolved once, from the enums or from the String parameters, and reused for any number of QRs, so the
+ * QRs are generated without parsing or validating the parameters again. The styles are immutable and cached, there
+ * is a single instance of each combination, so they can be shared between threads and compared with ==.
+ */
+public final class QRStyle {
+
+    private static final QRConstants.Orientation[] ORIENTATIONS = QRConstants.Orientation.values();
+    private static final QRConstants.Colours[] COLOURS = QRConstants.Colours.values();
+    private static final QRConstants.Size[] SIZES = QRConstants.Size.values();
+    private static final QRConstants.RenderMode[] RENDER_MODES = QRConstants.RenderMode.values();
+    private static final QRStyle[] STYLES = new QRStyle[ORIENTATIONS.length * COLOURS.length * SIZES.length * RENDER_MODES.length * 2];
+
+    static {
+        for (QRConstants.Orientation orientation : ORIENTATIONS) {
+            for (QRConstants.Colours colours : COLOURS) {
+                for (QRConstants.Size size : SIZES) {
+                    for (QRConstants.RenderMode renderMode : RENDER_MODES) {
+                        for (boolean compact : new boolean[]{false, true}) {
+                            STYLES[index(orientation, colours, size, renderMode, compact)] =
+                                    new QRStyle(orientation, colours, size, renderMode, compact);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private final QRConstants.Orientation orientation;
+    private final QRConstants.Colours colours;
+    private final QRConstants.Size size;
+    private final QRConstants.RenderMode renderMode;
+    private final boolean compact;
+
+    private QRStyle(QRConstants.Orientation orientation, QRConstants.Colours colours, QRConstants.Size size,
+                    QRConstants.RenderMode renderMode, boolean compact) {
+        this.orientation = orientation;
+        this.colours = colours;
+        this.size = size;
+        this.renderMode = renderMode;
+        this.compact = compact;
+    }
+
+    /**
+     * Returns the style drawing one rect per dark module
+     *
+     * @param orientation the orientation of the QR
+     * @param colours     the colours of the QR
+     * @param size        the size of the QR
+     * @return the cached style
+     */
+    public static QRStyle of(QRConstants.Orientation orientation, QRConstants.Colours colours, QRConstants.Size size) {
+        return of(orientation, colours, size, QRConstants.RenderMode.RECT);
+    }
+
+    /**
+     * @param orientation the orientation of the QR
+     * @param colours     the colours of the QR
+     * @param size        the size of the QR
+     * @param renderMode  the way the dark modules are drawn
+     * @return the cached style
+     */
+    public static QRStyle of(QRConstants.Orientation orientation, QRConstants.Colours colours, QRConstants.Size size,
+                             QRConstants.RenderMode renderMode) {
+        return STYLES[index(Objects.requireNonNull(orientation, "orientation"), Objects.requireNonNull(colours, "colours"),
+                Objects.requireNonNull(size, "size"), Objects.requireNonNull(renderMode, "renderMode"), false)];
+    }
+
+    /**
+     * Resolves the style of the String parameters, drawing one rect per dark module
+     *
+     * @param orientation the orientation of the QR, vertical/horizontal, ignoring the case
+     * @param colours     the colours of the QR, normal/inverted, ignoring the case
+     * @param size        the size of the QR, XS/S/M, ignoring the case
+     * @return the cached style
+     * @throws QRFactoryException if a parameter is invalid
+     */
+    public static QRStyle parse(String orientation, String colours, String size) throws QRFactoryException {
+        return parse(orientation, colours, size, QRConstants.RenderMode.RECT);
+    }
+
+    /**
+     * Resolves the style of the String parameters
+     *
+     * @param orientation the orientation of the QR, vertical/horizontal, ignoring the case
+     * @param colours     the colours of the QR, normal/inverted, ignoring the case
+     * @param size        the size of the QR, XS/S/M, ignoring the case
+     * @param renderMode  the way the dark modules are drawn
+     * @return the cached style
+     * @throws QRFactoryException if a parameter is invalid
+     */
+    public static QRStyle parse(String orientation, String colours, String size, QRConstants.RenderMode renderMode)
+            throws QRFactoryException {
+        QRConstants.Orientation parsedOrientation = QRConstants.Orientation.fromValue(orientation);
+        if (parsedOrientation == null) {
+            throw new QRFactoryException("Error validating parameters, invalid orientation");
+        }
+
+        QRConstants.Colours parsedColours = QRConstants.Colours.fromValue(colours);
+        if (parsedColours == null) {
+            throw new QRFactoryException("Error validating parameters, invalid colour");
+        }
+
+        QRConstants.Size parsedSize = QRConstants.Size.fromValue(size);
+        if (parsedSize == null) {
+            throw new QRFactoryException("Error validating parameters, invalid size");
+        }
+
+        return of(parsedOrientation, parsedColours, parsedSize, renderMode);
+    }
+
+    private static int index(QRConstants.Orientation orientation, QRConstants.Colours colours, QRConstants.Size size,
+                             QRConstants.RenderMode renderMode, boolean compact) {
+        return (((orientation.ordinal() * COLOURS.length + colours.ordinal()) * SIZES.length + size.ordinal())
+                * RENDER_MODES.length + renderMode.ordinal()) * 2 + (compact ? 1 : 0);
+    }
+
+    /**
+     * @return the same style with another render mode
+     */
+    public QRStyle withRenderMode(QRConstants.RenderMode renderMode) {
+        return STYLES[index(this.orientation, this.colours, this.size, Objects.requireNonNull(renderMode, "renderMode"),
+                this.compact)];
+    }
+
+    /**
+     * Returns the same style with or without the compact SVG
+     * <p>
+     * A compact SVG is drawn the same as the default one but it is several times smaller: it has no XML declaration
+     * nor indentation, its numbers are rounded to three decimals, the colour of the modules is written once and the
+     * logo is a minified variant of the ESC logo, generated when the library is built, see {@link LogoMinifier}. The
+     * PNGs are the same with and without it.
+     *
+     * @param compact true to write the compact SVG
+     * @return the cached style
+     */
+    public QRStyle withCompact(boolean compact) {
+        return STYLES[index(this.orientation, this.colours, this.size, this.renderMode, compact)];
+    }
+
+    public QRConstants.Orientation getOrientation() {
+        return orientation;
+    }
+
+    public QRConstants.Colours getColours() {
+        return colours;
+    }
+
+    public QRConstants.Size getSize() {
+        return size;
+    }
+
+    public QRConstants.RenderMode getRenderMode() {
+        return renderMode;
+    }
+
+    public boolean isCompact() {
+        return compact;
+    }
+
+    public boolean isVertical() {
+        return orientation == QRConstants.Orientation.VERTICAL;
+    }
+
+    public boolean isPositive() {
+        return colours == QRConstants.Colours.NORMAL;
+    }
+
+    public float getScaleFactor() {
+        return size.getScaleFactor();
+    }
+
+    @Override
+    public String toString() {
+        return orientation.getValue() + "/" + colours.getValue() + "/" + size.getValue() + "/" + renderMode
+                + (compact ? "/compact" : "");
+    }
+}
@@ -0,0 +1,104 @@
+package eu.europeanstudentcard.esc;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A lock-free pool of objects that are expensive to create and not thread safe, like XML parsers and transformers
+ * <p>
+ * A thread borrows an object, uses it and releases it. When the pool is empty a new object is created, so borrowing
+ * never blocks, and at most {@code maxIdle} released objects are kept. Unlike a ThreadLocal, the pooled objects are
+ * reused by virtual threads, and no lock is held while an object is created or used, so carrier threads are not
+ * pinned.
+ *
+ * @param <T> the type of the pooled objects
+ */
+final class ResourcePool<T> {
+
+    /**
+     * Creates the pooled objects
+     */
+    @FunctionalInterface
+    interface Factory<T> {
+        T create() throws Exception;
+    }
+
+    /**
+     * Prepares a released object to be used again
+     */
+    @FunctionalInterface
+    interface Reset<T> {
+        void reset(T resource);
+    }
+
+    private final Factory<T> factory;
+    private final Reset<T> reset;
+    private final int maxIdle;
+    private final Queue<T> idle = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger idleCount = new AtomicInteger();
+    private final AtomicLong createdCount = new AtomicLong();
+
+    /**
+     * @param factory creates the pooled objects, which are reused without any reset
+     * @param maxIdle the maximum number of released objects kept in the pool
+     */
+    ResourcePool(Factory<T> factory, int maxIdle) {
+        this(factory, resource -> {
+        }, maxIdle);
+    }
+
+    /**
+     * @param factory creates the pooled objects
+     * @param reset   prepares a released object to be used again
+     * @param maxIdle the maximum number of released objects kept in the pool
+     */
+    ResourcePool(Factory<T> factory, Reset<T> reset, int maxIdle) {
+        this.factory = factory;
+        this.reset = reset;
+        this.maxIdle = maxIdle;
+    }
+
+    /**
+     * @return an idle object, or a new one if the pool is empty
+     * @throws Exception if a new object cannot be created
+     */
+    T borrow() throws Exception {
+        T resource = this.idle.poll();
+        if (resource == null) {
+            this.createdCount.incrementAndGet();
+            return this.factory.create();
+        }
+        this.idleCount.decrementAndGet();
+        return resource;
+    }
+
+    /**
+     * Returns an object to the pool, it is discarded if the pool is full
+     *
+     * @param resource the object borrowed from this pool, it must not be used after releasing it
+     */
+    void release(T resource) {
+        if (this.idleCount.incrementAndGet() > this.maxIdle) {
+            this.idleCount.decrementAndGet();
+            return;
+        }
+        this.reset.reset(resource);
+        this.idle.offer(resource);
+    }
+
+    /**
+     * @return the number of idle objects in the pool
+     */
+    int idleCount() {
+        return this.idleCount.get();
+    }
+
+    /**
+     * @return the number of objects created because the pool was empty, it keeps growing if maxIdle is too small
+     */
+    long createdCount() {
+        return this.createdCount.get();
+    }
+}
@@ -0,0 +1,265 @@
+package eu.europeanstudentcard.esc;
+
+import com.google.zxing.common.BitMatrix;
+import eu.europeanstudentcard.esc.constants.QRConstants;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes the QR merged with the ESC logo directly to a stream
+ * <p>
+ * The result has the same elements and attributes as the document built by {@link QRFactory#mergeSVG}, but it is
+ * written without building a DOM: the raw content of the cached logo is copied as it is and the size and position
+ * of both images are written inline. Everything but the modules of the QR depends only on the logo and the layout,
+ * so it is prepared once in a {@link Template} and only the modules are written for each QR. The composer keeps no
+ * state between calls and can be shared between threads.
+ * <p>
+ * The compact templates write the same image in fewer bytes, see {@link QRStyle#withCompact}: no XML declaration,
+ * indentation nor transparent background, rounded numbers, and the colour of the modules is set once on the QR image
+ * instead of on each module.
+ */
+final class SVGComposer {
+
+    private static final byte[] XML_DECLARATION = ascii("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>\n");
+    private static final byte[] ROOT_START = ascii("<svg xmlns=\"http://www.w3.org/2000/svg\" height=\"");
+    private static final byte[] ROOT_END = ascii("</svg>\n");
+    private static final byte[] IMAGE_START = ascii("    <svg");
+    private static final byte[] IMAGE_END = ascii("    </svg>\n");
+    private static final byte[] QR_BACKGROUND = ascii("        <rect fill=\"transparent\" height=\"100%\" width=\"100%\"/>\n");
+    private static final byte[] COMPACT_ROOT_START = ascii("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"");
+    private static final byte[] COMPACT_IMAGE_START = ascii("<svg");
+    private static final byte[] COMPACT_END = ascii("</svg>");
+
+    /**
+     * The initial size of the buffer of the modules when the SVG is not written to an OutputBuffer
+     */
+    private static final int MODULES_CAPACITY = 32 * 1024;
+
+    private final int qrMargin;
+
+    /**
+     * @param qrMargin the margin of the QR in modules, used to calculate the margin of the merged image
+     */
+    SVGComposer(int qrMargin) {
+        this.qrMargin = qrMargin;
+    }
+
+    /**
+     * Writes the merged SVG
+     *
+     * @param qr          the QR modules
+     * @param isPositive  the colours of the QR, if positive normals colours will be used, else, inverted colours
+     * @param renderMode  the way the dark modules are drawn
+     * @param logo        the logo
+     * @param isVertical  the orientation of the QR, if isVertical, the QR orientation is vertical, else, is horizontal
+     * @param scaleFactor the width and the height of the QR and the logo will be scaled with by factor
+     * @param out         the stream where the SVG is written in UTF-8, it is not closed
+     * @throws IOException if an error occurs while writing to the stream
+     */
+    void compose(BitMatrix qr, boolean isPositive, QRConstants.RenderMode renderMode, LogoTemplate logo,
+                 boolean isVertical, float scaleFactor, OutputStream out) throws IOException {
+        compose(qr, isPositive, renderMode, false, logo, isVertical, scaleFactor, out);
+    }
+
+    /**
+     * Writes the merged SVG, compact or not
+     *
+     * @param qr          the QR modules
+     * @param isPositive  the colours of the QR, if positive normals colours will be used, else, inverted colours
+     * @param renderMode  the way the dark modules are drawn
+     * @param compact     true to write the compact SVG, with the minified logo
+     * @param logo        the logo
+     * @param isVertical  the orientation of the QR, if isVertical, the QR orientation is vertical, else, is horizontal
+     * @param scaleFactor the width and the height of the QR and the logo will be scaled with by factor
+     * @param out         the stream where the SVG is written in UTF-8, it is not closed
+     * @throws IOException if an error occurs while writing to the stream
+     */
+    void compose(BitMatrix qr, boolean isPositive, QRConstants.RenderMode renderMode, boolean compact, LogoTemplate logo,
+                 boolean isVertical, float scaleFactor, OutputStream out) throws IOException {
+        QRLayout layout = QRLayout.compute(qr.getWidth(), qr.getHeight(), this.qrMargin, logo.getWidth(),
+                logo.getHeight(), isVertical, scaleFactor);
+        Template template = compact ? compactTemplate(layout, logo, isVertical, isPositive) : template(layout, logo, isVertical);
+        compose(qr, isPositive, renderMode, template, new ModuleEncoder(), out);
+    }
+
+    /**
+     * Writes the merged SVG from a template, only the modules of the QR are written for each QR
+     *
+     * @param qr         the QR modules, with the number of modules the template was created for
+     * @param isPositive the colours of the QR, if positive normals colours will be used, else, inverted colours
+     * @param renderMode the way the dark modules are drawn
+     * @param template   the merged SVG without the modules
+     * @param encoder    the encoder of the modules, borrowed by the calling thread
+     * @param out        the stream where the SVG is written in UTF-8, it is not closed
+     * @throws IOException if an error occurs while writing to the stream
+     */
+    void compose(BitMatrix qr, boolean isPositive, QRConstants.RenderMode renderMode, Template template,
+                 ModuleEncoder encoder, OutputStream out) throws IOException {
+        for (byte[] part : template.prefix) {
+            out.write(part);
+        }
+
+        // The modules are written directly to the pooled buffer of the factory
+        if (out instanceof OutputBuffer) {
+            writeModules(qr, isPositive, renderMode, template.compact, encoder, (OutputBuffer) out);
+        } else {
+            OutputBuffer modules = new OutputBuffer(MODULES_CAPACITY);
+            writeModules(qr, isPositive, renderMode, template.compact, encoder, modules);
+            modules.writeTo(out);
+        }
+
+        for (byte[] part : template.suffix) {
+            out.write(part);
+        }
+    }
+
+    private static void writeModules(BitMatrix qr, boolean isPositive, QRConstants.RenderMode renderMode,
+                                     boolean compact, ModuleEncoder encoder, OutputBuffer out) {
+        if (compact) {
+            // The colour is set on the QR image by the compact template
+            if (renderMode == QRConstants.RenderMode.PATH) {
+                encoder.writeCompactPath(qr, out);
+            } else {
+                encoder.writeCompactRects(qr, out);
+            }
+        } else if (renderMode == QRConstants.RenderMode.PATH) {
+            encoder.writePath(qr, isPositive, out);
+        } else {
+            encoder.writeRects(qr, isPositive, out);
+        }
+    }
+
+    /**
+     * Creates the template of the merged SVG of a logo and a layout
+     * <p>
+     * The template holds everything written before and after the modules of the QR: the root element with the size of
+     * the merged image, the logo, and the start and the end of the QR image. The raw content of the logo is shared,
+     * not copied.
+     *
+     * @param layout     the size and position of the QR and the logo
+     * @param logo       the logo
+     * @param isVertical the orientation of the QR, if isVertical, the QR orientation is vertical, else, is horizontal
+     * @return the template
+     */
+    static Template template(QRLayout layout, LogoTemplate logo, boolean isVertical) {
+        byte[] root = concat(XML_DECLARATION, ROOT_START,
+                ascii(layout.getHeight() + "\" width=\"" + layout.getWidth() + "\">\n"));
+        byte[] logoStart = concat(IMAGE_START, logo.getRootAttributes(),
+                geometry(layout.getLogoWidth(), layout.getLogoHeight(), layout.getLogoX(), layout.getLogoY()));
+        byte[] qrStart = concat(IMAGE_START,
+                ascii(" viewBox=\"0 0 " + layout.getQrColumns() + " " + layout.getQrRows() + "\""),
+                geometry(layout.getQrWidth(), layout.getQrHeight(), layout.getQrX(), layout.getQrY()),
+                new byte[]{'\n'}, QR_BACKGROUND);
+
+        if (isVertical) {
+            return new Template(layout, false, new byte[][]{root, logoStart, logo.getContent(), IMAGE_END, qrStart},
+                    new byte[][]{IMAGE_END, ROOT_END});
+        }
+        return new Template(layout, false, new byte[][]{root, qrStart},
+                new byte[][]{IMAGE_END, logoStart, logo.getContent(), IMAGE_END, ROOT_END});
+    }
+
+    /**
+     * Creates the compact template of the merged SVG of a logo and a layout, see {@link QRStyle#withCompact}
+     * <p>
+     * The transparent background of the QR is not written, it draws nothing, and the colour of the modules is
+     * inherited from the QR image.
+     *
+     * @param layout     the size and position of the QR and the logo
+     * @param logo       the minified logo
+     * @param isVertical the orientation of the QR, if isVertical, the QR orientation is vertical, else, is horizontal
+     * @param isPositive the colours of the QR, if positive normals colours will be used, else, inverted colours
+     * @return the template
+     */
+    static Template compactTemplate(QRLayout layout, LogoTemplate logo, boolean isVertical, boolean isPositive) {
+        byte[] root = concat(COMPACT_ROOT_START, ascii(LogoMinifier.format(layout.getWidth()) + "\" height=\""
+                + LogoMinifier.format(layout.getHeight()) + "\">"));
+        byte[] logoStart = concat(COMPACT_IMAGE_START, logo.getRootAttributes(),
+                compactGeometry(layout.getLogoWidth(), layout.getLogoHeight(), layout.getLogoX(), layout.getLogoY()),
+                new byte[]{'>'});
+        byte[] qrStart = concat(COMPACT_IMAGE_START,
+                ascii(" viewBox=\"0 0 " + layout.getQrColumns() + " " + layout.getQrRows() + "\""),
+                compactGeometry(layout.getQrWidth(), layout.getQrHeight(), layout.getQrX(), layout.getQrY()),
+                ascii(isPositive ? " fill=\"black\">" : " fill=\"white\">"));
+
+        if (isVertical) {
+            return new Template(layout, true, new byte[][]{root, logoStart, logo.getContent(), COMPACT_END, qrStart},
+                    new byte[][]{COMPACT_END, COMPACT_END});
+        }
+        return new Template(layout, true, new byte[][]{root, qrStart},
+                new byte[][]{COMPACT_END, logoStart, logo.getContent(), COMPACT_END, COMPACT_END});
+    }
+
+    private static byte[] geometry(float width, float height, float x, float y) {
+        return ascii(" width=\"" + width + "\" height=\"" + height + "\" x=\"" + x + "\" y=\"" + y + "\">");
+    }
+
+    private static byte[] compactGeometry(float width, float height, float x, float y) {
+        return ascii(" width=\"" + LogoMinifier.format(width) + "\" height=\"" + LogoMinifier.format(height)
+                + "\" x=\"" + LogoMinifier.format(x) + "\" y=\"" + LogoMinifier.format(y) + "\"");
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        int length = 0;
+        for (byte[] part : parts) {
+            length += part.length;
+        }
+        byte[] result = new byte[length];
+        int offset = 0;
+        for (byte[] part : parts) {
+            System.arraycopy(part, 0, result, offset, part.length);
+            offset += part.length;
+        }
+        return result;
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Escapes an attribute value to be written between double quotes
+     */
+    static String escapeAttribute(String value) {
+        return value.replace("&", "&amp;")
+                .replace("<", "&lt;")
+                .replace(">", "&gt;")
+                .replace("\"", "&quot;");
+    }
+
+    /**
+     * The merged SVG of a logo and a layout without the modules of the QR, see {@link #template}
+     * <p>
+     * A template is immutable and can be shared between threads.
+     */
+    static final class Template {
+
+        private final QRLayout layout;
+        private final boolean compact;
+        private final byte[][] prefix;
+        private final byte[][] suffix;
+
+        private Template(QRLayout layout, boolean compact, byte[][] prefix, byte[][] suffix) {
+            this.layout = layout;
+            this.compact = compact;
+            this.prefix = prefix;
+            this.suffix = suffix;
+        }
+
+        /**
+         * @return the layout the template was created for
+         */
+        QRLayout getLayout() {
+            return layout;
+        }
+
+        /**
+         * @return true if the template is compact, the modules are then written without their colour
+         */
+        boolean isCompact() {
+            return compact;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package eu.europeanstudentcard.esc;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Minimal writer of POSIX ustar archives with regular files only
+ */
+final class TarWriter {
+
+    private static final int BLOCK_SIZE = 512;
+    private static final int NAME_LENGTH = 100;
+
+    private final OutputStream out;
+    private final long modificationTime;
+
+    /**
+     * @param out the stream where the archive is written, it is not closed
+     */
+    TarWriter(OutputStream out) {
+        this.out = out;
+        this.modificationTime = System.currentTimeMillis() / 1000;
+    }
+
+    /**
+     * @return true if the name fits in a header, at most 100 bytes in UTF-8
+     */
+    static boolean isValidName(String name) {
+        return name.getBytes(StandardCharsets.UTF_8).length <= NAME_LENGTH;
+    }
+
+    /**
+     * Writes a regular file
+     *
+     * @param name    the name of the file, at most 100 bytes in UTF-8
+     * @param content the content of the file
+     * @throws IOException if the name is too long or an error occurs while writing
+     */
+    void putEntry(String name, byte[] content) throws IOException {
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        if (nameBytes.length > NAME_LENGTH) {
+            throw new IOException(nameTooLong(name));
+        }
+
+        byte[] header = new byte[BLOCK_SIZE];
+        System.arraycopy(nameBytes, 0, header, 0, nameBytes.length);
+        octal(header, 100, 8, 0644);
+        octal(header, 108, 8, 0);
+        octal(header, 116, 8, 0);
+        octal(header, 124, 12, content.length);
+        octal(header, 136, 12, this.modificationTime);
+        header[156] = '0';
+        ascii(header, 257, "ustar\0");
+        ascii(header, 263, "00");
+
+        // The checksum is calculated with the checksum field filled with spaces
+        for (int i = 148; i < 156; i++) {
+            header[i] = ' ';
+        }
+        int checksum = 0;
+        for (byte b : header) {
+            checksum += b & 0xFF;
+        }
+        octal(header, 148, 7, checksum);
+
+        this.out.write(header);
+        this.out.write(content);
+        int padding = (BLOCK_SIZE - content.length % BLOCK_SIZE) % BLOCK_SIZE;
+        this.out.write(new byte[padding]);
+    }
+
+    static String nameTooLong(String name) {
+        return "Tar entry name longer than " + NAME_LENGTH + " bytes: " + name;
+    }
+
+    /**
+     * Writes the end of the archive, two empty blocks, without closing the stream
+     */
+    void finish() throws IOException {
+        this.out.write(new byte[BLOCK_SIZE * 2]);
+        this.out.flush();
+    }
+
+    /**
+     * Writes the value in octal, padded with zeros and followed by a NUL, in a field of the given length
+     */
+    private static void octal(byte[] header, int offset, int length, long value) {
+        String digits = Long.toOctalString(value);
+        String padded = "0".repeat(Math.max(0, length - 1 - digits.length())) + digits;
+        ascii(header, offset, padded);
+        header[offset + length - 1] = 0;
+    }
+
+    private static void ascii(byte[] header, int offset, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(bytes, 0, header, offset, bytes.length);
+    }
+}
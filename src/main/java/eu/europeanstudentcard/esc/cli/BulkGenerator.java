@@ -0,0 +1,454 @@
+package eu.europeanstudentcard.esc.cli;
+
+import eu.europeanstudentcard.esc.QRArchiveExporter;
+import eu.europeanstudentcard.esc.QRFactory;
+import eu.europeanstudentcard.esc.QRFactoryException;
+import eu.europeanstudentcard.esc.QRListener;
+import eu.europeanstudentcard.esc.QRResult;
+import eu.europeanstudentcard.esc.QRStyle;
+import eu.europeanstudentcard.esc.constants.QRConstants;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generates the QRs of the card numbers of a CSV file or of the standard input, from the command line
+ * <p>
+ * The card numbers are read line by line and at most a few QRs per thread are generated but not yet written, so the
+ * input can have millions of lines. The QRs are written to a directory, one file per card, or to a single ZIP or tar
+ * archive. A summary with the throughput and the latency percentiles is printed at the end, and the cards whose QR
+ * could not be generated are reported on the standard error. Run without arguments or with --help for the options.
+ * <p>
+ * The exit code is 0 if all the QRs were generated, 1 if some of them failed or the generation was stopped by an
+ * error, and 2 if the options are invalid.
+ */
+public final class BulkGenerator {
+
+    static final int EXIT_SUCCESS = 0;
+    static final int EXIT_FAILURES = 1;
+    static final int EXIT_USAGE = 2;
+
+    /**
+     * The number of QRs generated but not yet written per thread
+     */
+    private static final int IN_FLIGHT_PER_THREAD = 4;
+
+    private static final String USAGE = String.join(System.lineSeparator(),
+            "Usage: java -jar qr-generator-cli.jar [options] (--output <directory> | --archive <file.zip|file.tar>)",
+            "",
+            "Input:",
+            "  --input <file>        the CSV file of the card numbers, - or no option for the standard input",
+            "  --mmap                map the input file in memory instead of reading it through a stream",
+            "  --column <n>          the column of the card numbers, from 0, default 0",
+            "  --delimiter <c>       the delimiter of the columns, default ,",
+            "  --header              skip the first line of the input",
+            "",
+            "QRs:",
+            "  --host <uri>          the uri of the ESC Verifier, concatenated with the card numbers",
+            "  --orientation <o>     vertical/horizontal, default vertical",
+            "  --colours <c>         normal/inverted, default normal",
+            "  --size <s>            XS/S/M, default M",
+            "  --render-mode <m>     rect/path, default rect",
+            "  --compact             write minified SVGs, about half the size, drawn the same",
+            "  --format <f>          svg/png, default svg, the archives only contain SVGs",
+            "  --dpi <n>             the resolution of the PNGs, from 1 to 1200, default 96",
+            "",
+            "Output:",
+            "  --output <directory>  write one file per card, named after the card number",
+            "  --archive <file>      write a single ZIP or tar archive, depending on the extension",
+            "  --threads <n>         the number of threads generating the QRs, default the number of processors");
+
+    private BulkGenerator() {
+    }
+
+    public static void main(String[] args) {
+        System.exit(run(args, System.in, System.out, System.err));
+    }
+
+    /**
+     * Runs the generator with the given streams instead of the standard ones
+     *
+     * @return the exit code
+     */
+    static int run(String[] args, InputStream stdin, PrintStream out, PrintStream err) {
+        Options options;
+        try {
+            options = Options.parse(args);
+        } catch (IllegalArgumentException e) {
+            err.println(e.getMessage());
+            err.println(USAGE);
+            return EXIT_USAGE;
+        }
+        if (options.help) {
+            out.println(USAGE);
+            return EXIT_SUCCESS;
+        }
+
+        Statistics statistics = new Statistics();
+        QRFactory.Builder builder = QRFactory.builder().eagerLoadLogos(true).listener(statistics);
+        if (options.host != null) {
+            builder.host(options.host);
+        }
+        QRFactory qrFactory = builder.build();
+
+        ExecutorService executor = Executors.newFixedThreadPool(options.threads);
+        long start = System.nanoTime();
+        try (CardNumberReader cardNumbers = options.open(stdin)) {
+            if (options.archive != null) {
+                exportArchive(qrFactory, options, cardNumbers, executor, statistics, err);
+            } else {
+                exportFiles(qrFactory, options, cardNumbers, executor, statistics, err);
+            }
+        } catch (IOException | UncheckedIOException | QRFactoryException e) {
+            err.println("Generation stopped: " + e.getMessage());
+            statistics.stopped = true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            err.println("Generation interrupted");
+            statistics.stopped = true;
+        } finally {
+            executor.shutdownNow();
+        }
+
+        out.println(statistics.summary(System.nanoTime() - start));
+        return statistics.stopped || statistics.failed.get() > 0 ? EXIT_FAILURES : EXIT_SUCCESS;
+    }
+
+    /**
+     * Writes one file per card in the output directory
+     */
+    private static void exportFiles(QRFactory qrFactory, Options options, Iterator<String> cardNumbers,
+                                    ExecutorService executor, Statistics statistics, PrintStream err)
+            throws IOException, InterruptedException {
+        Files.createDirectories(options.output);
+        // Bound the QRs waiting for a thread, so the input is only read as fast as the QRs are generated
+        int maxInFlight = options.threads * IN_FLIGHT_PER_THREAD;
+        Semaphore inFlight = new Semaphore(maxInFlight);
+        while (cardNumbers.hasNext()) {
+            String cardNumber = cardNumbers.next();
+            if (!isValidFileName(cardNumber)) {
+                statistics.fail(cardNumber, "invalid file name", err);
+                continue;
+            }
+            inFlight.acquire();
+            try {
+                executor.execute(() -> {
+                    try {
+                        writeFile(qrFactory, options, cardNumber);
+                    } catch (QRFactoryException | IOException | RuntimeException e) {
+                        statistics.fail(cardNumber, e.getMessage(), err);
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+            } catch (RuntimeException e) {
+                inFlight.release();
+                throw e;
+            }
+        }
+        // Wait for the last QRs
+        inFlight.acquire(maxInFlight);
+    }
+
+    private static void writeFile(QRFactory qrFactory, Options options, String cardNumber)
+            throws QRFactoryException, IOException {
+        Path file = options.output.resolve(cardNumber.concat(options.extension()));
+        boolean written = false;
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file))) {
+            if (options.format == QRConstants.OutputFormat.PNG) {
+                qrFactory.writeQRPng(cardNumber, options.style, options.dpi, out);
+            } else {
+                qrFactory.writeQR(cardNumber, options.style, out);
+            }
+            written = true;
+        } finally {
+            if (!written) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    /**
+     * Writes all the QRs to a single archive
+     */
+    private static void exportArchive(QRFactory qrFactory, Options options, Iterator<String> cardNumbers,
+                                      ExecutorService executor, Statistics statistics, PrintStream err)
+            throws IOException, QRFactoryException {
+        QRArchiveExporter exporter = new QRArchiveExporter(qrFactory, options.archiveFormat(),
+                cardNumber -> cardNumber.concat(QRConstants.SVG_EXTENSION), executor,
+                options.threads * IN_FLIGHT_PER_THREAD);
+        Iterator<String> validCardNumbers = new Iterator<>() {
+            private String next;
+
+            @Override
+            public boolean hasNext() {
+                while (this.next == null && cardNumbers.hasNext()) {
+                    String cardNumber = cardNumbers.next();
+                    if (isValidFileName(cardNumber)) {
+                        this.next = cardNumber;
+                    } else {
+                        statistics.fail(cardNumber, "invalid file name", err);
+                    }
+                }
+                return this.next != null;
+            }
+
+            @Override
+            public String next() {
+                if (!this.hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                String result = this.next;
+                this.next = null;
+                return result;
+            }
+        };
+
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(options.archive))) {
+            QRArchiveExporter.Summary summary = exporter.export(validCardNumbers, options.style, out);
+            for (QRResult failure : summary.getFailures()) {
+                statistics.fail(failure.getCardNumber(), failure.getError().getMessage(), err);
+            }
+        }
+    }
+
+    /**
+     * The card numbers become file or entry names, they cannot contain a path
+     */
+    private static boolean isValidFileName(String cardNumber) {
+        return cardNumber.indexOf('/') < 0 && cardNumber.indexOf('\\') < 0 && cardNumber.indexOf('\0') < 0
+                && !cardNumber.equals(".") && !cardNumber.equals("..");
+    }
+
+    /**
+     * Measures the generated QRs through the listener of the factory
+     */
+    private static final class Statistics implements QRListener {
+
+        private final LatencyHistogram latencies = new LatencyHistogram();
+        private final AtomicLong failed = new AtomicLong();
+        private volatile boolean stopped;
+
+        @Override
+        public void onGenerated(QRConstants.OutputFormat format, QRStyle style, int bytes, long nanos) {
+            this.latencies.record(nanos);
+        }
+
+        void fail(String cardNumber, String message, PrintStream err) {
+            this.failed.incrementAndGet();
+            err.println(cardNumber + ": " + message);
+        }
+
+        String summary(long elapsedNanos) {
+            long generated = this.latencies.getCount();
+            double seconds = elapsedNanos / 1e9;
+            return String.format(Locale.ROOT,
+                    "Generated %d QRs, %d failed, in %.3f s, %.1f QR/s, latency p50 %.3f ms, p95 %.3f ms, "
+                            + "p99 %.3f ms, max %.3f ms",
+                    generated, this.failed.get(), seconds, seconds > 0 ? generated / seconds : 0,
+                    millis(this.latencies.percentile(0.50)), millis(this.latencies.percentile(0.95)),
+                    millis(this.latencies.percentile(0.99)), millis(this.latencies.getMax()));
+        }
+
+        private static double millis(long nanos) {
+            return nanos / 1e6;
+        }
+    }
+
+    /**
+     * The options of the command line
+     */
+    private static final class Options {
+
+        private boolean help;
+        private String input;
+        private boolean mmap;
+        private int column;
+        private char delimiter = ',';
+        private boolean header;
+        private String host;
+        private QRStyle style;
+        private QRConstants.OutputFormat format = QRConstants.OutputFormat.SVG;
+        private int dpi = QRConstants.DEFAULT_DPI;
+        private Path output;
+        private Path archive;
+        private int threads = Runtime.getRuntime().availableProcessors();
+
+        static Options parse(String[] args) {
+            Options options = new Options();
+            String orientation = QRConstants.VERTICAL_ORIENTATION;
+            String colours = QRConstants.NORMAL_COLOUR;
+            String size = QRConstants.MEDIUM_SIZE;
+            QRConstants.RenderMode renderMode = QRConstants.RenderMode.RECT;
+            boolean compact = false;
+
+            for (int i = 0; i < args.length; i++) {
+                String option = args[i];
+                switch (option) {
+                    case "-h":
+                    case "--help":
+                        options.help = true;
+                        return options;
+                    case "--input":
+                        options.input = value(args, ++i, option);
+                        break;
+                    case "--mmap":
+                        options.mmap = true;
+                        break;
+                    case "--column":
+                        options.column = number(args, ++i, option, 0);
+                        break;
+                    case "--delimiter":
+                        String delimiter = value(args, ++i, option);
+                        if (delimiter.equals("\\t")) {
+                            delimiter = "\t";
+                        }
+                        if (delimiter.length() != 1 || delimiter.charAt(0) == '"') {
+                            throw new IllegalArgumentException("Invalid delimiter: " + delimiter);
+                        }
+                        options.delimiter = delimiter.charAt(0);
+                        break;
+                    case "--header":
+                        options.header = true;
+                        break;
+                    case "--host":
+                        options.host = value(args, ++i, option);
+                        break;
+                    case "--orientation":
+                        orientation = value(args, ++i, option);
+                        break;
+                    case "--colours":
+                        colours = value(args, ++i, option);
+                        break;
+                    case "--size":
+                        size = value(args, ++i, option);
+                        break;
+                    case "--render-mode":
+                        renderMode = enumValue(QRConstants.RenderMode.class, value(args, ++i, option), option);
+                        break;
+                    case "--compact":
+                        compact = true;
+                        break;
+                    case "--format":
+                        options.format = enumValue(QRConstants.OutputFormat.class, value(args, ++i, option), option);
+                        break;
+                    case "--dpi":
+                        options.dpi = number(args, ++i, option, 1, QRConstants.MAX_DPI);
+                        break;
+                    case "--output":
+                        options.output = Paths.get(value(args, ++i, option));
+                        break;
+                    case "--archive":
+                        options.archive = Paths.get(value(args, ++i, option));
+                        break;
+                    case "--threads":
+                        options.threads = number(args, ++i, option, 1);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option: " + option);
+                }
+            }
+
+            if (args.length == 0) {
+                options.help = true;
+                return options;
+            }
+            if ((options.output == null) == (options.archive == null)) {
+                throw new IllegalArgumentException("Either --output or --archive is required");
+            }
+            if (options.archive != null) {
+                // Fails on an unknown extension
+                options.archiveFormat();
+                if (options.format != QRConstants.OutputFormat.SVG) {
+                    throw new IllegalArgumentException("The archives only contain SVGs");
+                }
+            }
+            if (options.mmap && (options.input == null || options.input.equals("-"))) {
+                throw new IllegalArgumentException("--mmap requires an --input file");
+            }
+            try {
+                options.style = QRStyle.parse(orientation, colours, size, renderMode).withCompact(compact);
+            } catch (QRFactoryException e) {
+                throw new IllegalArgumentException(e.getMessage());
+            }
+            return options;
+        }
+
+        CardNumberReader open(InputStream stdin) throws IOException {
+            if (this.input == null || this.input.equals("-")) {
+                return CardNumberReader.of(new BufferedReader(new InputStreamReader(stdin, StandardCharsets.UTF_8)),
+                        this.delimiter, this.column, this.header);
+            }
+            Path file = Paths.get(this.input);
+            if (this.mmap) {
+                return CardNumberReader.mapped(file, this.delimiter, this.column, this.header);
+            }
+            return CardNumberReader.of(Files.newBufferedReader(file, StandardCharsets.UTF_8), this.delimiter,
+                    this.column, this.header);
+        }
+
+        String extension() {
+            return this.format == QRConstants.OutputFormat.PNG ? QRConstants.PNG_EXTENSION : QRConstants.SVG_EXTENSION;
+        }
+
+        QRConstants.ArchiveFormat archiveFormat() {
+            String name = this.archive.getFileName().toString().toLowerCase(Locale.ROOT);
+            if (name.endsWith(".zip")) {
+                return QRConstants.ArchiveFormat.ZIP;
+            }
+            if (name.endsWith(".tar")) {
+                return QRConstants.ArchiveFormat.TAR;
+            }
+            throw new IllegalArgumentException("The archive must be a .zip or .tar file");
+        }
+
+        private static String value(String[] args, int index, String option) {
+            if (index >= args.length) {
+                throw new IllegalArgumentException("Missing value of " + option);
+            }
+            return args[index];
+        }
+
+        private static int number(String[] args, int index, String option, int min) {
+            return number(args, index, option, min, Integer.MAX_VALUE);
+        }
+
+        private static int number(String[] args, int index, String option, int min, int max) {
+            String value = value(args, index, option);
+            try {
+                int number = Integer.parseInt(value);
+                if (number >= min && number <= max) {
+                    return number;
+                }
+            } catch (NumberFormatException e) {
+                // Reported below
+            }
+            throw new IllegalArgumentException("Invalid value of " + option + ": " + value);
+        }
+
+        private static <E extends Enum<E>> E enumValue(Class<E> type, String value, String option) {
+            try {
+                return Enum.valueOf(type, value.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Invalid value of " + option + ": " + value);
+            }
+        }
+    }
+}
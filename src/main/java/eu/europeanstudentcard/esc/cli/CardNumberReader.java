@@ -0,0 +1,217 @@
+package eu.europeanstudentcard.esc.cli;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads the card numbers of a CSV input line by line, so the input does not have to fit in memory
+ * <p>
+ * The card number is the given column of each line, the blank lines and the lines with an empty card number are
+ * skipped. The fields may be quoted, with the quotes escaped by doubling them, but a quoted field cannot span several
+ * lines. A reader is not thread safe.
+ */
+abstract class CardNumberReader implements Iterator<String>, Closeable {
+
+    private final char delimiter;
+    private final int column;
+    private boolean skipHeader;
+    private String next;
+
+    /**
+     * @param delimiter  the delimiter of the fields
+     * @param column     the index of the column of the card numbers, from 0
+     * @param skipHeader if true, the first line is a header and is skipped
+     */
+    CardNumberReader(char delimiter, int column, boolean skipHeader) {
+        this.delimiter = delimiter;
+        this.column = column;
+        this.skipHeader = skipHeader;
+    }
+
+    /**
+     * Reads the lines of a stream, like the standard input or a file
+     */
+    static CardNumberReader of(BufferedReader reader, char delimiter, int column, boolean skipHeader) {
+        return new CardNumberReader(delimiter, column, skipHeader) {
+            @Override
+            String readLine() throws IOException {
+                return reader.readLine();
+            }
+
+            @Override
+            public void close() throws IOException {
+                reader.close();
+            }
+        };
+    }
+
+    /**
+     * Reads the lines of a UTF-8 file mapped in memory, region by region, without copying it to the heap
+     */
+    static CardNumberReader mapped(Path file, char delimiter, int column, boolean skipHeader) throws IOException {
+        return new MappedCardNumberReader(FileChannel.open(file, StandardOpenOption.READ), delimiter, column, skipHeader);
+    }
+
+    /**
+     * @return the next line, without its line terminator, or null at the end of the input
+     */
+    abstract String readLine() throws IOException;
+
+    @Override
+    public boolean hasNext() {
+        if (this.next == null) {
+            try {
+                String line;
+                while ((line = this.readLine()) != null) {
+                    if (this.skipHeader) {
+                        this.skipHeader = false;
+                        continue;
+                    }
+                    String cardNumber = field(line, this.delimiter, this.column);
+                    if (cardNumber != null && !cardNumber.isEmpty()) {
+                        this.next = cardNumber;
+                        break;
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return this.next != null;
+    }
+
+    @Override
+    public String next() {
+        if (!this.hasNext()) {
+            throw new NoSuchElementException();
+        }
+        String result = this.next;
+        this.next = null;
+        return result;
+    }
+
+    /**
+     * @return the trimmed field of the column, or null if the line has less columns
+     */
+    static String field(String line, char delimiter, int column) {
+        int index = 0;
+        int position = 0;
+        while (position <= line.length()) {
+            StringBuilder value = null;
+            int end;
+            if (position < line.length() && line.charAt(position) == '"') {
+                // Quoted field, the doubled quotes are escaped quotes
+                value = new StringBuilder();
+                end = position + 1;
+                while (end < line.length()) {
+                    char c = line.charAt(end);
+                    if (c == '"' && end + 1 < line.length() && line.charAt(end + 1) == '"') {
+                        value.append('"');
+                        end += 2;
+                    } else if (c == '"') {
+                        end++;
+                        break;
+                    } else {
+                        value.append(c);
+                        end++;
+                    }
+                }
+                end = line.indexOf(delimiter, end);
+            } else {
+                end = line.indexOf(delimiter, position);
+            }
+            if (end < 0) {
+                end = line.length();
+            }
+            if (index == column) {
+                return (value == null ? line.substring(position, end) : value.toString()).trim();
+            }
+            index++;
+            position = end + 1;
+        }
+        return null;
+    }
+
+    private static final class MappedCardNumberReader extends CardNumberReader {
+
+        /**
+         * The size of the mapped regions, a line cannot be longer
+         */
+        private static final int REGION_SIZE = 64 * 1024 * 1024;
+
+        private final FileChannel channel;
+        private final long size;
+        private long regionStart;
+        private MappedByteBuffer region;
+
+        private MappedCardNumberReader(FileChannel channel, char delimiter, int column, boolean skipHeader)
+                throws IOException {
+            super(delimiter, column, skipHeader);
+            this.channel = channel;
+            this.size = channel.size();
+        }
+
+        @Override
+        String readLine() throws IOException {
+            if (this.region == null || !this.region.hasRemaining()) {
+                long start = this.region == null ? 0 : this.regionStart + this.region.limit();
+                if (start >= this.size) {
+                    return null;
+                }
+                this.map(start);
+            }
+
+            int lineStart = this.region.position();
+            int lineEnd = this.indexOfNewLine(lineStart);
+            if (lineEnd < 0 && this.regionStart + this.region.limit() < this.size) {
+                // The line continues in the next region, map again from the start of the line
+                this.map(this.regionStart + lineStart);
+                lineStart = 0;
+                lineEnd = this.indexOfNewLine(0);
+                if (lineEnd < 0 && this.region.limit() == REGION_SIZE) {
+                    throw new IOException("Line longer than " + REGION_SIZE + " bytes");
+                }
+            }
+            int next = lineEnd < 0 ? this.region.limit() : lineEnd + 1;
+            if (lineEnd < 0) {
+                lineEnd = this.region.limit();
+            }
+            if (lineEnd > lineStart && this.region.get(lineEnd - 1) == '\r') {
+                lineEnd--;
+            }
+
+            byte[] bytes = new byte[lineEnd - lineStart];
+            this.region.get(lineStart, bytes);
+            this.region.position(next);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        private void map(long start) throws IOException {
+            this.regionStart = start;
+            this.region = this.channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(REGION_SIZE, this.size - start));
+        }
+
+        private int indexOfNewLine(int from) {
+            for (int i = from; i < this.region.limit(); i++) {
+                if (this.region.get(i) == '\n') {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.channel.close();
+        }
+    }
+}
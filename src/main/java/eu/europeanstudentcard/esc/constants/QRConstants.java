@@ -15,6 +15,9 @@ public class QRConstants {
         Q(3),
         H(2);
 
+        // values() allocates a new array on each call
+        private static final ErrorLevel[] VALUES = values();
+
         private final int bits;
 
         public int getBits() {
@@ -26,7 +29,7 @@ public class QRConstants {
         }
 
         public static int getBitsFromName(String name) {
-            for (ErrorLevel level : ErrorLevel.values()) {
+            for (ErrorLevel level : VALUES) {
                 if (level.name().equals(name)) {
                     return level.getBits();
                 }
@@ -36,6 +39,190 @@ public class QRConstants {
         }
     }
 
+    /**
+     * The orientation of the QR and the logo, the logo is above the QR or on its right
+     */
+    public enum Orientation {
+        VERTICAL(VERTICAL_ORIENTATION),
+        HORIZONTAL(HORIZONTAL_ORIENTATION);
+
+        private static final Orientation[] VALUES = values();
+
+        private final String value;
+
+        Orientation(String value) {
+            this.value = value;
+        }
+
+        /**
+         * @return the value of the orientation in the String parameters, vertical/horizontal
+         */
+        public String getValue() {
+            return value;
+        }
+
+        /**
+         * @return the orientation with the value, ignoring the case, or null if there is none
+         */
+        public static Orientation fromValue(String value) {
+            for (Orientation orientation : VALUES) {
+                if (orientation.value.equalsIgnoreCase(value)) {
+                    return orientation;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * The colours of the QR and the logo, normal is black modules and inverted is white modules
+     */
+    public enum Colours {
+        NORMAL(NORMAL_COLOUR),
+        INVERTED(INVERTED_COLOUR);
+
+        private static final Colours[] VALUES = values();
+
+        private final String value;
+
+        Colours(String value) {
+            this.value = value;
+        }
+
+        /**
+         * @return the value of the colours in the String parameters, normal/inverted
+         */
+        public String getValue() {
+            return value;
+        }
+
+        /**
+         * @return the colours with the value, ignoring the case, or null if there are none
+         */
+        public static Colours fromValue(String value) {
+            for (Colours colours : VALUES) {
+                if (colours.value.equalsIgnoreCase(value)) {
+                    return colours;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * The size of the QR, the QR and the logo are scaled by the scale factor of the size
+     */
+    public enum Size {
+        /**
+         * 41x41px + logo
+         */
+        XS(EXTRA_SMALL_SIZE, 1.0f),
+        /**
+         * 61.5x61.5px + logo
+         */
+        S(SMALL_SIZE, 1.5f),
+        /**
+         * 164x164px + logo
+         */
+        M(MEDIUM_SIZE, 4f);
+
+        private static final Size[] VALUES = values();
+
+        private final String value;
+        private final float scaleFactor;
+
+        Size(String value, float scaleFactor) {
+            this.value = value;
+            this.scaleFactor = scaleFactor;
+        }
+
+        /**
+         * @return the value of the size in the String parameters, XS/S/M
+         */
+        public String getValue() {
+            return value;
+        }
+
+        public float getScaleFactor() {
+            return scaleFactor;
+        }
+
+        /**
+         * @return the size with the value, ignoring the case, or null if there is none
+         */
+        public static Size fromValue(String value) {
+            for (Size size : VALUES) {
+                if (size.value.equalsIgnoreCase(value)) {
+                    return size;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * The way the dark modules of the QR are drawn in the SVG
+     */
+    public enum RenderMode {
+        /**
+         * One rect of 1x1 per dark module
+         */
+        RECT,
+        /**
+         * One path for the whole QR, merging the consecutive dark modules of each row
+         */
+        PATH
+    }
+
+    /**
+     * The formats of the generated QRs
+     */
+    public enum OutputFormat {
+        SVG,
+        PNG
+    }
+
+    /**
+     * The stages of the generation of a QR, reported to the {@code QRListener}
+     */
+    public enum Stage {
+        /**
+         * Encoding the content in the QR modules with ZXing
+         */
+        ENCODE,
+        /**
+         * Writing the QR and the logo in one SVG with the streaming composer
+         */
+        COMPOSE,
+        /**
+         * Rendering the QR and the logo in a PNG, including the rasterisation of a logo used for the first time
+         */
+        RASTERISE,
+        /**
+         * Parsing the QR SVG with Batik in the DOM path
+         */
+        PARSE,
+        /**
+         * Building the merged document in the DOM path
+         */
+        MERGE,
+        /**
+         * Serializing the merged document in the DOM path
+         */
+        SERIALIZE
+    }
+
+    /**
+     * The archive formats of the bulk export
+     */
+    public enum ArchiveFormat {
+        ZIP,
+        /**
+         * POSIX ustar, the entry names are limited to 100 bytes
+         */
+        TAR
+    }
+
     public static final String VERTICAL_ORIENTATION = "vertical";
     public static final String HORIZONTAL_ORIENTATION = "horizontal";
     public static final String NORMAL_COLOUR = "normal";
@@ -45,4 +232,16 @@ public class QRConstants {
     public static final String SMALL_SIZE = "S";
     public static final String MEDIUM_SIZE = "M";
     public static final String SVG_EXTENSION = ".svg";
+    public static final String PNG_EXTENSION = ".png";
+    public static final String LOGOS_PATH = "logos/";
+    /**
+     * The minified logos of the compact SVGs, generated from the logos when the library is built
+     */
+    public static final String COMPACT_LOGOS_PATH = LOGOS_PATH + "compact/";
+
+    /**
+     * The resolution of the SVG user units, one unit is one pixel at 96 DPI
+     */
+    public static final int DEFAULT_DPI = 96;
+    public static final int MAX_DPI = 1200;
 }
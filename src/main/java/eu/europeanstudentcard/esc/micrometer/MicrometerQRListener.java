@@ -0,0 +1,163 @@
+package eu.europeanstudentcard.esc.micrometer;
+
+import eu.europeanstudentcard.esc.QRCache;
+import eu.europeanstudentcard.esc.QRFactory;
+import eu.europeanstudentcard.esc.QRListener;
+import eu.europeanstudentcard.esc.QRStyle;
+import eu.europeanstudentcard.esc.constants.QRConstants;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records the measures of a factory as Micrometer meters
+ * <p>
+ * The meters are:
+ * <ul>
+ *     <li>{@code qr.stage}: timer of each stage of the generation, tagged with the stage</li>
+ *     <li>{@code qr.generate}: timer of the whole generation, tagged with the format and the size</li>
+ *     <li>{@code qr.output.size}: distribution of the size in bytes of the QRs, tagged with the format</li>
+ *     <li>{@code qr.errors}: counter of the errors, tagged with the class of the cause</li>
+ *     <li>{@code qr.cache.requests}: counter of the cache lookups, tagged with the result, hit or miss</li>
+ *     <li>{@code qr.cache.entries}, {@code qr.cache.bytes}, {@code qr.cache.evictions}, {@code qr.cache.expirations}:
+ *     the statistics of a cache, see {@link #bindTo(QRCache)}</li>
+ *     <li>{@code qr.pool.idle}, {@code qr.pool.created}: the statistics of the pools of a factory, tagged with the
+ *     pool, see {@link #bindTo(QRFactory)}</li>
+ * </ul>
+ * The meters are registered when the listener is created, so recording a measure does not look up any meter.
+ * Micrometer is an optional dependency of the library, it must be added to the application using this listener.
+ */
+public final class MicrometerQRListener implements QRListener {
+
+    private final MeterRegistry registry;
+    private final Map<QRConstants.Stage, Timer> stageTimers = new EnumMap<>(QRConstants.Stage.class);
+    private final Map<QRConstants.OutputFormat, Map<QRConstants.Size, Timer>> generateTimers = new EnumMap<>(QRConstants.OutputFormat.class);
+    private final Map<QRConstants.OutputFormat, DistributionSummary> outputSizes = new EnumMap<>(QRConstants.OutputFormat.class);
+    private final Map<Class<?>, Counter> errors = new ConcurrentHashMap<>();
+    private final Counter cacheHits;
+    private final Counter cacheMisses;
+
+    /**
+     * @param registry the registry where the meters are registered
+     */
+    public MicrometerQRListener(MeterRegistry registry) {
+        this.registry = registry;
+        for (QRConstants.Stage stage : QRConstants.Stage.values()) {
+            this.stageTimers.put(stage, Timer.builder("qr.stage")
+                    .description("The duration of a stage of the generation of a QR")
+                    .tag("stage", stage.name().toLowerCase(Locale.ROOT))
+                    .register(registry));
+        }
+        for (QRConstants.OutputFormat format : QRConstants.OutputFormat.values()) {
+            Map<QRConstants.Size, Timer> timers = new EnumMap<>(QRConstants.Size.class);
+            for (QRConstants.Size size : QRConstants.Size.values()) {
+                timers.put(size, Timer.builder("qr.generate")
+                        .description("The duration of the generation of a QR")
+                        .tag("format", format.name().toLowerCase(Locale.ROOT))
+                        .tag("size", size.getValue())
+                        .register(registry));
+            }
+            this.generateTimers.put(format, timers);
+            this.outputSizes.put(format, DistributionSummary.builder("qr.output.size")
+                    .description("The size of the generated QRs")
+                    .baseUnit("bytes")
+                    .tag("format", format.name().toLowerCase(Locale.ROOT))
+                    .register(registry));
+        }
+        this.cacheHits = cacheCounter(registry, "hit");
+        this.cacheMisses = cacheCounter(registry, "miss");
+    }
+
+    private static Counter cacheCounter(MeterRegistry registry, String result) {
+        return Counter.builder("qr.cache.requests")
+                .description("The lookups of QRs in the cache")
+                .tag("result", result)
+                .register(registry);
+    }
+
+    /**
+     * Registers the statistics of the pools of the factory
+     *
+     * @param qrFactory the factory, referenced weakly by the meters
+     * @return this listener
+     */
+    public MicrometerQRListener bindTo(QRFactory qrFactory) {
+        for (QRFactory.PoolStats pool : qrFactory.getPoolStats()) {
+            String name = pool.getName();
+            Gauge.builder("qr.pool.idle", qrFactory, factory -> poolStats(factory, name).getIdleCount())
+                    .description("The objects waiting in the pool to be reused")
+                    .tag("pool", name)
+                    .register(this.registry);
+            FunctionCounter.builder("qr.pool.created", qrFactory, factory -> poolStats(factory, name).getCreatedCount())
+                    .description("The objects created because the pool was empty")
+                    .tag("pool", name)
+                    .register(this.registry);
+        }
+        return this;
+    }
+
+    /**
+     * Registers the statistics of the cache
+     *
+     * @param cache the cache, referenced weakly by the meters
+     * @return this listener
+     */
+    public MicrometerQRListener bindTo(QRCache cache) {
+        Gauge.builder("qr.cache.entries", cache, c -> c.getStats().getEntryCount())
+                .description("The number of cached QRs")
+                .register(this.registry);
+        Gauge.builder("qr.cache.bytes", cache, c -> c.getStats().getByteSize())
+                .description("The approximate size in memory of the cached QRs")
+                .baseUnit("bytes")
+                .register(this.registry);
+        FunctionCounter.builder("qr.cache.evictions", cache, c -> c.getStats().getEvictionCount())
+                .description("The QRs removed to keep the cache within its limits")
+                .register(this.registry);
+        FunctionCounter.builder("qr.cache.expirations", cache, c -> c.getStats().getExpirationCount())
+                .description("The QRs removed because they were older than the time to live")
+                .register(this.registry);
+        return this;
+    }
+
+    private static QRFactory.PoolStats poolStats(QRFactory qrFactory, String name) {
+        for (QRFactory.PoolStats pool : qrFactory.getPoolStats()) {
+            if (pool.getName().equals(name)) {
+                return pool;
+            }
+        }
+        throw new IllegalStateException("Unknown pool " + name);
+    }
+
+    @Override
+    public void onStage(QRConstants.Stage stage, long nanos) {
+        this.stageTimers.get(stage).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void onGenerated(QRConstants.OutputFormat format, QRStyle style, int bytes, long nanos) {
+        this.generateTimers.get(format).get(style.getSize()).record(nanos, TimeUnit.NANOSECONDS);
+        this.outputSizes.get(format).record(bytes);
+    }
+
+    @Override
+    public void onError(Throwable cause) {
+        this.errors.computeIfAbsent(cause.getClass(), type -> Counter.builder("qr.errors")
+                .description("The QRs that could not be generated")
+                .tag("cause", type.getSimpleName())
+                .register(this.registry)).increment();
+    }
+
+    @Override
+    public void onCacheAccess(boolean hit) {
+        (hit ? this.cacheHits : this.cacheMisses).increment();
+    }
+}
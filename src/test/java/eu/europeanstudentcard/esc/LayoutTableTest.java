@@ -0,0 +1,129 @@
+package eu.europeanstudentcard.esc;
+
+import com.google.zxing.common.BitMatrix;
+import eu.europeanstudentcard.esc.constants.QRConstants;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import javax.imageio.ImageIO;
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.awt.Color;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+public class LayoutTableTest {
+
+    private final QRFactory qrFactory = QRFactory.create();
+    private final LogoTemplateCache logoTemplates = new LogoTemplateCache(true);
+
+    @ParameterizedTest
+    @CsvSource({
+            "vertical, normal, XS", "vertical, normal, S", "vertical, normal, M",
+            "vertical, inverted, XS", "vertical, inverted, S", "vertical, inverted, M",
+            "horizontal, normal, XS", "horizontal, normal, S", "horizontal, normal, M",
+            "horizontal, inverted, XS", "horizontal, inverted, S", "horizontal, inverted, M"})
+    public void givenStyle_whenComposeFromTemplate_thenResultIsEqualToCompose(String orientation, String colours, String size) throws Exception {
+        QRStyle style = QRStyle.parse(orientation, colours, size);
+        LogoTemplate logo = this.logoTemplates.get(style.isVertical(), style.isPositive());
+        BitMatrix bitMatrix = this.qrFactory.encodeQR("https://s.esc-r.eu/cardNumber", 41, 41);
+        LayoutTable layouts = new LayoutTable(41, 4);
+        SVGComposer composer = new SVGComposer(4);
+
+        SVGComposer.Template template = layouts.get(logo, style);
+        ByteArrayOutputStream fromTemplate = new ByteArrayOutputStream();
+        composer.compose(bitMatrix, style.isPositive(), QRConstants.RenderMode.PATH, template, new ModuleEncoder(), fromTemplate);
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        composer.compose(bitMatrix, style.isPositive(), QRConstants.RenderMode.PATH, logo, style.isVertical(),
+                style.getScaleFactor(), expected);
+
+        Assertions.assertSame(template, layouts.get(logo, style));
+        Assertions.assertTrue(template.getLayout().fits(bitMatrix));
+        Assertions.assertArrayEquals(expected.toByteArray(), fromTemplate.toByteArray());
+    }
+
+    @Test
+    public void givenLogo_whenComputeLayout_thenLogoIsAboveOrNextToTheQR() {
+        QRLayout vertical = QRLayout.compute(41, 41, 4, 40f, 20f, true, 1.0f);
+        QRLayout horizontal = QRLayout.compute(41, 41, 4, 40f, 20f, false, 1.0f);
+
+        // The extra margin is a fifth of the QR without its margin, minus the margin
+        float extraMargin = ((41f - 8f) * 0.2f) - 4f;
+        Assertions.assertEquals(extraMargin, vertical.getLogoX());
+        Assertions.assertEquals(20f + extraMargin, vertical.getQrY());
+        Assertions.assertEquals(41f + 20f + extraMargin * 2, vertical.getHeight());
+        Assertions.assertEquals(41f + extraMargin, horizontal.getLogoX());
+        Assertions.assertEquals(extraMargin, horizontal.getQrY());
+        Assertions.assertEquals(41f + 40f + extraMargin * 2, horizontal.getWidth());
+    }
+
+    @ParameterizedTest
+    @CsvSource({"82, 4, vertical, normal", "41, 2, horizontal, inverted", "100, 6, vertical, inverted"})
+    public void givenCustomSizeAndMargin_whenGenerateQR_thenQRIsDecoded(int qrSize, int qrMargin, String orientation,
+                                                                       String colours) throws Exception {
+        QRFactory custom = QRFactory.builder().qrSize(qrSize).qrMargin(qrMargin).eagerLoadLogos(true).build();
+        boolean isPositive = "normal".equals(colours);
+        int modules = Math.max(qrSize, 33 + qrMargin * 2);
+
+        String svg = custom.generateQR("cardNumber", orientation, colours, "S");
+        byte[] png = custom.generateQRPng("cardNumber", orientation, colours, "S", 192);
+
+        Assertions.assertTrue(svg.contains("viewBox=\"0 0 " + modules + " " + modules + "\""));
+        Assertions.assertEquals(custom.getVerifierUri() + "cardNumber", QRTestUtils.decode(svg, isPositive));
+        Assertions.assertEquals(custom.getVerifierUri() + "cardNumber", QRTestUtils.decode(QRTestUtils.flatten(
+                ImageIO.read(new ByteArrayInputStream(png)), isPositive ? Color.WHITE : Color.BLACK)));
+    }
+
+    @ParameterizedTest
+    @CsvSource({"82, 4, true, 1.0", "41, 8, false, 1.5", "41, 2, true, 4.0", "100, 6, false, 1.0"})
+    public void givenCustomSizeAndMargin_whenMergeSVG_thenGeometryIsEqualToGenerateQR(int qrSize, int qrMargin,
+                                                                                     boolean isVertical, float scaleFactor) throws Exception {
+        QRFactory custom = QRFactory.builder().qrSize(qrSize).qrMargin(qrMargin).build();
+        String content = custom.getVerifierUri() + "cardNumber";
+        int modules = Math.max(qrSize, 33 + qrMargin * 2);
+        LogoTemplate logo = this.logoTemplates.get(isVertical, true);
+        BitMatrix bitMatrix = custom.encodeQR(content, modules, modules);
+        ByteArrayOutputStream composed = new ByteArrayOutputStream();
+
+        new SVGComposer((modules - (modules / (33 + qrMargin * 2)) * 33) / 2).compose(bitMatrix, true,
+                QRConstants.RenderMode.RECT, logo, isVertical, scaleFactor, composed);
+        String merged = custom.mergeSVG(custom.generateQRCodeSvg(content, modules, modules, true), logo, isVertical, scaleFactor);
+
+        Assertions.assertEquals(geometry(merged.getBytes(StandardCharsets.UTF_8)), geometry(composed.toByteArray()));
+    }
+
+    @Test
+    public void givenInvalidSizeOrMargin_whenBuild_thenThrowsException() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> QRFactory.builder().qrSize(0));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> QRFactory.builder().qrMargin(-1));
+    }
+
+    /**
+     * Lists the size of the merged image and the size and position of its images, rounded to the thousandth
+     */
+    private static List<String> geometry(byte[] svg) throws Exception {
+        Element root = DocumentBuilderFactory.newInstance().newDocumentBuilder()
+                .parse(new ByteArrayInputStream(svg)).getDocumentElement();
+        List<String> result = new ArrayList<>();
+        result.add(round(root, "width") + " " + round(root, "height"));
+        for (Node child = root.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child.getNodeType() == Node.ELEMENT_NODE) {
+                Element image = (Element) child;
+                result.add(round(image, "width") + " " + round(image, "height") + " " + round(image, "x") + " "
+                        + round(image, "y"));
+            }
+        }
+        return result;
+    }
+
+    private static long round(Element element, String attribute) {
+        return Math.round(Float.parseFloat(element.getAttribute(attribute)) * 1000);
+    }
+}
@@ -0,0 +1,78 @@
+package eu.europeanstudentcard.esc;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+public class LogoMinifierTest {
+
+    @ParameterizedTest
+    @CsvSource({"41, 41", "1.5, 1.5", "-0.25, -.25", "0.0004, 0", "-0.0004, 0", "3.9000006, 3.9", "0.0725, .073"})
+    public void givenNumber_whenFormat_thenShortestRoundedNumberIsReturned(double value, String expected) {
+        Assertions.assertEquals(expected, LogoMinifier.format(value));
+    }
+
+    @Test
+    public void givenRelativePath_whenMinifyPath_thenRoundingErrorsDoNotAddUp() {
+        // Each step rounds to 0, but the third point is closer to .001 than to 0
+        Assertions.assertEquals("M0 0l0 0 .001 0 0 0", LogoMinifier.minifyPath("M0,0 l.0004,0 l.0004,0 l.0004,0"));
+        Assertions.assertEquals("M1 1c.5.5 1 1 1.5-.25Z", LogoMinifier.minifyPath("M1 1 c 0.5 0.5 1 1 1.5 -0.25 Z"));
+    }
+
+    @Test
+    public void givenImplicitCommands_whenMinifyPath_thenCommandsAreKept() {
+        Assertions.assertEquals("M1 1 2 2 3 3", LogoMinifier.minifyPath("M1 1 L2 2 L3 3"));
+        Assertions.assertEquals("m1 1m1 1 1 0z", LogoMinifier.minifyPath("m1 1 m1 1 l1 0 z"));
+        Assertions.assertEquals("M0 0A1.235 1 0 0 1 2 2h-1.5v1H0z", LogoMinifier.minifyPath("M0 0A1.23456 1 0 0 1 2.0001 2h-1.5v1H0z"));
+    }
+
+    @Test
+    public void givenStyle_whenMinifyStyle_thenWhitespaceIsRemoved() {
+        Assertions.assertEquals(".cls-1{fill:none}.cls-2{fill:#fff}",
+                LogoMinifier.minifyStyle("\n  .cls-1 {\n  fill: none;\n  }\n\n  .cls-2 {\n  fill: #fff;\n  }\n"));
+    }
+
+    @Test
+    public void givenLogo_whenMinify_thenOnlyTheDrawingIsKept() throws Exception {
+        String svg = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<svg width=\"41\" height=\"10\" id=\"Capa_2\" xmlns=\"http://www.w3.org/2000/svg\" viewBox=\"0 0 41 10\">\n"
+                + "  <!-- comment -->\n"
+                + "  <g id=\"Horizontal_version\">\n"
+                + "    <g class=\"cls-1\">\n"
+                + "      <polygon points=\"1.00049,2 3.1234,4.5\"/>\n"
+                + "      <rect x=\"0.12345\" y=\"1\" width=\"2\" height=\"100%\"/>\n"
+                + "    </g>\n"
+                + "  </g>\n"
+                + "</svg>\n";
+
+        String minified = new String(LogoMinifier.minify("logo.svg", svg.getBytes(StandardCharsets.UTF_8)), StandardCharsets.UTF_8);
+
+        Assertions.assertEquals("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"41\" height=\"10\" viewBox=\"0 0 41 10\">"
+                + "<g class=\"cls-1\"><polygon points=\"1 2 3.123 4.5\"/><rect x=\".123\" y=\"1\" width=\"2\" height=\"100%\"/></g>"
+                + "</svg>", minified);
+    }
+
+    @Test
+    public void givenBuild_whenGetCompactLogos_thenTheyAreTheMinifiedLogos() throws Exception {
+        for (boolean isVertical : new boolean[]{true, false}) {
+            for (boolean isPositive : new boolean[]{true, false}) {
+                byte[] source = read(LogoTemplateCache.path(isVertical, isPositive));
+                byte[] compact = read(LogoTemplateCache.compactPath(isVertical, isPositive));
+
+                Assertions.assertArrayEquals(LogoMinifier.minify("logo.svg", source), compact);
+                Assertions.assertTrue(compact.length * 2 < source.length, compact.length + " / " + source.length);
+            }
+        }
+    }
+
+    private static byte[] read(String path) throws Exception {
+        try (InputStream in = LogoMinifierTest.class.getClassLoader().getResourceAsStream(path)) {
+            Assertions.assertNotNull(in, path);
+            return in.readAllBytes();
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package eu.europeanstudentcard.esc;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+public class LogoTemplateCacheTest {
+
+    @Test
+    public void givenEager_whenGet_thenSameTemplateIsReturned() throws Exception {
+        LogoTemplateCache cache = new LogoTemplateCache(true);
+
+        LogoTemplate first = cache.get(true, true);
+        LogoTemplate second = cache.get(true, true);
+
+        Assertions.assertSame(first, second);
+        Assertions.assertEquals("logos/vertical_normal.svg", first.getPath());
+    }
+
+    @Test
+    public void givenLazy_whenGet_thenTemplatesAreLoaded() throws Exception {
+        LogoTemplateCache cache = new LogoTemplateCache(false);
+
+        Assertions.assertEquals(41f, cache.get(true, false).getWidth());
+        Assertions.assertEquals(10f, cache.get(true, false).getHeight());
+        Assertions.assertEquals(24f, cache.get(false, true).getWidth());
+        Assertions.assertEquals(41f, cache.get(false, false).getHeight());
+    }
+
+    @Test
+    public void givenScaleFactor_whenImportScaled_thenCopyIsScaledAndTemplateIsUnchanged() throws Exception {
+        LogoTemplate template = new LogoTemplateCache(false).get(false, true);
+        Document target = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+
+        Element scaled = template.importScaled(target, 4f);
+        scaled.setAttribute("x", "1");
+        Element again = template.importScaled(target, 4f);
+
+        Assertions.assertEquals("96.0", scaled.getAttribute("width"));
+        Assertions.assertEquals("164.0", scaled.getAttribute("height"));
+        Assertions.assertEquals("", again.getAttribute("x"));
+        Assertions.assertEquals(24f, template.getWidth());
+    }
+}
@@ -0,0 +1,97 @@
+package eu.europeanstudentcard.esc;
+
+import com.google.zxing.common.BitMatrix;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.lang.management.ManagementFactory;
+
+public class ModuleEncoderTest {
+
+    private final QRFactory qrFactory = QRFactory.create();
+
+    @ParameterizedTest
+    @CsvSource({"cardNumber, 41, true", "123e4567-e89b-12d3-a456-426614174000, 41, false", "cardNumber, 100, true"})
+    public void givenQR_whenWriteRects_thenEachDarkModuleIsARect(String cardNumber, int size, boolean isPositive) throws Exception {
+        BitMatrix qr = this.qrFactory.encodeQR(this.qrFactory.getVerifierUri() + cardNumber, size, size);
+        OutputBuffer out = new OutputBuffer(1024);
+
+        new ModuleEncoder().writeRects(qr, isPositive, out);
+
+        StringBuilder expected = new StringBuilder();
+        for (int y = 0; y < qr.getHeight(); y++) {
+            for (int x = 0; x < qr.getWidth(); x++) {
+                if (qr.get(x, y)) {
+                    expected.append("        <rect fill=\"").append(isPositive ? "black" : "white")
+                            .append("\" height=\"1\" width=\"1\" x=\"").append(x).append("\" y=\"").append(y).append("\"/>\n");
+                }
+            }
+        }
+        Assertions.assertEquals(expected.toString(), out.toString());
+    }
+
+    @ParameterizedTest
+    @CsvSource({"cardNumber, 41, true", "123e4567-e89b-12d3-a456-426614174000, 41, false", "cardNumber, 100, true"})
+    public void givenQR_whenWritePath_thenEachRunIsASubpath(String cardNumber, int size, boolean isPositive) throws Exception {
+        BitMatrix qr = this.qrFactory.encodeQR(this.qrFactory.getVerifierUri() + cardNumber, size, size);
+        OutputBuffer out = new OutputBuffer(1024);
+
+        new ModuleEncoder().writePath(qr, isPositive, out);
+
+        StringBuilder expected = new StringBuilder("        <path fill=\"").append(isPositive ? "black" : "white").append("\" d=\"M0 0");
+        int lastColumn = 0;
+        int lastRow = 0;
+        for (int y = 0; y < qr.getHeight(); y++) {
+            for (int x = 0; x < qr.getWidth(); x++) {
+                if (qr.get(x, y) && (x == 0 || !qr.get(x - 1, y))) {
+                    int end = x;
+                    while (end < qr.getWidth() && qr.get(end, y)) {
+                        end++;
+                    }
+                    expected.append('m').append(x - lastColumn).append(' ').append(y - lastRow)
+                            .append('h').append(end - x).append("v1h-").append(end - x).append('z');
+                    lastColumn = x;
+                    lastRow = y;
+                }
+            }
+        }
+        expected.append("\"/>\n");
+        Assertions.assertEquals(expected.toString(), out.toString());
+    }
+
+    @Test
+    public void givenEncoder_whenWriteModulesAgain_thenNothingIsAllocatedPerModule() throws Exception {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        BitMatrix qr = this.qrFactory.encodeQR(this.qrFactory.getVerifierUri() + "cardNumber", 41, 41);
+        ModuleEncoder encoder = new ModuleEncoder();
+        OutputBuffer out = new OutputBuffer(128 * 1024);
+        encoder.writeRects(qr, true, out);
+        encoder.writePath(qr, true, out);
+
+        int iterations = 1000;
+        long before = threads.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < iterations; i++) {
+            out.reset();
+            encoder.writeRects(qr, true, out);
+            encoder.writePath(qr, true, out);
+        }
+        long allocated = threads.getCurrentThreadAllocatedBytes() - before;
+
+        // A QR has hundreds of dark modules, a String per module would be several KB per QR
+        Assertions.assertTrue(allocated / iterations < 64, "Allocated " + allocated / iterations + " bytes per QR");
+    }
+
+    @Test
+    public void givenValues_whenWriteDecimal_thenDigitsAreWritten() {
+        OutputBuffer out = new OutputBuffer(1);
+
+        for (int value : new int[]{0, 7, 10, -3, 41, -120, Integer.MAX_VALUE, Integer.MIN_VALUE}) {
+            out.writeDecimal(value);
+            out.write(' ');
+        }
+
+        Assertions.assertEquals("0 7 10 -3 41 -120 2147483647 -2147483648 ", out.toString());
+    }
+}
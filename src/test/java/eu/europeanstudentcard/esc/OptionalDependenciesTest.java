@@ -0,0 +1,86 @@
+package eu.europeanstudentcard.esc;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs the factory in a class loader without the optional dependencies, Batik and Spring, as in an application which
+ * only generates SVGs
+ */
+public class OptionalDependenciesTest {
+
+    private static final List<String> OPTIONAL_DEPENDENCIES = List.of("batik", "xmlgraphics", "xml-apis", "springframework");
+
+    private URLClassLoader classLoader;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        List<URL> urls = new ArrayList<>();
+        for (String entry : System.getProperty("java.class.path").split(File.pathSeparator)) {
+            if (OPTIONAL_DEPENDENCIES.stream().noneMatch(entry::contains)) {
+                urls.add(new File(entry).toURI().toURL());
+            }
+        }
+        this.classLoader = new URLClassLoader(urls.toArray(new URL[0]), ClassLoader.getPlatformClassLoader());
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        this.classLoader.close();
+    }
+
+    @Test
+    public void givenNoBatikNorSpring_whenGenerateQR_thenItIsEqualToGenerateQRWithThem() throws Exception {
+        Assertions.assertThrows(ClassNotFoundException.class,
+                () -> this.classLoader.loadClass("org.apache.batik.anim.dom.SAXSVGDocumentFactory"));
+        Assertions.assertThrows(ClassNotFoundException.class,
+                () -> this.classLoader.loadClass("org.springframework.core.io.ClassPathResource"));
+
+        Class<?> factoryClass = this.classLoader.loadClass(QRFactory.class.getName());
+        Object qrFactory = factoryClass.getMethod("create", String.class, boolean.class)
+                .invoke(null, "https://s.esc-r.eu/", true);
+        Method generateQR = factoryClass.getMethod("generateQR", String.class, String.class, String.class, String.class);
+
+        for (String size : List.of("XS", "S", "M")) {
+            Assertions.assertEquals(QRFactory.create().generateQR("cardNumber", "horizontal", "inverted", size),
+                    generateQR.invoke(qrFactory, "cardNumber", "horizontal", "inverted", size));
+        }
+        Assertions.assertEquals(List.of(0L, 0L, 0L), List.of(
+                createdCount(factoryClass, qrFactory, "svgDocumentFactories"),
+                createdCount(factoryClass, qrFactory, "documentBuilders"),
+                createdCount(factoryClass, qrFactory, "transformers")));
+    }
+
+    @Test
+    public void givenNoBatik_whenGenerateQRPng_thenMissingDependencyIsReported() throws Exception {
+        Class<?> factoryClass = this.classLoader.loadClass(QRFactory.class.getName());
+        Object qrFactory = factoryClass.getMethod("create").invoke(null);
+        Method generateQRPng = factoryClass.getMethod("generateQRPng", String.class, String.class, String.class, String.class);
+
+        InvocationTargetException e = Assertions.assertThrows(InvocationTargetException.class,
+                () -> generateQRPng.invoke(qrFactory, "cardNumber", "vertical", "normal", "S"));
+
+        Assertions.assertEquals(QRFactoryException.class.getName(), e.getCause().getClass().getName());
+        Assertions.assertTrue(e.getCause().getMessage().contains("batik-all"), e.getCause().getMessage());
+    }
+
+    private static long createdCount(Class<?> factoryClass, Object qrFactory, String name) throws Exception {
+        for (Object pool : (List<?>) factoryClass.getMethod("getPoolStats").invoke(qrFactory)) {
+            Class<?> statsClass = pool.getClass();
+            if (name.equals(statsClass.getMethod("getName").invoke(pool))) {
+                return (long) statsClass.getMethod("getCreatedCount").invoke(pool);
+            }
+        }
+        throw new IllegalStateException("Unknown pool " + name);
+    }
+}
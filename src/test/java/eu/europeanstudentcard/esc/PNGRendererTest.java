@@ -0,0 +1,125 @@
+package eu.europeanstudentcard.esc;
+
+import com.google.zxing.common.BitMatrix;
+import eu.europeanstudentcard.esc.constants.QRConstants;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.w3c.dom.Element;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.stream.ImageInputStream;
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+public class PNGRendererTest {
+
+    private static final String CARD_NUMBER = "123e4567-e89b-12d3-a456-426614174000";
+
+    private final QRFactory qrFactory = QRFactory.create();
+
+    @ParameterizedTest
+    @CsvSource({
+            "vertical, normal, XS, 300", "vertical, inverted, S, 300", "vertical, normal, M, 96",
+            "horizontal, normal, XS, 600", "horizontal, inverted, S, 150", "horizontal, inverted, M, 96"})
+    public void givenStyle_whenGenerateQRPng_thenQRIsDecoded(String orientation, String colours, String size, int dpi) throws Exception {
+        boolean isPositive = "normal".equals(colours);
+
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(
+                this.qrFactory.generateQRPng(CARD_NUMBER, orientation, colours, size, dpi)));
+
+        Assertions.assertEquals(this.qrFactory.getVerifierUri() + CARD_NUMBER,
+                QRTestUtils.decode(QRTestUtils.flatten(image, isPositive ? Color.WHITE : Color.BLACK)));
+    }
+
+    @ParameterizedTest
+    @CsvSource({"vertical, normal, XS", "vertical, inverted, S", "horizontal, normal, M", "horizontal, inverted, S"})
+    public void givenDefaultDpi_whenGenerateQRPng_thenSizeIsEqualToSVG(String orientation, String colours, String size) throws Exception {
+        String svg = this.qrFactory.generateQR(CARD_NUMBER, orientation, colours, size);
+        Element root = DocumentBuilderFactory.newInstance().newDocumentBuilder()
+                .parse(new ByteArrayInputStream(svg.getBytes(StandardCharsets.UTF_8))).getDocumentElement();
+
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(
+                this.qrFactory.generateQRPng(CARD_NUMBER, orientation, colours, size)));
+
+        Assertions.assertEquals((int) Math.ceil(Float.parseFloat(root.getAttribute("width"))), image.getWidth());
+        Assertions.assertEquals((int) Math.ceil(Float.parseFloat(root.getAttribute("height"))), image.getHeight());
+    }
+
+    @Test
+    public void givenDpi_whenGenerateQRPng_thenResolutionIsWritten() throws Exception {
+        byte[] png = this.qrFactory.generateQRPng(CARD_NUMBER, "vertical", "normal", "S", 300);
+
+        try (ImageInputStream in = ImageIO.createImageInputStream(new ByteArrayInputStream(png))) {
+            ImageReader reader = ImageIO.getImageReaders(in).next();
+            reader.setInput(in);
+            IIOMetadata metadata = reader.getImageMetadata(0);
+            Element pixelSize = (Element) ((Element) metadata.getAsTree("javax_imageio_1.0"))
+                    .getElementsByTagName("HorizontalPixelSize").item(0);
+            // Millimeters per pixel
+            Assertions.assertEquals(25.4 / 300, Double.parseDouble(pixelSize.getAttribute("value")), 0.001);
+        }
+    }
+
+    @Test
+    public void givenSameStyle_whenGenerateQRPngTwice_thenResultIsEqual() throws Exception {
+        byte[] first = this.qrFactory.generateQRPng(CARD_NUMBER, "horizontal", "inverted", "M", 200);
+        // Another size in between, so the pooled canvas is resized
+        this.qrFactory.generateQRPng(CARD_NUMBER, "vertical", "normal", "XS");
+        byte[] second = this.qrFactory.generateQRPng(CARD_NUMBER, "horizontal", "inverted", "M", 200);
+
+        Assertions.assertArrayEquals(first, second);
+    }
+
+    @Test
+    public void givenStream_whenWriteQRPng_thenOutputIsEqualToGenerateQRPng() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        this.qrFactory.writeQRPng(CARD_NUMBER, "vertical", "inverted", "M", 96, out);
+
+        Assertions.assertArrayEquals(this.qrFactory.generateQRPng(CARD_NUMBER, "vertical", "inverted", "M"), out.toByteArray());
+    }
+
+    @Test
+    public void givenInvalidDpi_whenGenerateQRPng_thenThrowsException() {
+        Assertions.assertThrows(QRFactoryException.class,
+                () -> this.qrFactory.generateQRPng(CARD_NUMBER, "vertical", "normal", "XS", 0));
+        Assertions.assertThrows(QRFactoryException.class,
+                () -> this.qrFactory.generateQRPng(CARD_NUMBER, "vertical", "normal", "XS", 4800));
+    }
+
+    @Test
+    public void givenSize_whenRasterise_thenPixelsAreCached() throws Exception {
+        LogoTemplate logo = new LogoTemplateCache(true).get(true, true);
+
+        int[] pixels = logo.rasterise(100, 50);
+
+        Assertions.assertEquals(100 * 50, pixels.length);
+        Assertions.assertSame(pixels, logo.rasterise(100, 50));
+    }
+
+    @Test
+    public void givenManyDpis_whenGenerateQRPng_thenRastersAreBounded() throws Exception {
+        LogoTemplate logo = new LogoTemplateCache(true).get(true, true);
+        PNGRenderer renderer = new PNGRenderer(4);
+        BitMatrix bitMatrix = this.qrFactory.encodeQR(this.qrFactory.getVerifierUri() + CARD_NUMBER, 41, 41);
+
+        for (int dpi = 90; dpi < 110; dpi++) {
+            for (QRConstants.Size size : QRConstants.Size.values()) {
+                renderer.render(bitMatrix, true, logo, true, size.getScaleFactor(), dpi, new PNGRenderer.Canvas(), new ByteArrayOutputStream());
+            }
+        }
+
+        Assertions.assertEquals(LogoTemplate.MAX_RASTERS, logo.rasterCount());
+        int[] pixels = logo.rasterise(100, 50);
+        Assertions.assertSame(pixels, logo.rasterise(100, 50));
+        Assertions.assertEquals(LogoTemplate.MAX_RASTERS, logo.rasterCount());
+    }
+}
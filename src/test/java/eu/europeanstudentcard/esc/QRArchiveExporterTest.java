@@ -0,0 +1,180 @@
+package eu.europeanstudentcard.esc;
+
+import eu.europeanstudentcard.esc.constants.QRConstants;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+public class QRArchiveExporterTest {
+
+    private final QRFactory qrFactory = QRFactory.create();
+
+    @Test
+    public void givenCardNumbers_whenExportZip_thenEntriesAreEqualToGenerateQR() throws Exception {
+        List<String> cardNumbers = Arrays.asList("cardNumber1", "cardNumber2", "cardNumber3");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        QRArchiveExporter.Summary summary = new QRArchiveExporter(qrFactory, QRConstants.ArchiveFormat.ZIP)
+                .export(cardNumbers, "vertical", "normal", "XS", out);
+
+        Assertions.assertEquals(3, summary.getExported());
+        Assertions.assertTrue(summary.getFailures().isEmpty());
+        Map<String, String> entries = readZip(out.toByteArray());
+        Assertions.assertEquals(List.of("cardNumber1.svg", "cardNumber2.svg", "cardNumber3.svg"),
+                List.copyOf(entries.keySet()));
+        for (String cardNumber : cardNumbers) {
+            Assertions.assertEquals(qrFactory.generateQR(cardNumber, "vertical", "normal", "XS"),
+                    entries.get(cardNumber + ".svg"));
+        }
+    }
+
+    @Test
+    public void givenInvalidCardNumber_whenExport_thenItIsReportedAndSkipped() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        QRArchiveExporter.Summary summary = new QRArchiveExporter(qrFactory, QRConstants.ArchiveFormat.ZIP,
+                cardNumber -> "qrs/" + cardNumber + ".svg", ForkJoinPool.commonPool(), 4)
+                .export(Arrays.asList("cardNumber1", null, "cardNumber3"), "horizontal", "inverted", "S", out);
+
+        Assertions.assertEquals(2, summary.getExported());
+        Assertions.assertEquals(1, summary.getFailures().size());
+        Assertions.assertNull(summary.getFailures().get(0).getCardNumber());
+        Assertions.assertNotNull(summary.getFailures().get(0).getError());
+        Assertions.assertEquals(List.of("qrs/cardNumber1.svg", "qrs/cardNumber3.svg"),
+                List.copyOf(readZip(out.toByteArray()).keySet()));
+    }
+
+    @Test
+    public void givenDuplicateCardNumber_whenExportZip_thenItIsReportedAndSkipped() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        QRArchiveExporter.Summary summary = new QRArchiveExporter(qrFactory, QRConstants.ArchiveFormat.ZIP)
+                .export(Arrays.asList("cardNumber1", "cardNumber2", "cardNumber1"), "vertical", "normal", "XS", out);
+
+        Assertions.assertEquals(2, summary.getExported());
+        Assertions.assertEquals(1, summary.getFailures().size());
+        Assertions.assertEquals("cardNumber1", summary.getFailures().get(0).getCardNumber());
+        Assertions.assertEquals(List.of("cardNumber1.svg", "cardNumber2.svg"), List.copyOf(readZip(out.toByteArray()).keySet()));
+    }
+
+    @Test
+    public void givenLongCardNumber_whenExportTar_thenItIsReportedAndSkipped() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        String tooLong = "x".repeat(97);
+
+        QRArchiveExporter.Summary summary = new QRArchiveExporter(qrFactory, QRConstants.ArchiveFormat.TAR)
+                .export(List.of("cardNumber1", tooLong, "cardNumber2"), "vertical", "normal", "XS", out);
+
+        Assertions.assertEquals(2, summary.getExported());
+        Assertions.assertEquals(1, summary.getFailures().size());
+        Assertions.assertEquals(tooLong, summary.getFailures().get(0).getCardNumber());
+        byte[] tar = out.toByteArray();
+        // The two entries and the end of the archive are written
+        Assertions.assertEquals(0, tar.length % 512);
+        Assertions.assertTrue(Arrays.equals(new byte[1024], Arrays.copyOfRange(tar, tar.length - 1024, tar.length)));
+        int size = Integer.parseInt(new String(tar, 124, 11, StandardCharsets.US_ASCII), 8);
+        int second = 512 + (size + 511) / 512 * 512;
+        Assertions.assertEquals("cardNumber2.svg", new String(tar, second, 100, StandardCharsets.US_ASCII).replace("\0", ""));
+    }
+
+    @Test
+    public void givenInvalidSize_whenExport_thenThrowsException() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        QRArchiveExporter exporter = new QRArchiveExporter(qrFactory, QRConstants.ArchiveFormat.ZIP);
+
+        Assertions.assertThrows(QRFactoryException.class,
+                () -> exporter.export(List.of("cardNumber"), "vertical", "normal", "XL", out));
+        Assertions.assertEquals(0, out.size());
+    }
+
+    @Test
+    public void givenCardNumbers_whenExportTar_thenEntriesAreEqualToGenerateQR() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        QRArchiveExporter.Summary summary = new QRArchiveExporter(qrFactory, QRConstants.ArchiveFormat.TAR)
+                .export(List.of("cardNumber1", "cardNumber2"), "vertical", "normal", "M", out);
+
+        Assertions.assertEquals(2, summary.getExported());
+        byte[] tar = out.toByteArray();
+        Assertions.assertEquals(0, tar.length % 512);
+
+        int offset = 0;
+        for (String cardNumber : List.of("cardNumber1", "cardNumber2")) {
+            String name = new String(tar, offset, 100, StandardCharsets.US_ASCII).trim().replace("\0", "");
+            int size = Integer.parseInt(new String(tar, offset + 124, 11, StandardCharsets.US_ASCII), 8);
+            Assertions.assertEquals(cardNumber + ".svg", name);
+            Assertions.assertEquals("ustar", new String(tar, offset + 257, 5, StandardCharsets.US_ASCII));
+            Assertions.assertEquals(qrFactory.generateQR(cardNumber, "vertical", "normal", "M"),
+                    new String(tar, offset + 512, size, StandardCharsets.UTF_8));
+            offset += 512 + (size + 511) / 512 * 512;
+        }
+        // End of archive
+        Assertions.assertEquals(offset + 1024, tar.length);
+    }
+
+    @Test
+    public void givenManyCardNumbers_whenExport_thenInFlightQRsAreBounded() throws Exception {
+        int maxInFlight = 3;
+        AtomicInteger read = new AtomicInteger();
+        AtomicInteger written = new AtomicInteger();
+        AtomicInteger maxPending = new AtomicInteger();
+        Iterator<String> cardNumbers = new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return read.get() < 100;
+            }
+
+            @Override
+            public String next() {
+                return "cardNumber" + read.incrementAndGet();
+            }
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            QRArchiveExporter exporter = new QRArchiveExporter(qrFactory, QRConstants.ArchiveFormat.ZIP, cardNumber -> {
+                // Called by the writer before writing each entry
+                maxPending.accumulateAndGet(read.get() - written.getAndIncrement(), Math::max);
+                return cardNumber + ".svg";
+            }, executor, maxInFlight);
+
+            QRArchiveExporter.Summary summary = exporter.export(cardNumbers, "vertical", "normal", "XS",
+                    new ByteArrayOutputStream());
+
+            Assertions.assertEquals(100, summary.getExported());
+            Assertions.assertTrue(maxPending.get() <= maxInFlight);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void givenInvalidMaxInFlight_whenCreate_thenThrowsException() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new QRArchiveExporter(qrFactory,
+                QRConstants.ArchiveFormat.ZIP, cardNumber -> cardNumber, Runnable::run, 0));
+    }
+
+    private static Map<String, String> readZip(byte[] zip) throws Exception {
+        Map<String, String> entries = new LinkedHashMap<>();
+        try (ZipInputStream in = new ZipInputStream(new ByteArrayInputStream(zip))) {
+            ZipEntry entry;
+            while ((entry = in.getNextEntry()) != null) {
+                entries.put(entry.getName(), new String(in.readAllBytes(), StandardCharsets.UTF_8));
+            }
+        }
+        return entries;
+    }
+}
@@ -0,0 +1,138 @@
+package eu.europeanstudentcard.esc;
+
+import eu.europeanstudentcard.esc.constants.QRConstants;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class QRCacheTest {
+
+    private static final QRStyle STYLE = QRStyle.of(QRConstants.Orientation.VERTICAL, QRConstants.Colours.NORMAL, QRConstants.Size.S);
+
+    @Test
+    public void givenCachedQR_whenGet_thenHitIsCounted() {
+        QRCache cache = new QRCache(10, 1024 * 1024);
+        byte[] content = {1, 2, 3};
+
+        Assertions.assertNull(cache.get(new QRCache.Key("uri1", STYLE, 0, 41, 4)));
+        cache.put(new QRCache.Key("uri1", STYLE, 0, 41, 4), content);
+
+        Assertions.assertSame(content, cache.get(new QRCache.Key("uri1", STYLE, 0, 41, 4)));
+        Assertions.assertNull(cache.get(new QRCache.Key("uri1", STYLE, 96, 41, 4)));
+        Assertions.assertNull(cache.get(new QRCache.Key("uri1", STYLE.withRenderMode(QRConstants.RenderMode.PATH), 0, 41, 4)));
+        QRCache.Stats stats = cache.getStats();
+        Assertions.assertEquals(1, stats.getHitCount());
+        Assertions.assertEquals(3, stats.getMissCount());
+        Assertions.assertEquals(1, stats.getEntryCount());
+        Assertions.assertEquals(3 + QRCache.ENTRY_OVERHEAD, stats.getByteSize());
+    }
+
+    @Test
+    public void givenMaxEntries_whenPut_thenLeastRecentlyUsedIsEvicted() {
+        QRCache cache = new QRCache(2, 1024 * 1024);
+        cache.put(new QRCache.Key("uri1", STYLE, 0, 41, 4), new byte[10]);
+        cache.put(new QRCache.Key("uri2", STYLE, 0, 41, 4), new byte[10]);
+        // uri1 becomes the most recently used
+        cache.get(new QRCache.Key("uri1", STYLE, 0, 41, 4));
+
+        cache.put(new QRCache.Key("uri3", STYLE, 0, 41, 4), new byte[10]);
+
+        Assertions.assertNotNull(cache.get(new QRCache.Key("uri1", STYLE, 0, 41, 4)));
+        Assertions.assertNull(cache.get(new QRCache.Key("uri2", STYLE, 0, 41, 4)));
+        Assertions.assertNotNull(cache.get(new QRCache.Key("uri3", STYLE, 0, 41, 4)));
+        Assertions.assertEquals(1, cache.getStats().getEvictionCount());
+        Assertions.assertEquals(2, cache.getStats().getEntryCount());
+    }
+
+    @Test
+    public void givenMaxBytes_whenPut_thenQRsAreEvictedUntilTheyFit() {
+        QRCache cache = new QRCache(100, 3 * (100 + QRCache.ENTRY_OVERHEAD));
+        for (int i = 0; i < 5; i++) {
+            cache.put(new QRCache.Key("uri" + i, STYLE, 0, 41, 4), new byte[100]);
+        }
+        // Larger than the whole cache, it is not cached
+        cache.put(new QRCache.Key("large", STYLE, 0, 41, 4), new byte[1000]);
+
+        QRCache.Stats stats = cache.getStats();
+        Assertions.assertEquals(3, stats.getEntryCount());
+        Assertions.assertEquals(2, stats.getEvictionCount());
+        Assertions.assertEquals(3 * (100 + QRCache.ENTRY_OVERHEAD), stats.getByteSize());
+        Assertions.assertNull(cache.get(new QRCache.Key("large", STYLE, 0, 41, 4)));
+    }
+
+    @Test
+    public void givenTimeToLive_whenGetExpiredQR_thenItIsRemoved() {
+        AtomicLong now = new AtomicLong();
+        QRCache cache = new QRCache(10, 1024 * 1024, Duration.ofMinutes(5), now::get);
+        cache.put(new QRCache.Key("uri1", STYLE, 0, 41, 4), new byte[10]);
+
+        now.set(Duration.ofMinutes(4).toNanos());
+        Assertions.assertNotNull(cache.get(new QRCache.Key("uri1", STYLE, 0, 41, 4)));
+        now.set(Duration.ofMinutes(5).toNanos());
+        Assertions.assertNull(cache.get(new QRCache.Key("uri1", STYLE, 0, 41, 4)));
+
+        QRCache.Stats stats = cache.getStats();
+        Assertions.assertEquals(1, stats.getExpirationCount());
+        Assertions.assertEquals(0, stats.getEntryCount());
+        Assertions.assertEquals(0, stats.getByteSize());
+    }
+
+    @Test
+    public void givenInvalidLimits_whenCreate_thenThrowsException() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new QRCache(0, 1024));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new QRCache(10, 0));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new QRCache(10, 1024, Duration.ZERO));
+    }
+
+    @Test
+    public void givenFactoryWithCache_whenGenerateQRTwice_thenQRIsEncodedOnce() throws Exception {
+        QRCache cache = new QRCache(100, 10 * 1024 * 1024);
+        QRFactory qrFactory = Mockito.spy(QRFactory.builder().cache(cache).build());
+
+        String first = qrFactory.generateQR("cardNumber", "vertical", "normal", "S");
+        String second = qrFactory.generateQR("cardNumber", STYLE);
+        byte[] png = qrFactory.generateQRPng("cardNumber", STYLE, 96);
+
+        Assertions.assertEquals(first, second);
+        Assertions.assertEquals(QRFactory.create().generateQR("cardNumber", STYLE), first);
+        Assertions.assertArrayEquals(png, qrFactory.generateQRPng("cardNumber", STYLE, 96));
+        Mockito.verify(qrFactory, Mockito.times(2)).encodeQR(ArgumentMatchers.any(), ArgumentMatchers.anyInt(), ArgumentMatchers.anyInt());
+        Assertions.assertEquals(2, cache.getStats().getHitCount());
+        Assertions.assertEquals(2, cache.getStats().getMissCount());
+
+        cache.clear();
+        qrFactory.generateQR("cardNumber", STYLE);
+        Mockito.verify(qrFactory, Mockito.times(3)).encodeQR(ArgumentMatchers.any(), ArgumentMatchers.anyInt(), ArgumentMatchers.anyInt());
+    }
+
+    @Test
+    public void givenSharedCache_whenHostsDiffer_thenQRsAreNotMixed() throws Exception {
+        QRCache cache = new QRCache(100, 10 * 1024 * 1024);
+        QRFactory first = QRFactory.builder().host("https://first/").cache(cache).build();
+        QRFactory second = QRFactory.builder().host("https://second/").cache(cache).build();
+
+        Assertions.assertNotEquals(first.generateQR("cardNumber", STYLE), second.generateQR("cardNumber", STYLE));
+        Assertions.assertEquals(0, cache.getStats().getHitCount());
+    }
+
+    @Test
+    public void givenSharedCache_whenSizesOrMarginsDiffer_thenQRsAreNotMixed() throws Exception {
+        QRCache cache = new QRCache(100, 10 * 1024 * 1024);
+        QRFactory defaults = QRFactory.builder().cache(cache).build();
+        QRFactory larger = QRFactory.builder().qrSize(82).cache(cache).build();
+        QRFactory wider = QRFactory.builder().qrMargin(2).cache(cache).build();
+
+        String qr = defaults.generateQR("cardNumber", STYLE);
+        Assertions.assertEquals(QRFactory.builder().qrSize(82).build().generateQR("cardNumber", STYLE), larger.generateQR("cardNumber", STYLE));
+        Assertions.assertEquals(QRFactory.builder().qrMargin(2).build().generateQR("cardNumber", STYLE), wider.generateQR("cardNumber", STYLE));
+        Assertions.assertEquals(0, cache.getStats().getHitCount());
+
+        // A factory with the same geometry shares the cached QRs
+        Assertions.assertEquals(qr, QRFactory.builder().cache(cache).build().generateQR("cardNumber", STYLE));
+        Assertions.assertEquals(1, cache.getStats().getHitCount());
+    }
+}
@@ -0,0 +1,96 @@
+package eu.europeanstudentcard.esc;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.EncodeHintType;
+import com.google.zxing.WriterException;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.qrcode.QRCodeWriter;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+import com.google.zxing.qrcode.decoder.Version;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Random;
+
+public class QREncoderTest {
+
+    private static final String CHARACTERS = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789-_.~/?=&%";
+
+    @ParameterizedTest
+    @CsvSource({"4, M, 4, 41, false", "4, M, 4, 41, true", "4, M, 4, 100, false", "4, M, 0, 33, false",
+            "2, L, 4, 0, false", "6, H, 2, 50, false", "5, Q, 4, 45, true"})
+    public void givenRandomPayloads_whenEncode_thenResultIsEqualToZXing(int versionNumber, String level, int margin,
+                                                                       int size, boolean parallelMasks) throws Exception {
+        Version version = Version.getVersionForNumber(versionNumber);
+        ErrorCorrectionLevel errorCorrectionLevel = ErrorCorrectionLevel.valueOf(level);
+        QREncoder encoder = new QREncoder(version, errorCorrectionLevel, margin, parallelMasks);
+        QREncoder.Workspace workspace = encoder.newWorkspace();
+        Map<EncodeHintType, Object> hints = new EnumMap<>(EncodeHintType.class);
+        hints.put(EncodeHintType.ERROR_CORRECTION, errorCorrectionLevel);
+        hints.put(EncodeHintType.QR_VERSION, versionNumber);
+        hints.put(EncodeHintType.MARGIN, margin);
+        QRCodeWriter writer = new QRCodeWriter();
+        Random random = new Random(42);
+
+        int encoded = 0;
+        for (int i = 0; i < 300; i++) {
+            String content = "https://s.esc-r.eu/" + randomCardNumber(random, random.nextInt(50));
+            BitMatrix result = encoder.encode(content, size, size, workspace);
+            BitMatrix expected;
+            try {
+                expected = writer.encode(content, BarcodeFormat.QR_CODE, size, size, hints);
+            } catch (WriterException e) {
+                // Too long for the version, the generic writer reports it
+                Assertions.assertNull(result, content);
+                continue;
+            }
+            Assertions.assertEquals(expected, result, content);
+            encoded++;
+        }
+        Assertions.assertTrue(encoded > 0);
+    }
+
+    @Test
+    public void givenAlphanumericPayload_whenEncode_thenGenericWriterIsUsed() throws Exception {
+        QRFactory qrFactory = QRFactory.create("HTTPS://S.ESC-R.EU/");
+        QREncoder encoder = new QREncoder(Version.getVersionForNumber(4), ErrorCorrectionLevel.M, 4, false);
+
+        Assertions.assertNull(encoder.encode("HTTPS://S.ESC-R.EU/123", 41, 41, encoder.newWorkspace()));
+        Assertions.assertNull(encoder.encode("https://s.esc-r.eu/\u20AC", 41, 41, encoder.newWorkspace()));
+        Assertions.assertEquals("HTTPS://S.ESC-R.EU/123", QRTestUtils.decodeModules(qrFactory.generateQR("123", "vertical", "normal", "XS")));
+    }
+
+    @Test
+    public void givenTooLongPayload_whenGenerateQR_thenThrowsException() {
+        QRFactory qrFactory = QRFactory.create();
+
+        QRFactoryException exception = Assertions.assertThrows(QRFactoryException.class,
+                () -> qrFactory.generateQR("a".repeat(60), "vertical", "normal", "XS"));
+        Assertions.assertEquals("Data too big for requested version", exception.getMessage());
+    }
+
+    @Test
+    public void givenParallelMasks_whenGenerateQR_thenQRIsEqualToSequential() throws Exception {
+        QRFactory parallel = QRFactory.builder().parallelMasks(true).build();
+        QRFactory sequential = QRFactory.create();
+
+        for (int i = 0; i < 20; i++) {
+            String cardNumber = "123e4567-e89b-12d3-a456-4266141740" + i;
+            String qr = parallel.generateQR(cardNumber, "horizontal", "normal", "S");
+            Assertions.assertEquals(sequential.generateQR(cardNumber, "horizontal", "normal", "S"), qr);
+            Assertions.assertEquals(parallel.getVerifierUri() + cardNumber, QRTestUtils.decodeModules(qr));
+        }
+    }
+
+    private static String randomCardNumber(Random random, int length) {
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append(CHARACTERS.charAt(random.nextInt(CHARACTERS.length())));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,123 @@
+package eu.europeanstudentcard.esc;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Generates QRs concurrently with a single shared factory and checks that every QR contains its own card number
+ */
+public class QRFactoryConcurrencyTest {
+
+    private static final int QR_COUNT = 2000;
+    private static final int THREAD_COUNT = 16;
+    private static final String[] ORIENTATIONS = {"vertical", "horizontal"};
+    private static final String[] COLOURS = {"normal", "inverted"};
+    private static final String[] SIZES = {"XS", "S", "M"};
+
+    @Test
+    public void givenSharedFactory_whenGenerateQRConcurrently_thenEveryQRDecodesToItsCardNumber() throws Exception {
+        QRFactory qrFactory = QRFactory.create("https://s.esc-r.eu/");
+        ExecutorService executor = newExecutor();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<String>> qrs = new ArrayList<>();
+        try {
+            for (int i = 0; i < QR_COUNT; i++) {
+                String cardNumber = cardNumber(i);
+                String orientation = ORIENTATIONS[i % ORIENTATIONS.length];
+                String colours = COLOURS[(i / 2) % COLOURS.length];
+                String size = SIZES[i % SIZES.length];
+                qrs.add(executor.submit(() -> {
+                    start.await();
+                    return qrFactory.generateQR(cardNumber, orientation, colours, size);
+                }));
+            }
+            start.countDown();
+
+            for (int i = 0; i < QR_COUNT; i++) {
+                Assertions.assertEquals("https://s.esc-r.eu/" + cardNumber(i), QRTestUtils.decodeModules(qrs.get(i).get()));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void givenSharedFactory_whenMergeSVGConcurrently_thenEveryQRDecodesToItsCardNumber() throws Exception {
+        QRFactory qrFactory = QRFactory.create("https://s.esc-r.eu/");
+        LogoTemplate logo = new LogoTemplateCache(true).get(true, true);
+        ExecutorService executor = newExecutor();
+        List<Future<String>> qrs = new ArrayList<>();
+        try {
+            for (int i = 0; i < QR_COUNT / 10; i++) {
+                String content = "https://s.esc-r.eu/" + cardNumber(i);
+                qrs.add(executor.submit(() -> qrFactory.mergeSVG(qrFactory.generateQRCodeSvg(content, 41, 41, true), logo, true, 1.5f)));
+            }
+
+            for (int i = 0; i < QR_COUNT / 10; i++) {
+                Assertions.assertEquals("https://s.esc-r.eu/" + cardNumber(i), QRTestUtils.decodeModules(qrs.get(i).get()));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void givenSharedFactory_whenGenerateQRAsync_thenEveryQRDecodesToItsCardNumberOnAnExecutorThread() throws Exception {
+        QRFactory qrFactory = QRFactory.create("https://s.esc-r.eu/");
+        List<CompletableFuture<String>> qrs = new ArrayList<>();
+        Set<String> threads = ConcurrentHashMap.newKeySet();
+        for (int i = 0; i < QR_COUNT / 4; i++) {
+            qrs.add(qrFactory.generateQRAsync(cardNumber(i), ORIENTATIONS[i % ORIENTATIONS.length], "normal", SIZES[i % SIZES.length])
+                    .whenComplete((qr, e) -> threads.add(Thread.currentThread().getName())));
+        }
+
+        for (int i = 0; i < QR_COUNT / 4; i++) {
+            Assertions.assertEquals("https://s.esc-r.eu/" + cardNumber(i), QRTestUtils.decodeModules(qrs.get(i).get(30, TimeUnit.SECONDS)));
+        }
+        Assertions.assertTrue(threads.stream().anyMatch(name -> name.startsWith("qr-async-")), threads.toString());
+    }
+
+    @Test
+    public void givenInvalidParametersOrSaturatedExecutor_whenGenerateQRAsync_thenFutureFails() {
+        QRFactory qrFactory = QRFactory.builder().asyncExecutor(task -> {
+            throw new RejectedExecutionException();
+        }).build();
+
+        ExecutionException invalid = Assertions.assertThrows(ExecutionException.class,
+                () -> qrFactory.generateQRAsync(cardNumber(1), "diagonal", "normal", "S").get());
+        ExecutionException rejected = Assertions.assertThrows(ExecutionException.class,
+                () -> qrFactory.generateQRAsync(cardNumber(1), "vertical", "normal", "S").get());
+
+        Assertions.assertInstanceOf(QRFactoryException.class, invalid.getCause());
+        Assertions.assertEquals("Error validating parameters, invalid orientation", invalid.getCause().getMessage());
+        Assertions.assertInstanceOf(QRFactoryException.class, rejected.getCause());
+    }
+
+    private static String cardNumber(int i) {
+        return String.format("%08x-e89b-12d3-a456-426614174000", i);
+    }
+
+    /**
+     * Uses a virtual thread per task when the JVM supports them, Java 21 or later, else a pool of platform threads
+     */
+    private static ExecutorService newExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(THREAD_COUNT);
+        }
+    }
+}
@@ -9,6 +9,7 @@ import org.junit.jupiter.api.TestInstance;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentMatchers;
 import org.mockito.InjectMocks;
+import org.mockito.MockedStatic;
 import org.mockito.Mockito;
 import org.mockito.Spy;
 import org.mockito.quality.Strictness;
@@ -17,9 +18,18 @@ import org.w3c.dom.Document;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.net.URI;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 
 @ExtendWith(MockitoExtension.class)
@@ -48,6 +58,22 @@ public class QRFactoryTest {
         Assertions.assertEquals("host", qrFactory.getVerifierUri());
     }
 
+    @Test
+    public void givenEagerLoadLogos_whenCreate_ThenResultIsEqual() {
+        QRFactory qrFactory = QRFactory.create("host", true);
+        Assertions.assertEquals("host", qrFactory.getVerifierUri());
+    }
+
+    @Test
+    public void givenSameStyle_whenGenerateQRTwice_thenResultsAreEqual() throws Exception {
+        QRFactory qrFactory = QRFactory.create("https://s.esc-r.eu/", true);
+
+        String first = qrFactory.generateQR("cardNumber", "vertical", "normal", "M");
+        String second = qrFactory.generateQR("cardNumber", "vertical", "normal", "M");
+
+        Assertions.assertEquals(first, second);
+    }
+
     @Test
     public void givenValidData_whenGenerateQR_thenNoExceptionIsThrown() {
         Assertions.assertDoesNotThrow(() -> qrService.areValidParameters( "vertical", "normal", "S"));
@@ -73,29 +99,120 @@ public class QRFactoryTest {
 
     @Test
     public void givenNullCardNumber_whenGenerateQR_thenExceptionIsThrown() throws Exception {
-        Mockito.doNothing().when(qrService).areValidParameters(ArgumentMatchers.anyString(), ArgumentMatchers.anyString(), ArgumentMatchers.anyString());
-
         Assertions.assertThrows(QRFactoryException.class,
                 () -> qrService.generateQR(null, "vertical", "normal", "S"));
 
-        Mockito.verify(qrService, Mockito.times(1)).areValidParameters(ArgumentMatchers.anyString(), ArgumentMatchers.anyString(), ArgumentMatchers.anyString());
-        Mockito.verify(qrService, Mockito.times(0)).generateQRCodeSvg(ArgumentMatchers.any(), ArgumentMatchers.anyInt(), ArgumentMatchers.anyInt(), ArgumentMatchers.anyBoolean());
-        Mockito.verify(qrService, Mockito.times(0)).mergeSVG(ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.anyBoolean(), ArgumentMatchers.any(), ArgumentMatchers.anyFloat());
+        Mockito.verify(qrService, Mockito.times(0)).encodeQR(ArgumentMatchers.any(), ArgumentMatchers.anyInt(), ArgumentMatchers.anyInt());
+        Mockito.verify(qrService, Mockito.times(0)).mergeSVG(ArgumentMatchers.any(String.class), ArgumentMatchers.any(LogoTemplate.class), ArgumentMatchers.anyBoolean(), ArgumentMatchers.anyFloat());
     }
 
     @Test
     public void givenValidData_whenGenerateQR_thenResultIsNotNullAndMethodIsCalled() throws Exception {
-        Mockito.doNothing().when(qrService).areValidParameters(ArgumentMatchers.anyString(), ArgumentMatchers.anyString(), ArgumentMatchers.anyString());
-        Mockito.doReturn("test").when(qrService).generateQRCodeSvg(ArgumentMatchers.any(), ArgumentMatchers.anyInt(), ArgumentMatchers.anyInt(), ArgumentMatchers.anyBoolean());
-        Mockito.doReturn("test").when(qrService).mergeSVG(ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.anyBoolean(), ArgumentMatchers.any(), ArgumentMatchers.anyFloat());
+        String result;
+        try (MockedStatic<QRStyle> style = Mockito.mockStatic(QRStyle.class, Mockito.CALLS_REAL_METHODS)) {
+            result = qrService.generateQR("cardNumber", "horizontal", "normal", "S");
 
-        String result = qrService.generateQR("cardNumber", "horizontal", "normal", "S");
+            // The String parameters are parsed once
+            style.verify(() -> QRStyle.parse(ArgumentMatchers.anyString(), ArgumentMatchers.anyString(),
+                    ArgumentMatchers.anyString(), ArgumentMatchers.any()), Mockito.times(1));
+            style.verify(() -> QRStyle.parse(ArgumentMatchers.anyString(), ArgumentMatchers.anyString(),
+                    ArgumentMatchers.anyString()), Mockito.never());
+        }
 
         Assertions.assertNotNull(result);
 
-        Mockito.verify(qrService, Mockito.times(1)).areValidParameters(ArgumentMatchers.anyString(), ArgumentMatchers.anyString(), ArgumentMatchers.anyString());
-        Mockito.verify(qrService, Mockito.times(1)).generateQRCodeSvg(ArgumentMatchers.any(), ArgumentMatchers.anyInt(), ArgumentMatchers.anyInt(), ArgumentMatchers.anyBoolean());
-        Mockito.verify(qrService, Mockito.times(1)).mergeSVG(ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.anyBoolean(), ArgumentMatchers.any(), ArgumentMatchers.anyFloat());
+        Mockito.verify(qrService, Mockito.times(1)).encodeQR(ArgumentMatchers.any(), ArgumentMatchers.anyInt(), ArgumentMatchers.anyInt());
+        Mockito.verify(qrService, Mockito.times(0)).mergeSVG(ArgumentMatchers.any(String.class), ArgumentMatchers.any(LogoTemplate.class), ArgumentMatchers.anyBoolean(), ArgumentMatchers.anyFloat());
+        Mockito.verify(qrService, Mockito.times(0)).serializeDocument(ArgumentMatchers.any());
+    }
+
+    @Test
+    public void givenOutputs_whenWriteQR_thenContentIsEqualToGenerateQR() throws Exception {
+        QRFactory qrFactory = QRFactory.create();
+        String expected = qrFactory.generateQR("cardNumber", "vertical", "inverted", "M");
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        ByteArrayOutputStream channel = new ByteArrayOutputStream();
+        StringBuilder appendable = new StringBuilder("prefix");
+
+        qrFactory.writeQR("cardNumber", "vertical", "inverted", "M", stream);
+        qrFactory.writeQR("cardNumber", "vertical", "inverted", "M", Channels.newChannel(channel));
+        qrFactory.writeQR("cardNumber", "vertical", "inverted", "M", appendable);
+
+        Assertions.assertEquals(expected, stream.toString(StandardCharsets.UTF_8));
+        Assertions.assertEquals(expected, channel.toString(StandardCharsets.UTF_8));
+        Assertions.assertEquals("prefix" + expected, appendable.toString());
+    }
+
+    @Test
+    public void givenInvalidColours_whenWriteQR_thenExceptionIsThrownAndNothingIsWritten() {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+
+        Assertions.assertThrows(QRFactoryException.class,
+                () -> qrService.writeQR("cardNumber", "vertical", "normal1", "S", stream));
+        Assertions.assertEquals(0, stream.size());
+    }
+
+    @Test
+    public void givenCardNumbers_whenGenerateQRs_thenResultsAreInOrderAndFailuresAreReported() throws Exception {
+        QRFactory qrFactory = QRFactory.create();
+        List<String> cardNumbers = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            cardNumbers.add(i == 42 ? null : "card" + i);
+        }
+        ForkJoinPool pool = new ForkJoinPool(2);
+
+        List<QRResult> results;
+        try {
+            results = qrFactory.generateQRs(cardNumbers, "horizontal", "inverted", "XS", pool);
+        } finally {
+            pool.shutdown();
+        }
+
+        Assertions.assertEquals(100, results.size());
+        for (int i = 0; i < 100; i++) {
+            QRResult result = results.get(i);
+            Assertions.assertEquals(cardNumbers.get(i), result.getCardNumber());
+            Assertions.assertEquals(i != 42, result.isSuccess());
+            Assertions.assertEquals(i != 42, result.getQR() != null);
+            Assertions.assertEquals(i == 42, result.getError() != null);
+        }
+        Assertions.assertEquals(qrFactory.generateQR("card7", "horizontal", "inverted", "XS"), results.get(7).getQR());
+    }
+
+    @Test
+    public void givenStreamOrExecutor_whenGenerateQRs_thenResultsAreInOrder() throws Exception {
+        QRFactory qrFactory = QRFactory.create();
+        QRStyle style = QRStyle.parse("vertical", "normal", "XS");
+        List<String> cardNumbers = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            cardNumbers.add("card" + i);
+        }
+        // A single thread and no queue, so most of the chunks are rejected and generated by the calling thread
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS, new SynchronousQueue<>());
+
+        List<QRResult> fromStream = qrFactory.generateQRs(cardNumbers.stream(), style);
+        List<QRResult> fromExecutor;
+        try {
+            fromExecutor = qrFactory.generateQRs((Iterable<String>) cardNumbers, style, executor);
+        } finally {
+            executor.shutdown();
+        }
+
+        Assertions.assertEquals(40, fromStream.size());
+        Assertions.assertEquals(40, fromExecutor.size());
+        for (int i = 0; i < 40; i++) {
+            Assertions.assertEquals(cardNumbers.get(i), fromStream.get(i).getCardNumber());
+            Assertions.assertEquals(cardNumbers.get(i), fromExecutor.get(i).getCardNumber());
+            Assertions.assertTrue(fromExecutor.get(i).isSuccess());
+            Assertions.assertEquals(fromStream.get(i).getQR(), fromExecutor.get(i).getQR());
+        }
+        Assertions.assertEquals(qrFactory.generateQR("card31", style), fromExecutor.get(31).getQR());
+    }
+
+    @Test
+    public void givenInvalidSize_whenGenerateQRs_thenExceptionIsThrown() {
+        Assertions.assertThrows(QRFactoryException.class,
+                () -> qrService.generateQRs(List.of("card"), "vertical", "normal", "S1"));
     }
 
     @Test
@@ -129,6 +246,18 @@ public class QRFactoryTest {
         Mockito.verify(qrService, Mockito.times(1)).serializeDocument(ArgumentMatchers.any());
     }
 
+    @Test
+    public void givenQRSvg_whenMergeSVGFromMemory_thenResultContainsBothImages() throws Exception {
+        LogoTemplate logo = new LogoTemplateCache(false).get(true, true);
+        String qrSVG = qrService.generateQRCodeSvg("content", 41, 41, true);
+
+        String result = qrService.mergeSVG(qrSVG, logo, true, 1.5f);
+
+        Assertions.assertTrue(result.contains("id=\"Capa_2\""));
+        Assertions.assertTrue(result.contains("viewBox=\"0 0 41 41\""));
+        Assertions.assertTrue(result.contains("<rect fill=\"black\" height=\"1\" width=\"1\" x=\"4\" y=\"4\"/>"));
+    }
+
     @Test
     public void givenDoc_whenSerializeDocument_thenResultIsNotNull() throws Exception {
         DocumentBuilderFactory docFactory = DocumentBuilderFactory.newInstance();
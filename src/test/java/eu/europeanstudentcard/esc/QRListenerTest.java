@@ -0,0 +1,114 @@
+package eu.europeanstudentcard.esc;
+
+import eu.europeanstudentcard.esc.constants.QRConstants;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+public class QRListenerTest {
+
+    @Test
+    public void givenListener_whenGenerateQR_thenStagesAndSizeAreReported() throws Exception {
+        RecordingListener listener = new RecordingListener();
+        QRFactory qrFactory = QRFactory.builder().listener(listener).build();
+
+        String qr = qrFactory.generateQR("cardNumber", "vertical", "normal", "S");
+        byte[] png = qrFactory.generateQRPng("cardNumber", "horizontal", "inverted", "XS", 96);
+
+        Assertions.assertEquals(EnumSet.of(QRConstants.Stage.ENCODE, QRConstants.Stage.COMPOSE,
+                QRConstants.Stage.RASTERISE), listener.stages);
+        Assertions.assertEquals(List.of(QRConstants.OutputFormat.SVG, QRConstants.OutputFormat.PNG), listener.formats);
+        Assertions.assertEquals(List.of(qr.length(), png.length), listener.sizes);
+        Assertions.assertTrue(listener.errors.isEmpty());
+        Assertions.assertTrue(listener.cacheAccesses.isEmpty());
+    }
+
+    @Test
+    public void givenListener_whenMergeSVG_thenLegacyStagesAreReported() throws Exception {
+        RecordingListener listener = new RecordingListener();
+        QRFactory qrFactory = QRFactory.builder().listener(listener).build();
+
+        LogoTemplate logo = new LogoTemplateCache(false).get(true, true);
+        qrFactory.mergeSVG(qrFactory.generateQRCodeSvg("content", 41, 41, true), logo, true, 1.0f);
+
+        Assertions.assertTrue(listener.stages.containsAll(EnumSet.of(QRConstants.Stage.PARSE,
+                QRConstants.Stage.MERGE, QRConstants.Stage.SERIALIZE)));
+    }
+
+    @Test
+    public void givenListener_whenInvalidParameters_thenErrorsAreReported() {
+        RecordingListener listener = new RecordingListener();
+        QRFactory qrFactory = QRFactory.builder().listener(listener).build();
+
+        Assertions.assertThrows(QRFactoryException.class,
+                () -> qrFactory.generateQR("cardNumber", "vertical", "normal", "XL"));
+        Assertions.assertThrows(QRFactoryException.class,
+                () -> qrFactory.generateQRPng("cardNumber", "vertical", "normal", "XS", 0));
+
+        Assertions.assertEquals(2, listener.errors.size());
+        Assertions.assertTrue(listener.formats.isEmpty());
+    }
+
+    @Test
+    public void givenListenerAndCache_whenGenerateQRAgain_thenCacheAccessesAreReported() throws Exception {
+        RecordingListener listener = new RecordingListener();
+        QRFactory qrFactory = QRFactory.builder().cache(new QRCache(10, 1024 * 1024)).listener(listener).build();
+
+        qrFactory.generateQR("cardNumber", "vertical", "normal", "S");
+        qrFactory.generateQR("cardNumber", "vertical", "normal", "S");
+
+        Assertions.assertEquals(List.of(false, true), listener.cacheAccesses);
+        // The cached QR is not encoded again but it is still reported as generated
+        Assertions.assertEquals(2, listener.formats.size());
+    }
+
+    @Test
+    public void givenFactory_whenGenerateQR_thenPoolStatsAreReported() throws Exception {
+        QRFactory qrFactory = QRFactory.create();
+
+        qrFactory.generateQR("cardNumber", "vertical", "normal", "S");
+
+        QRFactory.PoolStats outputBuffers = qrFactory.getPoolStats().stream()
+                .filter(pool -> pool.getName().equals("outputBuffers"))
+                .findFirst()
+                .orElseThrow();
+        Assertions.assertEquals(1, outputBuffers.getCreatedCount());
+        Assertions.assertEquals(1, outputBuffers.getIdleCount());
+    }
+
+    private static final class RecordingListener implements QRListener {
+
+        private final Set<QRConstants.Stage> stages = Collections.synchronizedSet(EnumSet.noneOf(QRConstants.Stage.class));
+        private final List<QRConstants.OutputFormat> formats = Collections.synchronizedList(new ArrayList<>());
+        private final List<Integer> sizes = Collections.synchronizedList(new ArrayList<>());
+        private final List<Throwable> errors = Collections.synchronizedList(new ArrayList<>());
+        private final List<Boolean> cacheAccesses = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        public void onStage(QRConstants.Stage stage, long nanos) {
+            Assertions.assertTrue(nanos >= 0);
+            this.stages.add(stage);
+        }
+
+        @Override
+        public void onGenerated(QRConstants.OutputFormat format, QRStyle style, int bytes, long nanos) {
+            this.formats.add(format);
+            this.sizes.add(bytes);
+        }
+
+        @Override
+        public void onError(Throwable cause) {
+            this.errors.add(cause);
+        }
+
+        @Override
+        public void onCacheAccess(boolean hit) {
+            this.cacheAccesses.add(hit);
+        }
+    }
+}
@@ -0,0 +1,256 @@
+package eu.europeanstudentcard.esc;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Subscribes to the QRs of a batch and checks that the card numbers are only read, and their QRs generated, as fast
+ * as the subscriber requests them
+ */
+public class QRPublisherTest {
+
+    private final ExecutorService bulkExecutor = Executors.newFixedThreadPool(4);
+    private final QRFactory qrFactory = QRFactory.builder().bulkExecutor(this.bulkExecutor).build();
+
+    @AfterEach
+    public void tearDown() {
+        this.bulkExecutor.shutdownNow();
+    }
+
+    @ParameterizedTest
+    @CsvSource({"1, 8", "5, 3", "9223372036854775807, 4"})
+    public void givenSlowSubscriber_whenPublishQRs_thenAtMostTheRequestedQRsAreGeneratedAhead(long batch, int maxInFlight) throws Exception {
+        CountingCardNumbers cardNumbers = new CountingCardNumbers(30);
+        SlowSubscriber subscriber = new SlowSubscriber(batch, cardNumbers);
+
+        this.qrFactory.publishQRs(cardNumbers, QRStyle.parse("vertical", "normal", "S"), maxInFlight).subscribe(subscriber);
+
+        Assertions.assertTrue(subscriber.completed.await(30, TimeUnit.SECONDS));
+        Assertions.assertNull(subscriber.error);
+        Assertions.assertEquals(cardNumbers.all(), subscriber.results.stream().map(QRResult::getCardNumber).collect(Collectors.toList()));
+        Assertions.assertEquals(this.qrFactory.generateQR("cardNumber17", "vertical", "normal", "S"), subscriber.results.get(17).getQR());
+        // The card numbers read but not published yet, each QR was read when it was requested
+        Assertions.assertTrue(subscriber.maxAhead <= Math.min(batch, maxInFlight), "Read ahead " + subscriber.maxAhead);
+    }
+
+    @Test
+    public void givenNoRequest_whenPublishQRs_thenNothingIsGenerated() throws Exception {
+        CountingCardNumbers cardNumbers = new CountingCardNumbers(10);
+        List<QRResult> results = Collections.synchronizedList(new ArrayList<>());
+        Flow.Subscription[] subscription = new Flow.Subscription[1];
+        CountDownLatch received = new CountDownLatch(3);
+
+        this.qrFactory.publishQRs(cardNumbers, "horizontal", "inverted", "XS").subscribe(new Flow.Subscriber<>() {
+            @Override
+            public void onSubscribe(Flow.Subscription s) {
+                subscription[0] = s;
+            }
+
+            @Override
+            public void onNext(QRResult item) {
+                results.add(item);
+                received.countDown();
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        });
+        Thread.sleep(100);
+        Assertions.assertEquals(0, cardNumbers.read.get());
+
+        subscription[0].request(3);
+        Assertions.assertTrue(received.await(30, TimeUnit.SECONDS));
+        subscription[0].cancel();
+        Thread.sleep(100);
+
+        Assertions.assertEquals(3, cardNumbers.read.get());
+        Assertions.assertEquals(List.of("cardNumber0", "cardNumber1", "cardNumber2"),
+                results.stream().map(QRResult::getCardNumber).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void givenInvalidCardNumber_whenPublishQRs_thenItIsPublishedAsFailure() throws Exception {
+        String tooLong = "x".repeat(200);
+        SlowSubscriber subscriber = new SlowSubscriber(Long.MAX_VALUE, null);
+
+        this.qrFactory.publishQRs(List.of("cardNumber1", tooLong, "cardNumber2"), QRStyle.parse("vertical", "normal", "XS"))
+                .subscribe(subscriber);
+
+        Assertions.assertTrue(subscriber.completed.await(30, TimeUnit.SECONDS));
+        Assertions.assertEquals(List.of(true, false, true),
+                subscriber.results.stream().map(QRResult::isSuccess).collect(Collectors.toList()));
+        Assertions.assertEquals(tooLong, subscriber.results.get(1).getCardNumber());
+        Assertions.assertNotNull(subscriber.results.get(1).getError());
+    }
+
+    @Test
+    public void givenSaturatedExecutor_whenPublishQRs_thenEveryCardGetsItsQR() throws Exception {
+        // One thread and a queue of one QR, shared by three publishers, so most of the submissions are rejected
+        ThreadPoolExecutor saturated = new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS, new ArrayBlockingQueue<>(1));
+        AtomicInteger rejections = new AtomicInteger();
+        Executor executor = task -> {
+            try {
+                saturated.execute(task);
+            } catch (RejectedExecutionException e) {
+                rejections.incrementAndGet();
+                throw e;
+            }
+        };
+        QRFactory factory = QRFactory.builder().bulkExecutor(executor).build();
+        QRStyle style = QRStyle.parse("vertical", "normal", "XS");
+        List<SlowSubscriber> subscribers = new ArrayList<>();
+        List<CountingCardNumbers> cardNumbers = new ArrayList<>();
+        try {
+            for (int i = 0; i < 3; i++) {
+                CountingCardNumbers numbers = new CountingCardNumbers(20);
+                SlowSubscriber subscriber = new SlowSubscriber(Long.MAX_VALUE, null);
+                cardNumbers.add(numbers);
+                subscribers.add(subscriber);
+                factory.publishQRs(numbers, style, 8).subscribe(subscriber);
+            }
+
+            for (int i = 0; i < 3; i++) {
+                SlowSubscriber subscriber = subscribers.get(i);
+                Assertions.assertTrue(subscriber.completed.await(30, TimeUnit.SECONDS));
+                Assertions.assertNull(subscriber.error);
+                Assertions.assertEquals(cardNumbers.get(i).all(),
+                        subscriber.results.stream().map(QRResult::getCardNumber).collect(Collectors.toList()));
+                Assertions.assertTrue(subscriber.results.stream().allMatch(QRResult::isSuccess));
+            }
+        } finally {
+            saturated.shutdownNow();
+        }
+        Assertions.assertTrue(rejections.get() > 0);
+    }
+
+    @Test
+    public void givenInvalidRequest_whenPublishQRs_thenErrorIsPublished() throws Exception {
+        SlowSubscriber subscriber = new SlowSubscriber(0, null);
+
+        this.qrFactory.publishQRs(List.of("cardNumber1"), QRStyle.parse("vertical", "normal", "XS")).subscribe(subscriber);
+
+        Assertions.assertTrue(subscriber.completed.await(30, TimeUnit.SECONDS));
+        Assertions.assertInstanceOf(IllegalArgumentException.class, subscriber.error);
+        Assertions.assertTrue(subscriber.results.isEmpty());
+    }
+
+    @Test
+    public void givenInvalidParameters_whenPublishQRs_thenThrowsException() {
+        Assertions.assertThrows(QRFactoryException.class, () -> this.qrFactory.publishQRs(List.of("cardNumber1"), "diagonal", "normal", "S"));
+        Assertions.assertThrows(QRFactoryException.class, () -> this.qrFactory.publishQRs(List.of("cardNumber1"), (QRStyle) null));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> this.qrFactory.publishQRs(List.of("cardNumber1"), QRStyle.parse("vertical", "normal", "S"), 0));
+    }
+
+    /**
+     * Card numbers counting how many have been read
+     */
+    private static final class CountingCardNumbers implements Iterable<String> {
+
+        private final int count;
+        private final AtomicInteger read = new AtomicInteger();
+
+        private CountingCardNumbers(int count) {
+            this.count = count;
+        }
+
+        List<String> all() {
+            return IntStream.range(0, this.count).mapToObj(i -> "cardNumber" + i).collect(Collectors.toList());
+        }
+
+        @Override
+        public Iterator<String> iterator() {
+            return new Iterator<>() {
+                @Override
+                public boolean hasNext() {
+                    return read.get() < count;
+                }
+
+                @Override
+                public String next() {
+                    return "cardNumber" + read.getAndIncrement();
+                }
+            };
+        }
+    }
+
+    /**
+     * Requests the QRs by batches and takes a few milliseconds to handle each one, much longer than generating it
+     */
+    private static final class SlowSubscriber implements Flow.Subscriber<QRResult> {
+
+        private final long batch;
+        private final CountingCardNumbers cardNumbers;
+        private final List<QRResult> results = Collections.synchronizedList(new ArrayList<>());
+        private final CountDownLatch completed = new CountDownLatch(1);
+        private Flow.Subscription subscription;
+        private long remaining;
+        private volatile int maxAhead;
+        private volatile Throwable error;
+
+        private SlowSubscriber(long batch, CountingCardNumbers cardNumbers) {
+            this.batch = batch;
+            this.cardNumbers = cardNumbers;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            this.remaining = this.batch;
+            subscription.request(this.batch);
+        }
+
+        @Override
+        public void onNext(QRResult item) {
+            if (this.cardNumbers != null) {
+                this.maxAhead = Math.max(this.maxAhead, this.cardNumbers.read.get() - this.results.size());
+            }
+            this.results.add(item);
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (this.batch != Long.MAX_VALUE && --this.remaining == 0) {
+                this.remaining = this.batch;
+                this.subscription.request(this.batch);
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            this.error = throwable;
+            this.completed.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            this.completed.countDown();
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package eu.europeanstudentcard.esc;
+
+import eu.europeanstudentcard.esc.constants.QRConstants;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class QRStyleTest {
+
+    @Test
+    public void givenSameValues_whenOf_thenSameInstanceIsReturned() {
+        QRStyle style = QRStyle.of(QRConstants.Orientation.VERTICAL, QRConstants.Colours.INVERTED, QRConstants.Size.S);
+
+        Assertions.assertSame(style, QRStyle.of(QRConstants.Orientation.VERTICAL, QRConstants.Colours.INVERTED,
+                QRConstants.Size.S, QRConstants.RenderMode.RECT));
+        Assertions.assertSame(style.withRenderMode(QRConstants.RenderMode.PATH), QRStyle.of(QRConstants.Orientation.VERTICAL,
+                QRConstants.Colours.INVERTED, QRConstants.Size.S, QRConstants.RenderMode.PATH));
+        Assertions.assertTrue(style.isVertical());
+        Assertions.assertFalse(style.isPositive());
+        Assertions.assertEquals(1.5f, style.getScaleFactor());
+    }
+
+    @Test
+    public void givenStyle_whenWithCompact_thenOnlyCompactIsChanged() {
+        QRStyle style = QRStyle.of(QRConstants.Orientation.HORIZONTAL, QRConstants.Colours.NORMAL, QRConstants.Size.M,
+                QRConstants.RenderMode.PATH);
+        QRStyle compact = style.withCompact(true);
+
+        Assertions.assertFalse(style.isCompact());
+        Assertions.assertTrue(compact.isCompact());
+        Assertions.assertNotSame(style, compact);
+        Assertions.assertSame(compact, style.withCompact(true));
+        Assertions.assertSame(style, compact.withCompact(false));
+        Assertions.assertSame(compact.withRenderMode(QRConstants.RenderMode.RECT),
+                style.withRenderMode(QRConstants.RenderMode.RECT).withCompact(true));
+        Assertions.assertEquals("horizontal/normal/M/PATH/compact", compact.toString());
+    }
+
+    @Test
+    public void givenStringParameters_whenParse_thenCaseIsIgnored() throws Exception {
+        QRStyle style = QRStyle.parse("HORIZONTAL", "Normal", "m");
+
+        Assertions.assertSame(QRStyle.of(QRConstants.Orientation.HORIZONTAL, QRConstants.Colours.NORMAL, QRConstants.Size.M), style);
+    }
+
+    @Test
+    public void givenInvalidParameters_whenParse_thenThrowsException() {
+        Assertions.assertEquals("Error validating parameters, invalid orientation",
+                Assertions.assertThrows(QRFactoryException.class, () -> QRStyle.parse(null, "normal", "S")).getMessage());
+        Assertions.assertEquals("Error validating parameters, invalid colour",
+                Assertions.assertThrows(QRFactoryException.class, () -> QRStyle.parse("vertical", "blue", "S")).getMessage());
+        Assertions.assertEquals("Error validating parameters, invalid size",
+                Assertions.assertThrows(QRFactoryException.class, () -> QRStyle.parse("vertical", "normal", "XL")).getMessage());
+    }
+
+    @Test
+    public void givenStyle_whenGenerateQR_thenResultIsEqualToStringParameters() throws Exception {
+        QRFactory qrFactory = QRFactory.create();
+        QRStyle style = QRStyle.of(QRConstants.Orientation.HORIZONTAL, QRConstants.Colours.INVERTED, QRConstants.Size.XS,
+                QRConstants.RenderMode.PATH);
+
+        Assertions.assertEquals(qrFactory.generateQR("cardNumber", "horizontal", "inverted", "XS", QRConstants.RenderMode.PATH),
+                qrFactory.generateQR("cardNumber", style));
+        Assertions.assertThrows(QRFactoryException.class, () -> qrFactory.generateQR("cardNumber", (QRStyle) null));
+    }
+
+    @Test
+    public void givenName_whenGetBitsFromName_thenBitsAreReturned() {
+        Assertions.assertEquals(0, QRConstants.ErrorLevel.getBitsFromName("M"));
+        Assertions.assertEquals(2, QRConstants.ErrorLevel.getBitsFromName("H"));
+        Assertions.assertEquals(1, QRConstants.ErrorLevel.getBitsFromName("unknown"));
+    }
+}
@@ -0,0 +1,131 @@
+package eu.europeanstudentcard.esc;
+
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.client.j2se.BufferedImageLuminanceSource;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.common.HybridBinarizer;
+import com.google.zxing.qrcode.QRCodeReader;
+import com.google.zxing.qrcode.decoder.Decoder;
+import org.apache.batik.transcoder.TranscoderInput;
+import org.apache.batik.transcoder.TranscoderOutput;
+import org.apache.batik.transcoder.image.ImageTranscoder;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.StringReader;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Rasterises the generated SVGs and reads the QRs back, to check that the generated QRs can be scanned
+ */
+final class QRTestUtils {
+
+    private static final int MARGIN = 4;
+    private static final int MODULES = 33;
+    private static final Pattern MODULE = Pattern.compile("<rect fill=\"(?:black|white)\" height=\"1\" width=\"1\" x=\"(\\d+)\" y=\"(\\d+)\"/>");
+
+    private QRTestUtils() {
+    }
+
+    /**
+     * Rasterises the SVG with Batik
+     *
+     * @param svg        the SVG to rasterise
+     * @param width      the width of the image, the height keeps the aspect ratio
+     * @param background the colour painted behind the SVG
+     * @return the image
+     */
+    static BufferedImage rasterise(String svg, float width, Color background) throws Exception {
+        BufferedImage[] result = new BufferedImage[1];
+        ImageTranscoder transcoder = new ImageTranscoder() {
+            @Override
+            public BufferedImage createImage(int w, int h) {
+                return new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+            }
+
+            @Override
+            public void writeImage(BufferedImage image, TranscoderOutput output) {
+                result[0] = image;
+            }
+        };
+        transcoder.addTranscodingHint(ImageTranscoder.KEY_WIDTH, width);
+        transcoder.addTranscodingHint(ImageTranscoder.KEY_BACKGROUND_COLOR, background);
+        // Batik implements SVG 1.1, where "transparent" is not a valid colour and the background would be painted black
+        String compatible = svg.replace("fill=\"transparent\"", "fill=\"none\"");
+        transcoder.transcode(new TranscoderInput(new StringReader(compatible)), null);
+        return result[0];
+    }
+
+    /**
+     * Reads the QR in the image, the inverted QRs are also read
+     *
+     * @param image the image with the QR
+     * @return the content of the QR
+     */
+    static String decode(BufferedImage image) throws Exception {
+        Map<DecodeHintType, Object> hints = new EnumMap<>(DecodeHintType.class);
+        hints.put(DecodeHintType.TRY_HARDER, Boolean.TRUE);
+        LuminanceSource source = new BufferedImageLuminanceSource(image);
+        try {
+            return new QRCodeReader().decode(new BinaryBitmap(new HybridBinarizer(source)), hints).getText();
+        } catch (NotFoundException e) {
+            return new QRCodeReader().decode(new BinaryBitmap(new HybridBinarizer(source.invert())), hints).getText();
+        }
+    }
+
+    /**
+     * Reads the QR drawn with one rect per module, without rasterising it
+     * <p>
+     * The rects of the QR image are read back into a matrix of modules, without the margin, which is decoded
+     * directly. It is much faster than rasterising the SVG and checks that the SVG has exactly the modules of its
+     * own QR.
+     *
+     * @param svg the SVG generated with the RECT render mode
+     * @return the content of the QR
+     */
+    static String decodeModules(String svg) throws Exception {
+        String qr = svg.substring(svg.indexOf("viewBox=\"0 0 41 41\""));
+        qr = qr.substring(0, qr.indexOf("</svg>"));
+        BitMatrix modules = new BitMatrix(MODULES);
+        Matcher matcher = MODULE.matcher(qr);
+        while (matcher.find()) {
+            modules.set(Integer.parseInt(matcher.group(1)) - MARGIN, Integer.parseInt(matcher.group(2)) - MARGIN);
+        }
+        return new Decoder().decode(modules).getText();
+    }
+
+    /**
+     * Rasterises a QR generated by the factory and reads it
+     *
+     * @param svg        the generated SVG
+     * @param isPositive the colours of the QR, the inverted QRs are painted over a black background
+     * @return the content of the QR
+     */
+    static String decode(String svg, boolean isPositive) throws Exception {
+        return decode(rasterise(svg, 400f, isPositive ? Color.WHITE : Color.BLACK));
+    }
+
+    /**
+     * Paints the image over a background, like a viewer showing a transparent PNG
+     *
+     * @param image      the image with transparent pixels
+     * @param background the colour painted behind the image
+     * @return the opaque image
+     */
+    static BufferedImage flatten(BufferedImage image, Color background) {
+        BufferedImage result = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = result.createGraphics();
+        graphics.setColor(background);
+        graphics.fillRect(0, 0, image.getWidth(), image.getHeight());
+        graphics.drawImage(image, 0, 0, null);
+        graphics.dispose();
+        return result;
+    }
+}
@@ -0,0 +1,130 @@
+package eu.europeanstudentcard.esc;
+
+import com.google.zxing.common.BitMatrix;
+import eu.europeanstudentcard.esc.constants.QRConstants;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.w3c.dom.Document;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+public class SVGComposerTest {
+
+    private final QRFactory qrFactory = QRFactory.create();
+    private final LogoTemplateCache logoTemplates = new LogoTemplateCache(true);
+
+    @ParameterizedTest
+    @CsvSource({
+            "true, true, 1.0", "true, true, 1.5", "true, true, 4.0",
+            "true, false, 1.0", "true, false, 1.5", "true, false, 4.0",
+            "false, true, 1.0", "false, true, 1.5", "false, true, 4.0",
+            "false, false, 1.0", "false, false, 1.5", "false, false, 4.0"})
+    public void givenStyle_whenCompose_thenResultIsEquivalentToMergeSVG(boolean isVertical, boolean isPositive, float scaleFactor) throws Exception {
+        String content = "https://s.esc-r.eu/123e4567-e89b-12d3-a456-426614174000";
+        LogoTemplate logo = this.logoTemplates.get(isVertical, isPositive);
+        BitMatrix bitMatrix = this.qrFactory.encodeQR(content, 41, 41);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        new SVGComposer(4).compose(bitMatrix, isPositive, QRConstants.RenderMode.RECT, logo, isVertical, scaleFactor, out);
+        String expected = this.qrFactory.mergeSVG(this.qrFactory.generateQRCodeSvg(content, 41, 41, isPositive), logo, isVertical, scaleFactor);
+
+        Assertions.assertEquals(describe(parse(expected.getBytes(StandardCharsets.UTF_8))), describe(parse(out.toByteArray())));
+    }
+
+    @ParameterizedTest
+    @CsvSource({"vertical, normal, XS", "vertical, inverted, S", "horizontal, normal, M", "horizontal, inverted, XS"})
+    public void givenRenderModes_whenGenerateQR_thenBothQRsAreDecodedToTheSameContent(String orientation, String colours, String size) throws Exception {
+        String cardNumber = "123e4567-e89b-12d3-a456-426614174000";
+        boolean isPositive = "normal".equals(colours);
+
+        String rects = this.qrFactory.generateQR(cardNumber, orientation, colours, size, QRConstants.RenderMode.RECT);
+        String path = this.qrFactory.generateQR(cardNumber, orientation, colours, size, QRConstants.RenderMode.PATH);
+
+        Assertions.assertEquals(this.qrFactory.getVerifierUri() + cardNumber, QRTestUtils.decode(rects, isPositive));
+        Assertions.assertEquals(this.qrFactory.getVerifierUri() + cardNumber, QRTestUtils.decode(path, isPositive));
+        Assertions.assertTrue(path.length() < rects.length());
+        Assertions.assertFalse(path.contains("<rect fill=\"black\" height=\"1\""));
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+            "vertical, normal, XS, RECT", "vertical, normal, M, PATH", "vertical, inverted, S, RECT",
+            "vertical, inverted, M, RECT", "horizontal, normal, S, PATH", "horizontal, normal, M, RECT",
+            "horizontal, inverted, XS, PATH", "horizontal, inverted, M, PATH"})
+    public void givenCompactStyle_whenGenerateQR_thenRasterisedQRIsTheSame(String orientation, String colours, String size,
+                                                                          QRConstants.RenderMode renderMode) throws Exception {
+        String cardNumber = "123e4567-e89b-12d3-a456-426614174000";
+        boolean isPositive = "normal".equals(colours);
+        Color background = isPositive ? Color.WHITE : Color.BLACK;
+        QRStyle style = QRStyle.parse(orientation, colours, size, renderMode);
+
+        String svg = this.qrFactory.generateQR(cardNumber, style);
+        String compact = this.qrFactory.generateQR(cardNumber, style.withCompact(true));
+
+        // Rasterised at four times the size of the SVG, so the rounding of the logo would show on the edges
+        float width = 4 * Float.parseFloat(svg.replaceAll("(?s).*?<svg[^>]* width=\"([0-9.]+)\".*", "$1"));
+        BufferedImage expected = QRTestUtils.flatten(QRTestUtils.rasterise(svg, width, background), background);
+        BufferedImage actual = QRTestUtils.flatten(QRTestUtils.rasterise(compact, width, background), background);
+        Assertions.assertEquals(expected.getWidth(), actual.getWidth());
+        Assertions.assertEquals(expected.getHeight(), actual.getHeight());
+        int maxDifference = 0;
+        int different = 0;
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                int difference = channelDifference(expected.getRGB(x, y), actual.getRGB(x, y));
+                maxDifference = Math.max(maxDifference, difference);
+                different += difference > 0 ? 1 : 0;
+            }
+        }
+        // Only the antialiasing of some edges of the logo may change, by less than a fifth of the range
+        Assertions.assertTrue(maxDifference < 52, "Max difference " + maxDifference);
+        Assertions.assertTrue(different * 100 < expected.getWidth() * expected.getHeight(), different + " different pixels");
+
+        Assertions.assertEquals(this.qrFactory.getVerifierUri() + cardNumber, QRTestUtils.decode(compact, isPositive));
+        Assertions.assertTrue(compact.length() * 5 < svg.length() * 3, compact.length() + " / " + svg.length());
+        Assertions.assertFalse(compact.contains("\n") || compact.contains("<?xml"));
+    }
+
+    private static int channelDifference(int expected, int actual) {
+        int difference = 0;
+        for (int shift = 0; shift < 24; shift += 8) {
+            difference = Math.max(difference, Math.abs(((expected >> shift) & 0xff) - ((actual >> shift) & 0xff)));
+        }
+        return difference;
+    }
+
+    private static Document parse(byte[] svg) throws Exception {
+        return DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(new ByteArrayInputStream(svg));
+    }
+
+    /**
+     * Lists the elements with their attributes and the text in document order, ignoring the whitespace between elements
+     */
+    private static List<String> describe(Node node) {
+        List<String> result = new ArrayList<>();
+        if (node.getNodeType() == Node.ELEMENT_NODE) {
+            StringBuilder sb = new StringBuilder(node.getNodeName());
+            NamedNodeMap attributes = node.getAttributes();
+            for (int i = 0; i < attributes.getLength(); i++) {
+                sb.append(' ').append(attributes.item(i).getNodeName()).append('=').append(attributes.item(i).getNodeValue());
+            }
+            result.add(sb.toString());
+        } else if (node.getNodeType() == Node.TEXT_NODE && !node.getNodeValue().isBlank()) {
+            result.add(node.getNodeValue().strip());
+        }
+        for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+            result.addAll(describe(child));
+        }
+        return result;
+    }
+}
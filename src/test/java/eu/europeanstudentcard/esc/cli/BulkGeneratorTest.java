@@ -0,0 +1,191 @@
+package eu.europeanstudentcard.esc.cli;
+
+import eu.europeanstudentcard.esc.QRFactory;
+import eu.europeanstudentcard.esc.QRStyle;
+import eu.europeanstudentcard.esc.constants.QRConstants;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+public class BulkGeneratorTest {
+
+    private final QRFactory qrFactory = QRFactory.create();
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private final ByteArrayOutputStream err = new ByteArrayOutputStream();
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void givenCsvWithHeader_whenRunToDirectory_thenFilesAreEqualToGenerateQR() throws Exception {
+        Path input = this.directory.resolve("cards.csv");
+        Files.writeString(input, "name;cardNumber\nAlice;cardNumber1\r\n\"Bob; Jr\";\"cardNumber2\"\n\nCarol; cardNumber3 \n");
+        Path output = this.directory.resolve("qrs");
+
+        int exitCode = this.run(InputStream.nullInputStream(), "--input", input.toString(), "--header",
+                "--delimiter", ";", "--column", "1", "--size", "XS", "--threads", "2", "--output", output.toString());
+
+        Assertions.assertEquals(BulkGenerator.EXIT_SUCCESS, exitCode, this.err.toString());
+        for (String cardNumber : List.of("cardNumber1", "cardNumber2", "cardNumber3")) {
+            Assertions.assertEquals(qrFactory.generateQR(cardNumber, "vertical", "normal", "XS"),
+                    Files.readString(output.resolve(cardNumber + ".svg")));
+        }
+        try (var files = Files.list(output)) {
+            Assertions.assertEquals(3, files.count());
+        }
+        Assertions.assertTrue(this.out.toString().startsWith("Generated 3 QRs, 0 failed"), this.out.toString());
+    }
+
+    @Test
+    public void givenStdin_whenRunToZip_thenEntriesAreEqualToGenerateQR() throws Exception {
+        InputStream stdin = new ByteArrayInputStream("cardNumber1\ncardNumber2\n".getBytes(StandardCharsets.UTF_8));
+        Path archive = this.directory.resolve("qrs.zip");
+
+        int exitCode = this.run(stdin, "--orientation", "horizontal", "--colours", "inverted", "--size", "S",
+                "--archive", archive.toString());
+
+        Assertions.assertEquals(BulkGenerator.EXIT_SUCCESS, exitCode, this.err.toString());
+        Map<String, String> entries = readZip(archive);
+        Assertions.assertEquals(List.of("cardNumber1.svg", "cardNumber2.svg"), List.copyOf(entries.keySet()));
+        Assertions.assertEquals(qrFactory.generateQR("cardNumber2", "horizontal", "inverted", "S"),
+                entries.get("cardNumber2.svg"));
+    }
+
+    @Test
+    public void givenDuplicateCardNumber_whenRunToZip_thenItIsReportedAndTheArchiveIsWritten() throws Exception {
+        InputStream stdin = new ByteArrayInputStream("cardNumber1\ncardNumber2\ncardNumber1\n".getBytes(StandardCharsets.UTF_8));
+        Path archive = this.directory.resolve("qrs.zip");
+
+        int exitCode = this.run(stdin, "--archive", archive.toString());
+
+        Assertions.assertEquals(BulkGenerator.EXIT_FAILURES, exitCode);
+        Assertions.assertEquals(List.of("cardNumber1.svg", "cardNumber2.svg"), List.copyOf(readZip(archive).keySet()));
+        Assertions.assertTrue(this.err.toString().contains("cardNumber1: Duplicate entry cardNumber1.svg"), this.err.toString());
+        Assertions.assertTrue(this.out.toString().startsWith("Generated 3 QRs, 1 failed"), this.out.toString());
+    }
+
+    @Test
+    public void givenCompact_whenRunToDirectory_thenFilesAreEqualToCompactGenerateQR() throws Exception {
+        InputStream stdin = new ByteArrayInputStream("cardNumber1\n".getBytes(StandardCharsets.UTF_8));
+        Path output = this.directory.resolve("qrs");
+
+        int exitCode = this.run(stdin, "--render-mode", "path", "--compact", "--output", output.toString());
+
+        Assertions.assertEquals(BulkGenerator.EXIT_SUCCESS, exitCode, this.err.toString());
+        QRStyle style = QRStyle.parse("vertical", "normal", "M", QRConstants.RenderMode.PATH).withCompact(true);
+        Assertions.assertEquals(qrFactory.generateQR("cardNumber1", style), Files.readString(output.resolve("cardNumber1.svg")));
+    }
+
+    @Test
+    public void givenMappedInput_whenRunToDirectory_thenAllLinesAreGenerated() throws Exception {
+        Path input = this.directory.resolve("cards.csv");
+        StringBuilder lines = new StringBuilder();
+        for (int i = 0; i < 50; i++) {
+            lines.append("card").append(i).append('\n');
+        }
+        // The last line has no line terminator
+        lines.append("card50");
+        Files.writeString(input, lines);
+        Path output = this.directory.resolve("qrs");
+
+        int exitCode = this.run(InputStream.nullInputStream(), "--input", input.toString(), "--mmap",
+                "--format", "png", "--output", output.toString());
+
+        Assertions.assertEquals(BulkGenerator.EXIT_SUCCESS, exitCode, this.err.toString());
+        try (var files = Files.list(output)) {
+            Assertions.assertEquals(51, files.count());
+        }
+        Assertions.assertArrayEquals(qrFactory.generateQRPng("card50", "vertical", "normal", "M"),
+                Files.readAllBytes(output.resolve("card50.png")));
+    }
+
+    @Test
+    public void givenInvalidCardNumbers_whenRun_thenTheyAreReportedAndExitCodeIsFailures() throws Exception {
+        String tooLong = "x".repeat(500);
+        InputStream stdin = new ByteArrayInputStream(("cardNumber1\n../cardNumber2\n" + tooLong + "\n")
+                .getBytes(StandardCharsets.UTF_8));
+        Path output = this.directory.resolve("qrs");
+
+        int exitCode = this.run(stdin, "--output", output.toString());
+
+        Assertions.assertEquals(BulkGenerator.EXIT_FAILURES, exitCode);
+        Assertions.assertTrue(Files.exists(output.resolve("cardNumber1.svg")));
+        try (var files = Files.list(output)) {
+            Assertions.assertEquals(1, files.count());
+        }
+        Assertions.assertFalse(Files.exists(this.directory.resolve("cardNumber2.svg")));
+        Assertions.assertTrue(this.err.toString().contains("../cardNumber2: invalid file name"), this.err.toString());
+        Assertions.assertTrue(this.err.toString().contains(tooLong + ": "), this.err.toString());
+        Assertions.assertTrue(this.out.toString().startsWith("Generated 1 QRs, 2 failed"), this.out.toString());
+    }
+
+    @Test
+    public void givenInvalidOptions_whenRun_thenExitCodeIsUsage() {
+        Assertions.assertEquals(BulkGenerator.EXIT_USAGE, this.run(InputStream.nullInputStream(), "--size", "XS"));
+        Assertions.assertEquals(BulkGenerator.EXIT_USAGE, this.run(InputStream.nullInputStream(),
+                "--archive", "qrs.7z"));
+        Assertions.assertEquals(BulkGenerator.EXIT_USAGE, this.run(InputStream.nullInputStream(),
+                "--format", "png", "--archive", "qrs.zip"));
+        Assertions.assertEquals(BulkGenerator.EXIT_USAGE, this.run(InputStream.nullInputStream(),
+                "--mmap", "--output", "qrs"));
+        Assertions.assertEquals(BulkGenerator.EXIT_USAGE, this.run(InputStream.nullInputStream(),
+                "--threads", "0", "--output", "qrs"));
+        Assertions.assertEquals(BulkGenerator.EXIT_USAGE, this.run(InputStream.nullInputStream(),
+                "--size", "XL", "--output", "qrs"));
+        Assertions.assertEquals(BulkGenerator.EXIT_USAGE, this.run(InputStream.nullInputStream(),
+                "--format", "png", "--dpi", "1201", "--output", "qrs"));
+        Assertions.assertTrue(this.err.toString().contains("Usage:"));
+    }
+
+    @Test
+    public void givenQuotedFields_whenField_thenQuotesAreRemoved() {
+        Assertions.assertEquals("a,b", CardNumberReader.field("\"a,b\",c", ',', 0));
+        Assertions.assertEquals("say \"hi\"", CardNumberReader.field("x,\"say \"\"hi\"\"\"", ',', 1));
+        Assertions.assertEquals("", CardNumberReader.field("x,,z", ',', 1));
+        Assertions.assertNull(CardNumberReader.field("x,y", ',', 2));
+    }
+
+    @Test
+    public void givenDurations_whenPercentile_thenItIsWithinOneSubBucket() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long nanos = 1; nanos <= 1000; nanos++) {
+            histogram.record(nanos * 1000);
+        }
+
+        Assertions.assertEquals(1000, histogram.getCount());
+        Assertions.assertEquals(1_000_000, histogram.getMax());
+        Assertions.assertEquals(500_000, histogram.percentile(0.5), 500_000 / 16.0);
+        Assertions.assertEquals(990_000, histogram.percentile(0.99), 990_000 / 16.0);
+        Assertions.assertEquals(1_000_000, histogram.percentile(1));
+    }
+
+    private int run(InputStream stdin, String... args) {
+        return BulkGenerator.run(args, stdin, new PrintStream(this.out, true, StandardCharsets.UTF_8),
+                new PrintStream(this.err, true, StandardCharsets.UTF_8));
+    }
+
+    private static Map<String, String> readZip(Path archive) throws IOException {
+        Map<String, String> entries = new LinkedHashMap<>();
+        try (ZipInputStream zip = new ZipInputStream(Files.newInputStream(archive))) {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                entries.put(entry.getName(), new String(zip.readAllBytes(), StandardCharsets.UTF_8));
+            }
+        }
+        return entries;
+    }
+}
@@ -0,0 +1,34 @@
+package eu.europeanstudentcard.esc.micrometer;
+
+import eu.europeanstudentcard.esc.QRCache;
+import eu.europeanstudentcard.esc.QRFactory;
+import eu.europeanstudentcard.esc.QRFactoryException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class MicrometerQRListenerTest {
+
+    @Test
+    public void givenMicrometerListener_whenGenerateQRs_thenMetersAreRecorded() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        QRCache cache = new QRCache(10, 1024 * 1024);
+        MicrometerQRListener listener = new MicrometerQRListener(registry).bindTo(cache);
+        QRFactory qrFactory = QRFactory.builder().cache(cache).listener(listener).build();
+        listener.bindTo(qrFactory);
+
+        String qr = qrFactory.generateQR("cardNumber", "vertical", "normal", "S");
+        qrFactory.generateQR("cardNumber", "vertical", "normal", "S");
+        Assertions.assertThrows(QRFactoryException.class,
+                () -> qrFactory.generateQR("cardNumber", "vertical", "normal", "XL"));
+
+        Assertions.assertEquals(1, registry.get("qr.stage").tag("stage", "encode").timer().count());
+        Assertions.assertEquals(2, registry.get("qr.generate").tags("format", "svg", "size", "S").timer().count());
+        Assertions.assertEquals(2 * qr.length(), registry.get("qr.output.size").tag("format", "svg").summary().totalAmount());
+        Assertions.assertEquals(1, registry.get("qr.errors").tag("cause", "QRFactoryException").counter().count());
+        Assertions.assertEquals(1, registry.get("qr.cache.requests").tag("result", "hit").counter().count());
+        Assertions.assertEquals(1, registry.get("qr.cache.requests").tag("result", "miss").counter().count());
+        Assertions.assertEquals(1, registry.get("qr.cache.entries").gauge().value());
+        Assertions.assertEquals(1, registry.get("qr.pool.created").tag("pool", "outputBuffers").functionCounter().count());
+    }
+}